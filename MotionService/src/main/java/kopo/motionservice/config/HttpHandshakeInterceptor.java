@@ -76,6 +76,17 @@ public class HttpHandshakeInterceptor implements HandshakeInterceptor {
             log.warn("[Handshake] No valid userId found, connection will be anonymous");
         }
 
+        // 5. /ws/motion 압축 프레임 인코딩 협상 (?encoding=q8_delta&scale=0.004) - MotionHandler 가 연결 직후 적용
+        if (query != null && query.contains("encoding=")) {
+            String encoding = extractQueryParam(query, "encoding");
+            if (encoding != null && !encoding.isEmpty()) {
+                attributes.put("frameEncoding", encoding);
+                String scale = extractQueryParam(query, "scale");
+                if (scale != null) attributes.put("frameScale", scale);
+                log.info("[Handshake] Requested frame encoding: {} (scale {})", encoding, scale);
+            }
+        }
+
         return true;
     }
 
@@ -88,10 +99,17 @@ public class HttpHandshakeInterceptor implements HandshakeInterceptor {
      * 쿼리 문자열에서 token 파라미터 값 추출
      */
     private String extractTokenFromQuery(String query) {
+        return extractQueryParam(query, "token");
+    }
+
+    /**
+     * 쿼리 문자열에서 파라미터 값 추출 (URL 디코딩)
+     */
+    private String extractQueryParam(String query, String name) {
         String[] params = query.split("&");
         for (String param : params) {
             String[] keyValue = param.split("=", 2);
-            if (keyValue.length == 2 && "token".equals(keyValue[0])) {
+            if (keyValue.length == 2 && name.equals(keyValue[0])) {
                 return java.net.URLDecoder.decode(keyValue[1], java.nio.charset.StandardCharsets.UTF_8);
             }
         }
@@ -0,0 +1,163 @@
+package kopo.motionservice.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kopo.motionservice.matching.DtwEngine;
+import kopo.motionservice.matching.GestureSegmenter;
+import kopo.motionservice.matching.TemplateScanner;
+import kopo.motionservice.matching.UserDictionary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * 동작 매칭(DTW) 관련 설정.
+ * 기본값 band=none 은 기존 full-matrix DTW 와 동일한 결과를 냅니다. sakoe-chiba / itakura band 는 매칭 결과(후보와 거리)를
+ * 바꿀 수 있으므로 명시적으로 켤 때만 사용됩니다 (window-ratio 는 band 를 켰을 때만 적용).
+ */
+@Slf4j
+@Configuration
+public class MatchingConfig {
+
+    @Value("${motion.matching.dtw.band:none}")
+    private String band;
+
+    @Value("${motion.matching.dtw.window-ratio:0.25}")
+    private double windowRatio;
+
+    @Value("${motion.matching.dtw.itakura-slope:2.0}")
+    private double itakuraSlope;
+
+    @Value("${motion.matching.dtw.lower-bounds:true}")
+    private boolean lowerBounds;
+
+    @Value("${motion.matching.parallel.enabled:true}")
+    private boolean parallelEnabled;
+
+    // 0 이하이면 min(가용 코어 수, 4)
+    @Value("${motion.matching.parallel.parallelism:0}")
+    private int parallelism;
+
+    @Value("${motion.matching.parallel.threshold:64}")
+    private int parallelThreshold;
+
+    @Value("${motion.matching.parallel.chunk-size:16}")
+    private int chunkSize;
+
+    // 사용자 사전 캐시 총 용량 (템플릿 frames x dims 기반 byte weight)
+    @Value("${motion.matching.cache.max-bytes:268435456}")
+    private long cacheMaxBytes;
+
+    // 마지막 매칭 이후 이 시간 동안 사용되지 않은 사용자 사전은 내려감 (Redis/Mongo 에서 다시 로드)
+    @Value("${motion.matching.cache.idle-timeout:30m}")
+    private Duration cacheIdleTimeout;
+
+    // 자동 제스처 분할 (segment_start 세션): motion energy hysteresis 임계값과 구간 길이 제한
+    @Value("${motion.matching.segmentation.start-threshold:0.015}")
+    private double segmentStartThreshold;
+
+    @Value("${motion.matching.segmentation.stop-threshold:0.008}")
+    private double segmentStopThreshold;
+
+    @Value("${motion.matching.segmentation.hand-start-threshold:0.06}")
+    private double segmentHandStartThreshold;
+
+    @Value("${motion.matching.segmentation.hand-stop-threshold:0.03}")
+    private double segmentHandStopThreshold;
+
+    @Value("${motion.matching.segmentation.ema-alpha:0.5}")
+    private double segmentEmaAlpha;
+
+    @Value("${motion.matching.segmentation.min-active-frames:3}")
+    private int segmentMinActiveFrames;
+
+    @Value("${motion.matching.segmentation.idle-frames:8}")
+    private int segmentIdleFrames;
+
+    @Value("${motion.matching.segmentation.pre-roll-frames:2}")
+    private int segmentPreRollFrames;
+
+    @Value("${motion.matching.segmentation.min-segment-frames:10}")
+    private int segmentMinFrames;
+
+    @Value("${motion.matching.segmentation.max-segment-frames:300}")
+    private int segmentMaxFrames;
+
+    @Bean
+    public DtwEngine dtwEngine() {
+        DtwEngine.Band parsed = DtwEngine.Band.from(band);
+        log.info("[MatchingConfig] DTW engine: band={}, windowRatio={}, itakuraSlope={}, lowerBounds={}",
+                parsed, windowRatio, itakuraSlope, lowerBounds);
+        return new DtwEngine(parsed, windowRatio, itakuraSlope, lowerBounds);
+    }
+
+    /**
+     * 대형 사전 병렬 스캔 전용 pool. 모든 사용자 세션이 공유하므로 parallelism 이 곧 DTW 에 쓰이는 최대 코어 수입니다.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool matchingForkJoinPool() {
+        int size = parallelism > 0 ? parallelism : Math.min(Runtime.getRuntime().availableProcessors(), 4);
+        log.info("[MatchingConfig] Matching ForkJoinPool parallelism={}", size);
+        return new ForkJoinPool(size, pool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("dtw-matcher-" + worker.getPoolIndex());
+            return worker;
+        }, null, false);
+    }
+
+    @Bean
+    public TemplateScanner templateScanner(DtwEngine dtwEngine, ForkJoinPool matchingForkJoinPool) {
+        log.info("[MatchingConfig] Template scanner: parallel={}, threshold={}, chunkSize={}",
+                parallelEnabled, parallelThreshold, chunkSize);
+        return new TemplateScanner(dtwEngine, parallelEnabled ? matchingForkJoinPool : null, parallelThreshold, chunkSize);
+    }
+
+    @Bean
+    public GestureSegmenter.Settings gestureSegmenterSettings() {
+        GestureSegmenter.Settings settings = new GestureSegmenter.Settings(
+                segmentStartThreshold, segmentStopThreshold, segmentHandStartThreshold, segmentHandStopThreshold,
+                segmentEmaAlpha, segmentMinActiveFrames, segmentIdleFrames, segmentPreRollFrames,
+                segmentMinFrames, segmentMaxFrames);
+        log.info("[MatchingConfig] Gesture segmentation: {}", settings);
+        return settings;
+    }
+
+    /**
+     * 사용자별 컴파일된 템플릿 사전 캐시. W-TinyLFU admission 으로 활성 환자의 사전은 유지하고,
+     * 총 byte weight 와 idle 시간 기준으로 나머지를 내립니다. 내려간 사전은 다음 매칭 때 Redis/Mongo 에서 다시 로드됩니다.
+     * 지표: cache.gets/puts/evictions (cache=motion.user.dictionary), motion.user.dictionary.bytes
+     */
+    @Bean
+    public Cache<String, UserDictionary> userDictionaryCache(MeterRegistry meterRegistry) {
+        log.info("[MatchingConfig] User dictionary cache: maxBytes={}, idleTimeout={}", cacheMaxBytes, cacheIdleTimeout);
+        Cache<String, UserDictionary> cache = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher((String userId, UserDictionary dictionary) ->
+                        (int) Math.min(Integer.MAX_VALUE, dictionary.memoryBytes()))
+                .expireAfterAccess(cacheIdleTimeout)
+                .recordStats()
+                .removalListener((String userId, UserDictionary dictionary, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        log.debug("[MatchingConfig] User dictionary evicted: userId={}, cause={}", userId, cause);
+                    }
+                })
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "motion.user.dictionary");
+        Gauge.builder("motion.user.dictionary.bytes", cache,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L).doubleValue())
+                .description("Approximate heap held by cached user template dictionaries")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        return cache;
+    }
+}
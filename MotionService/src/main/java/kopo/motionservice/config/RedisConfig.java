@@ -1,5 +1,7 @@
 package kopo.motionservice.config;
 
+import kopo.motionservice.handler.MotionCacheEventListener;
+import kopo.motionservice.util.MotionCacheRedisUtil;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -7,6 +9,8 @@ import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -38,4 +42,14 @@ public class RedisConfig {
         redisTemplate.setConnectionFactory(redisConnectionFactory());
         return redisTemplate;
     }
+
+    // 레플리카 간 템플릿 캐시 무효화/패치 이벤트 구독
+    @Bean
+    public RedisMessageListenerContainer motionCacheEventContainer(RedisConnectionFactory connectionFactory,
+                                                                   MotionCacheEventListener listener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(listener, new ChannelTopic(MotionCacheRedisUtil.EVENT_CHANNEL));
+        return container;
+    }
 }
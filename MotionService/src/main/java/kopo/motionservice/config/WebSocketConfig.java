@@ -3,10 +3,13 @@ package kopo.motionservice.config;
 import kopo.motionservice.handler.AlertWebSocketHandler;
 import kopo.motionservice.handler.MotionHandler;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 @Configuration
 @EnableWebSocket
@@ -26,4 +29,13 @@ public class WebSocketConfig implements WebSocketConfigurer {
 
         registry.addHandler(alertWebSocketHandler, "/ws/alerts").setAllowedOrigins("*");
     }
-}
\ No newline at end of file
+
+    // /ws/motion 바이너리 프레임 메시지(여러 프레임 묶음) 최대 크기 - Tomcat 기본값 8KB 는 126차원 hand 프레임 16개 정도
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer(
+            @Value("${motion.ws.max-binary-message-bytes:262144}") int maxBinaryMessageBytes) {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxBinaryMessageBufferSize(maxBinaryMessageBytes);
+        return container;
+    }
+}
@@ -2,6 +2,7 @@
 package kopo.motionservice.controller;
 
 import kopo.motionservice.dto.MotionRecordRequestDTO;
+import kopo.motionservice.repository.document.RecordedMotionDocument;
 import kopo.motionservice.service.IMotionService;
 import kopo.motionservice.service.IMotionDetectorService;
 import lombok.RequiredArgsConstructor;
@@ -19,9 +20,9 @@ public class MotionDetectorController {
 
     @PostMapping(value = "/register", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<String> registerMotion(@RequestBody MotionRecordRequestDTO requestDTO) {
-        motionService.saveRecordedMotion(requestDTO);
-        // requestDTO.getUserId()를 전달해 해당 사용자 캐시만 재로딩
-        motionDetectorService.reloadCacheForUser(requestDTO.getUserId());
+        RecordedMotionDocument saved = motionService.saveRecordedMotion(requestDTO);
+        // 저장된 동작 하나만 해당 사용자 캐시(로컬 + Redis)에 추가 - 사전 전체 재로딩 없음
+        motionDetectorService.putTemplate(saved.getUserId(), saved);
         return ResponseEntity.ok("OK");
     }
 
@@ -0,0 +1,19 @@
+package kopo.motionservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 매칭으로 검출된 phrase 한 건 (write-behind 큐 / spill 파일의 한 줄).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetectionEventDTO {
+    private String userId;
+    private String phrase;
+    private LocalDateTime detectedTime;
+}
@@ -8,6 +8,8 @@ public class MatchResultDTO {
     private String phrase;
     private String motionType;
     private double score;
+    // 매칭에 사용된 사용자 사전 스냅샷 버전 (Redis 템플릿 해시 버전, 0 = Redis 없이 만들어진 스냅샷) - 디버깅용
+    private long dictionaryVersion;
 
     public MatchResultDTO(String recordId, String phrase, String motionType, double score) {
         this.recordId = recordId;
@@ -16,6 +18,11 @@ public class MatchResultDTO {
         this.score = score;
     }
 
+    public MatchResultDTO(String recordId, String phrase, String motionType, double score, long dictionaryVersion) {
+        this(recordId, phrase, motionType, score);
+        this.dictionaryVersion = dictionaryVersion;
+    }
+
     public static MatchResultDTO noMatch() {
         return new MatchResultDTO(null, null, null, Double.POSITIVE_INFINITY);
     }
@@ -0,0 +1,38 @@
+package kopo.motionservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 레플리카 간 사용자 템플릿 캐시 변경 이벤트 (Redis pub/sub, JSON).
+ * epoch / version 은 변경 후 motion_tpl:&lt;userId&gt; 해시의 생성 id 와 그 안의 버전이며, 해시가 없어 Redis 에 쓰지 못했으면
+ * version 이 -1 입니다. 해시가 만료 후 다시 만들어지면 version 이 다시 1 부터 시작하므로 수신 측은 epoch 이 같을 때만 순서를 비교합니다.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MotionCacheEventDTO {
+
+    public enum Op {
+        /** recordIds[0] added or replaced; the encoded template is read from the Redis hash */
+        PUT,
+        /** recordIds removed */
+        REMOVE,
+        /** shared template (phrase, motionType) hidden by a tombstone */
+        HIDE,
+        /** whole user dictionary rebuilt; drop the local copy */
+        RELOAD
+    }
+
+    private Op op;
+    private String userId;
+    private List<String> recordIds;
+    private long epoch;
+    private long version;
+    private String phrase;
+    private String motionType;
+    private String origin;   // publishing replica; receivers skip their own events
+}
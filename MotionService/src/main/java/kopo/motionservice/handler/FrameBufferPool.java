@@ -0,0 +1,171 @@
+package kopo.motionservice.handler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * /ws/motion 세션 프레임 버퍼({@link SessionFrameBuffer})의 전역 메모리 예산.
+ *
+ * 세션마다 최대 프레임 수 / 보관 시간으로 제한되고, 모든 세션의 프레임 행 합계가 memory-budget 을 넘으면
+ * 가장 오래 활동이 없던 세션부터 (1) 비어 있는 세션이 들고 있는 행, (2) 오래된 프레임 (최신 절반은 유지),
+ * (3) 세션 버퍼 전체 순서로 회수합니다. 한 번 회수할 때 예산의 low watermark 까지 내려서, 예산이 찬 상태에서도
+ * 프레임마다 회수가 반복되지 않습니다. 활동 순서(LRU)는 세션이 프레임을 쓸 때 조금씩 갱신되므로 정렬하지 않습니다.
+ * end 를 보내지 않는 클라이언트나 느린 클라이언트가 있어도 MotionService 힙 사용량이 예산 안에 머뭅니다.
+ */
+@Slf4j
+@Component
+public class FrameBufferPool {
+
+    // 회수는 사용량이 예산의 7/8 이하가 될 때까지
+    private static final int LOW_WATER_EIGHTHS = 7;
+
+    private final long budgetBytes;
+    private final long lowWaterBytes;
+    private final int maxFrames;
+    private final long maxAgeNanos;
+
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicInteger sessions = new AtomicInteger();
+    // 세션 버퍼의 활동 순서 (access order: 가장 오래 활동이 없던 버퍼가 앞). lock 으로 보호, 회수도 이 lock 안에서 한 번에 하나
+    private final LinkedHashMap<SessionFrameBuffer, Boolean> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Counter trims;
+    private final Counter evictions;
+
+    public FrameBufferPool(MeterRegistry meterRegistry,
+                           @Value("${motion.ws.buffer.memory-budget-bytes:134217728}") long budgetBytes,
+                           @Value("${motion.ws.buffer.max-frames:1800}") int maxFrames,
+                           @Value("${motion.ws.buffer.max-duration:60s}") Duration maxDuration) {
+        this.budgetBytes = budgetBytes;
+        this.lowWaterBytes = budgetBytes / 8 * LOW_WATER_EIGHTHS;
+        this.maxFrames = maxFrames;
+        this.maxAgeNanos = maxDuration.toNanos();
+
+        Gauge.builder("motion.ws.frame.buffer.bytes", usedBytes, AtomicLong::get)
+                .description("Heap held by per-session frame buffers")
+                .register(meterRegistry);
+        Gauge.builder("motion.ws.frame.buffer.sessions", sessions, AtomicInteger::get)
+                .register(meterRegistry);
+        this.trims = meterRegistry.counter("motion.ws.frame.buffer.trims");
+        this.evictions = meterRegistry.counter("motion.ws.frame.buffer.evictions");
+    }
+
+    /** New empty buffer for a session; close it with {@link #close}. */
+    public SessionFrameBuffer open() {
+        SessionFrameBuffer buffer = new SessionFrameBuffer(this, maxFrames, maxAgeNanos);
+        lock.lock();
+        try {
+            lru.put(buffer, Boolean.TRUE);
+        } finally {
+            lock.unlock();
+        }
+        sessions.incrementAndGet();
+        return buffer;
+    }
+
+    public void close(SessionFrameBuffer buffer) {
+        if (buffer == null) return;
+        boolean removed;
+        lock.lock();
+        try {
+            removed = lru.remove(buffer) != null;
+        } finally {
+            lock.unlock();
+        }
+        if (removed) sessions.decrementAndGet();
+        release(buffer.evict());
+    }
+
+    public int maxFrames() {
+        return maxFrames;
+    }
+
+    /** Moves the buffer to the most recently active end of the eviction order. Must not hold a buffer lock. */
+    void touch(SessionFrameBuffer buffer) {
+        lock.lock();
+        try {
+            lru.get(buffer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves heap for one new frame row. When the budget is exhausted, other sessions give back memory, least recently
+     * active first: idle rows, then their oldest frames, then whole buffers, until usage is below the low watermark.
+     * Must not be called while holding a buffer lock.
+     *
+     * @return false when nothing else can be reclaimed; the requester then reuses its own oldest row
+     */
+    boolean reserve(SessionFrameBuffer requester, long bytes) {
+        if (tryReserve(bytes)) return true;
+
+        lock.lock();
+        try {
+            // 기다리는 동안 다른 요청이 이미 회수했을 수 있음
+            if (tryReserve(bytes)) return true;
+
+            long target = Math.max(0L, lowWaterBytes - bytes);
+            SessionFrameBuffer[] order = lru.keySet().toArray(new SessionFrameBuffer[0]);
+
+            // 1) 비어 있는 세션이 들고 있는 행
+            for (SessionFrameBuffer b : order) {
+                if (usedBytes.get() <= target) break;
+                if (b != requester) release(b.trimIdle());
+            }
+            // 2) 오래된 프레임 (각 세션의 최신 절반은 진행 중인 제스처일 수 있으므로 유지)
+            for (SessionFrameBuffer b : order) {
+                long excess = usedBytes.get() - target;
+                if (excess <= 0) break;
+                if (b == requester) continue;
+                long freed = b.trimOldest(excess);
+                if (freed > 0) {
+                    release(freed);
+                    trims.increment();
+                }
+            }
+            // 3) 그래도 모자라면 세션 버퍼 전체
+            for (SessionFrameBuffer b : order) {
+                if (usedBytes.get() <= target) break;
+                if (b == requester) continue;
+                long freed = b.evict();
+                if (freed > 0) {
+                    release(freed);
+                    evictions.increment();
+                    log.warn("[FrameBufferPool] Frame buffer evicted to stay within the memory budget ({} bytes freed, {} bytes in use)",
+                            freed, usedBytes.get());
+                }
+            }
+            return tryReserve(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean tryReserve(long bytes) {
+        while (true) {
+            long used = usedBytes.get();
+            if (used + bytes > budgetBytes) return false;
+            if (usedBytes.compareAndSet(used, used + bytes)) return true;
+        }
+    }
+
+    void release(long bytes) {
+        if (bytes != 0) usedBytes.addAndGet(-bytes);
+    }
+
+    /** Accounts a size change that was not reserved up front (frame dimensionality changed). */
+    void adjust(long delta) {
+        if (delta != 0) usedBytes.addAndGet(delta);
+    }
+}
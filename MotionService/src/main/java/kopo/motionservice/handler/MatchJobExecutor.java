@@ -0,0 +1,191 @@
+package kopo.motionservice.handler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * /ws/motion 'end' 매칭 작업 실행기: WebSocket 컨테이너 스레드 대신 전용 CPU 풀에서 DTW 를 수행합니다.
+ *
+ * 같은 사용자의 작업은 제출 순서대로 하나씩 실행되고(사용자별 큐), 서로 다른 사용자는 풀에서 병렬로 실행됩니다.
+ * 한 사용자가 작업을 연달아 보내도 작업 하나마다 풀의 뒤로 다시 줄을 서므로 다른 사용자를 굶기지 않습니다.
+ * 대기 작업 수가 max-queued 를 넘으면 제출이 거절되고, 호출자는 클라이언트에 busy 를 응답합니다.
+ * 작업에 선행 조건(ready, 예: 사용자 사전 콜드 로드)이 있으면 끝날 때까지 풀 스레드를 잡지 않고 기다렸다가 실행하므로
+ * 풀은 DTW 같은 CPU 작업만 수행합니다.
+ * 포화({@link #isSaturated()})를 보고한 뒤 대기 작업이 절반 이하로 줄면 drain 리스너에 알려, 프레임을 멈춘 세션에도
+ * credit / resume 을 다시 보낼 수 있게 합니다.
+ */
+@Slf4j
+@Component
+public class MatchJobExecutor {
+
+    private final ExecutorService cpuPool;
+    private final int maxQueued;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Map<String, ArrayDeque<Job>> queues = new ConcurrentHashMap<>();
+    private final List<Runnable> drainListeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean saturationReported = new AtomicBoolean();
+
+    private final Timer waitTimer;
+    private final Timer runTimer;
+    private final Counter rejected;
+
+    private record Job(Runnable task, CompletableFuture<?> ready, long enqueuedAt) {
+    }
+
+    public MatchJobExecutor(MeterRegistry meterRegistry,
+                            @Value("${motion.matching.executor.threads:0}") int threads,
+                            @Value("${motion.matching.executor.max-queued:256}") int maxQueued) {
+        int n = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        this.cpuPool = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "match-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.maxQueued = Math.max(1, maxQueued);
+
+        Gauge.builder("motion.matching.queue.depth", pending, AtomicInteger::get)
+                .description("Match jobs waiting or running")
+                .register(meterRegistry);
+        this.waitTimer = meterRegistry.timer("motion.matching.queue.wait");
+        this.runTimer = meterRegistry.timer("motion.matching.job.duration");
+        this.rejected = meterRegistry.counter("motion.matching.queue.rejected");
+        log.info("[MatchJobExecutor] Match executor started (threads={}, maxQueued={})", n, this.maxQueued);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cpuPool.shutdown();
+    }
+
+    /**
+     * Queues a job behind the user's earlier jobs.
+     *
+     * @return false when the executor is saturated (the job is not queued)
+     */
+    public boolean submit(String userKey, Runnable task) {
+        return submit(userKey, null, task);
+    }
+
+    /**
+     * Queues a job that must not start before {@code ready} completes (normally or exceptionally).
+     * The wait does not hold a pool thread; the user's later jobs stay queued behind it.
+     *
+     * @param ready prerequisite (e.g. a dictionary load running on a virtual thread), or null
+     * @return false when the executor is saturated (the job is not queued)
+     */
+    public boolean submit(String userKey, CompletableFuture<?> ready, Runnable task) {
+        if (pending.incrementAndGet() > maxQueued) {
+            pending.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        Job job = new Job(task, ready, System.nanoTime());
+        boolean[] start = new boolean[1];
+        queues.compute(userKey, (k, q) -> {
+            if (q == null) {
+                q = new ArrayDeque<>();
+                start[0] = true; // 이 사용자의 실행 중인 작업이 없음
+            }
+            q.add(job);
+            return q;
+        });
+        if (start[0]) cpuPool.execute(() -> runNext(userKey));
+        return true;
+    }
+
+    /** True when the queue is three quarters full; sessions are asked to slow down. */
+    public boolean isSaturated() {
+        if (pending.get() < maxQueued - maxQueued / 4) return false;
+        saturationReported.set(true);
+        // 그 사이 작업이 모두 끝났으면 더 이상 완료 시점의 확인이 없으므로 여기서 확인
+        checkDrained(pending.get());
+        return true;
+    }
+
+    /**
+     * Registers a callback run (on a virtual thread) when the queue drains to half of max-queued after it was
+     * reported saturated, so sessions that stopped sending can be granted credit / resumed.
+     */
+    public void onDrain(Runnable listener) {
+        drainListeners.add(listener);
+    }
+
+    public int pending() {
+        return pending.get();
+    }
+
+    private void runNext(String userKey) {
+        // 큐의 head 가 이번에 실행할 작업 (큐 변경은 모두 map 의 compute 안에서)
+        Job[] head = new Job[1];
+        queues.computeIfPresent(userKey, (k, queue) -> {
+            head[0] = queue.peek();
+            return queue;
+        });
+        Job job = head[0];
+        if (job.ready() != null && !job.ready().isDone()) {
+            // 선행 작업(I/O)이 끝나면 풀의 뒤에 다시 줄 섬 (그 전까지 이 사용자의 다음 작업도 대기)
+            job.ready().whenComplete((r, e) -> resume(userKey));
+            return;
+        }
+        try {
+            waitTimer.record(System.nanoTime() - job.enqueuedAt(), TimeUnit.NANOSECONDS);
+            runTimer.record(job.task());
+        } catch (Exception e) {
+            log.error("[MatchJobExecutor] Match job failed for {}: {}", userKey, e.getMessage(), e);
+        } finally {
+            checkDrained(pending.decrementAndGet());
+        }
+
+        // 끝난 작업을 빼고, 남은 작업이 있으면 풀의 뒤에 다시 줄 섬 (없으면 사용자 큐 제거)
+        boolean[] more = new boolean[1];
+        queues.computeIfPresent(userKey, (k, queue) -> {
+            queue.poll();
+            more[0] = !queue.isEmpty();
+            return more[0] ? queue : null;
+        });
+        if (more[0]) cpuPool.execute(() -> runNext(userKey));
+    }
+
+    private void checkDrained(int left) {
+        if (left > maxQueued / 2 || !saturationReported.compareAndSet(true, false)) return;
+        // 리스너는 세션 전송(I/O)을 하므로 매칭 풀 밖에서 실행
+        Thread.ofVirtual().name("match-drain").start(() -> {
+            for (Runnable listener : drainListeners) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    log.warn("[MatchJobExecutor] Drain listener failed: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void resume(String userKey) {
+        try {
+            cpuPool.execute(() -> runNext(userKey));
+        } catch (RejectedExecutionException e) {
+            log.warn("[MatchJobExecutor] Executor shut down; dropping queued match jobs for {}", userKey);
+        }
+    }
+}
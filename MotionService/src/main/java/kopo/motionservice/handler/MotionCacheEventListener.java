@@ -0,0 +1,35 @@
+package kopo.motionservice.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kopo.motionservice.dto.MotionCacheEventDTO;
+import kopo.motionservice.service.IMotionDetectorService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 다른 레플리카가 발행한 템플릿 캐시 이벤트(motion_cache_events)를 받아 로컬 사용자 사전에 반영합니다.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class MotionCacheEventListener implements MessageListener {
+
+    private final IMotionDetectorService motionDetectorService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            MotionCacheEventDTO event = objectMapper.readValue(body, MotionCacheEventDTO.class);
+            motionDetectorService.applyCacheEvent(event);
+        } catch (Exception e) {
+            log.warn("[MotionCacheEventListener] Failed to apply cache event {}: {}", body, e.getMessage());
+        }
+    }
+}
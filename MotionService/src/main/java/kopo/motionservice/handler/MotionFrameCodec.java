@@ -0,0 +1,170 @@
+package kopo.motionservice.handler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * /ws/motion 바이너리 프레임 메시지 디코더.
+ *
+ * 레이아웃 (little-endian):
+ * <pre>
+ *   type u8 | encoding u8 | frameCount u16 | dims u16 | flags u16 | timestamp i64 (client epoch ms)
+ *   float32:   frameCount x dims float32
+ *   q16_delta: frameCount x dims int16 (KEYFRAME 이면 첫 프레임은 절대값, 나머지는 직전 프레임 대비 delta)
+ *   q8_delta:  KEYFRAME 이면 첫 프레임 dims int16 절대값, 이후 프레임마다 dims int8 delta
+ * </pre>
+ * 양자화 값 q 는 세션에 협상된 scale 로 복원됩니다 (feature = q * scale). delta 는 메시지를 넘어 이어지므로
+ * 세션의 첫 양자화 메시지는 KEYFRAME 이어야 하고, 클라이언트는 차원이 바뀌거나 재협상한 뒤 다시 KEYFRAME 을 보냅니다.
+ * 한 메시지에 여러 프레임을 묶어 보낼 수 있습니다. 제어 메시지(stream_start, end 등)는 기존 JSON 텍스트 프로토콜을 그대로 사용합니다.
+ */
+public final class MotionFrameCodec {
+
+    public static final int HEADER_BYTES = 16;
+
+    /** Message type: packed feature frames. */
+    public static final int TYPE_FRAMES = 1;
+
+    /** Feature encoding: raw float32. */
+    public static final int ENCODING_FLOAT32 = 0;
+
+    /** Feature encoding: int16 keyframe, then int8 frame-to-frame deltas (negotiated scale). */
+    public static final int ENCODING_Q8_DELTA = 1;
+
+    /** Feature encoding: int16 keyframe and int16 frame-to-frame deltas (negotiated scale). */
+    public static final int ENCODING_Q16_DELTA = 2;
+
+    /** Header flag: the first frame of the message carries absolute values (delta baseline reset). */
+    public static final int FLAG_KEYFRAME = 0x1;
+
+    /** Parsed message header; the payload follows at {@link #HEADER_BYTES}. */
+    public record Header(int type, int encoding, int frameCount, int dims, int flags, long timestamp) {
+
+        public boolean keyframe() {
+            return (flags & FLAG_KEYFRAME) != 0;
+        }
+    }
+
+    private MotionFrameCodec() {
+    }
+
+    /**
+     * Reads and validates the header, leaving {@code buf} little-endian and positioned at the first feature.
+     *
+     * @throws IllegalArgumentException on an unknown type/encoding or a payload that does not match the header
+     */
+    public static Header readHeader(ByteBuffer buf) {
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() < HEADER_BYTES) {
+            throw new IllegalArgumentException("binary frame message shorter than header: " + buf.remaining());
+        }
+        int type = buf.get() & 0xFF;
+        int encoding = buf.get() & 0xFF;
+        int frameCount = buf.getShort() & 0xFFFF;
+        int dims = buf.getShort() & 0xFFFF;
+        int flags = buf.getShort() & 0xFFFF;
+        long timestamp = buf.getLong();
+
+        if (type != TYPE_FRAMES) {
+            throw new IllegalArgumentException("unknown binary message type: " + type);
+        }
+        if (dims == 0) {
+            throw new IllegalArgumentException("frame dims must be positive");
+        }
+        boolean keyframe = (flags & FLAG_KEYFRAME) != 0 && frameCount > 0;
+        long expected = switch (encoding) {
+            case ENCODING_FLOAT32 -> (long) frameCount * dims * Float.BYTES;
+            case ENCODING_Q16_DELTA -> (long) frameCount * dims * Short.BYTES;
+            case ENCODING_Q8_DELTA -> keyframe
+                    ? (long) dims * Short.BYTES + (long) (frameCount - 1) * dims
+                    : (long) frameCount * dims;
+            default -> throw new IllegalArgumentException("unsupported frame encoding: " + encoding);
+        };
+        if (buf.remaining() != expected) {
+            throw new IllegalArgumentException("payload " + buf.remaining() + " bytes, header expects " + expected);
+        }
+        return new Header(type, encoding, frameCount, dims, flags, timestamp);
+    }
+
+    /**
+     * Encoding code for a negotiated encoding name (float32, q8_delta, q16_delta).
+     *
+     * @return -1 for an unknown name
+     */
+    public static int encodingOf(String name) {
+        if (name == null) return -1;
+        return switch (name.toLowerCase()) {
+            case "float32" -> ENCODING_FLOAT32;
+            case "q8_delta" -> ENCODING_Q8_DELTA;
+            case "q16_delta" -> ENCODING_Q16_DELTA;
+            default -> -1;
+        };
+    }
+
+    /** Reads the next frame ({@code header.dims()} float32 values) into {@code out}. */
+    public static void readFrame(ByteBuffer buf, Header header, double[] out) {
+        for (int k = 0; k < header.dims(); k++) out[k] = buf.getFloat();
+    }
+
+    /**
+     * 세션별 양자화 delta 디코더: 직전 프레임의 양자화 값을 정수로 누적해 두고 (float 오차가 쌓이지 않음)
+     * 프레임마다 q * scale 로 복원해 호출자가 준 행(매칭 버퍼의 행)에 바로 씁니다. 세션 메시지 스레드에서만 사용합니다.
+     */
+    public static final class DeltaDecoder {
+
+        private final int encoding;
+        private final double scale;
+        private int[] last = new int[0];
+        private boolean primed;
+
+        public DeltaDecoder(int encoding, double scale) {
+            if (encoding != ENCODING_Q8_DELTA && encoding != ENCODING_Q16_DELTA) {
+                throw new IllegalArgumentException("not a quantized encoding: " + encoding);
+            }
+            if (!(scale > 0) || Double.isInfinite(scale)) {
+                throw new IllegalArgumentException("scale must be a positive number");
+            }
+            this.encoding = encoding;
+            this.scale = scale;
+        }
+
+        public int encoding() {
+            return encoding;
+        }
+
+        public double scale() {
+            return scale;
+        }
+
+        /**
+         * Validates a message against the negotiated encoding and the delta baseline before any frame is read,
+         * so a rejected message leaves the session buffer untouched.
+         */
+        public void check(Header header) {
+            if (header.encoding() != encoding) {
+                throw new IllegalArgumentException("frame encoding " + header.encoding() + " does not match negotiated " + encoding);
+            }
+            if (header.frameCount() == 0 || header.keyframe()) return;
+            if (!primed) {
+                throw new IllegalArgumentException("delta frames before the first keyframe");
+            }
+            if (last.length != header.dims()) {
+                throw new IllegalArgumentException("delta frame dims " + header.dims() + " differ from keyframe dims " + last.length);
+            }
+        }
+
+        /** Reads frame {@code index} of a {@link #check checked} message into {@code out}. */
+        public void readFrame(ByteBuffer buf, Header header, int index, double[] out) {
+            int dims = header.dims();
+            if (index == 0 && header.keyframe()) {
+                if (last.length != dims) last = new int[dims];
+                for (int k = 0; k < dims; k++) last[k] = buf.getShort();
+                primed = true;
+            } else if (encoding == ENCODING_Q8_DELTA) {
+                for (int k = 0; k < dims; k++) last[k] += buf.get();
+            } else {
+                for (int k = 0; k < dims; k++) last[k] += buf.getShort();
+            }
+            for (int k = 0; k < dims; k++) out[k] = last[k] * scale;
+        }
+    }
+}
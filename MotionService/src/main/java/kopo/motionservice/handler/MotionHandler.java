@@ -3,29 +3,93 @@ package kopo.motionservice.handler;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import kopo.motionservice.dto.MatchResultDTO;
+import kopo.motionservice.matching.GestureSegmenter;
+import kopo.motionservice.matching.StreamingSubsequenceMatcher;
+import kopo.motionservice.matching.UserDictionary;
 import kopo.motionservice.service.IMotionDetectorService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.lang.NonNull; // Nullability 어노테이션 추가
 import java.security.Principal; // Principal 객체 사용을 위한 Import 추가
 
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
 @RequiredArgsConstructor
 @Component
-public class MotionHandler extends TextWebSocketHandler {
+public class MotionHandler extends AbstractWebSocketHandler {
 
     private final IMotionDetectorService matchingService;
+    private final FrameBufferPool frameBufferPool;
+    private final MatchJobExecutor matchJobExecutor;
+    private final GestureSegmenter.Settings segmenterSettings;
     private final ObjectMapper mapper = new ObjectMapper();
 
-    // per-session buffers of frames (each frame is double[] feature vector)
-    private final Map<String, List<double[]>> buffers = new ConcurrentHashMap<>();
+    // per-session bounded frame ring buffers (행 재사용, 전역 메모리 예산은 FrameBufferPool)
+    private final Map<String, SessionFrameBuffer> buffers = new ConcurrentHashMap<>();
+
+    // 매칭 작업에 넘겼다가 돌아온 버퍼 (다음 'end' 때 세션 버퍼와 교대로 사용)
+    private final Map<String, SessionFrameBuffer> spareBuffers = new ConcurrentHashMap<>();
+
+    // 매칭 결과는 매칭 작업 스레드에서 보내므로 세션별 thread-safe 송신 데코레이터를 사용
+    private final Map<String, WebSocketSession> outbound = new ConcurrentHashMap<>();
+
+    @Value("${motion.ws.send-time-limit-ms:5000}")
+    private int sendTimeLimitMs;
+
+    @Value("${motion.ws.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    // per-session JSON 텍스트 프레임 디코더 / 응답 인코더 (트리 파싱 없이 frame·end 처리)
+    private final Map<String, MotionTextCodec> codecs = new ConcurrentHashMap<>();
+
+    // per-session 양자화 delta 디코더 (핸드셰이크 쿼리 또는 frame_encoding 메시지로 협상, 없으면 float32 만 허용)
+    private final Map<String, MotionFrameCodec.DeltaDecoder> deltaDecoders = new ConcurrentHashMap<>();
+    // per-session 바이너리 streaming 경로의 디코딩 행 (matcher 가 프레임을 보관하지 않으므로 메시지 간 재사용)
+    private final Map<String, double[]> streamRows = new ConcurrentHashMap<>();
+
+    // per-session 자동 제스처 분할 (segment_start ~ segment_stop); 'end' 없이 움직인 구간만 매칭에 제출
+    private final Map<String, GestureSegmenter> segmenters = new ConcurrentHashMap<>();
+
+    // per-session streaming matchers (stream_start ~ stream_stop); frames are matched incrementally instead of buffered
+    private final Map<String, StreamingSubsequenceMatcher> streams = new ConcurrentHashMap<>();
+
+    // per-session flow control (flow_control 메시지로 협상, 기본은 기존과 같은 프레임당 ack)
+    private final Map<String, SessionFlowControl> flows = new ConcurrentHashMap<>();
+    // 흐름 제어 평가와 ack / credit / flow 전송을 세션별로 직렬화 (매칭 작업·drain 스레드에서도 재평가하므로)
+    private final Map<String, ReentrantLock> flowLocks = new ConcurrentHashMap<>();
+
+    @Value("${motion.ws.flow.ack-every:15}")
+    private int flowAckEvery;
+
+    @Value("${motion.ws.flow.ack-interval-ms:500}")
+    private long flowAckIntervalMs;
+
+    @Value("${motion.ws.flow.window:60}")
+    private int flowWindow;
+
+    // 세션 버퍼가 이 프레임 수 이상이면 slow_down (절반 이하로 줄면 resume)
+    @Value("${motion.ws.flow.high-watermark:900}")
+    private int flowHighWatermark;
+
+    @PostConstruct
+    public void init() {
+        // 매칭 큐가 포화에서 풀리면 프레임을 멈춘 세션(credit 소진, slow_down)에도 credit / resume 을 다시 보냄
+        matchJobExecutor.onDrain(this::refreshFlows);
+    }
 
     // MatchResultDTO를 응답 Map으로 변환하는 헬퍼 함수
     private Map<String, Object> buildMatchResponse(MatchResultDTO res) {
@@ -36,6 +100,7 @@ public class MotionHandler extends TextWebSocketHandler {
         out.put("phrase", res.getPhrase());
         out.put("motionType", res.getMotionType());
         out.put("score", res.getScore());
+        out.put("dictionaryVersion", res.getDictionaryVersion());
         return out;
     }
 
@@ -63,31 +128,376 @@ public class MotionHandler extends TextWebSocketHandler {
         }
         */
 
-        buffers.put(session.getId(), new ArrayList<>());
+        outbound.put(session.getId(), new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, sendBufferSizeLimit));
+        buffers.put(session.getId(), frameBufferPool.open());
+        codecs.put(session.getId(), new MotionTextCodec());
+        flows.put(session.getId(), SessionFlowControl.perFrame(flowHighWatermark, System.currentTimeMillis()));
+        flowLocks.put(session.getId(), new ReentrantLock());
+
+        // 핸드셰이크에서 압축 프레임 인코딩을 요청했으면 (?encoding=q8_delta&scale=...) 바로 협상 결과를 알림
+        String encoding = (String) session.getAttributes().get("frameEncoding");
+        if (encoding != null) {
+            try {
+                send(session, negotiateEncoding(session, encoding, (String) session.getAttributes().get("frameScale")));
+            } catch (IOException e) {
+                log.warn("[MotionHandler] Failed to send frame_encoding to client {}: {}", session.getId(), e.getMessage());
+            }
+        }
     }
 
     @Override
     public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull org.springframework.web.socket.CloseStatus status) {
         log.info("[MotionHandler] Client disconnected: {}", session.getId());
-        buffers.remove(session.getId());
+        frameBufferPool.close(buffers.remove(session.getId()));
+        frameBufferPool.close(spareBuffers.remove(session.getId()));
+        outbound.remove(session.getId());
+        codecs.remove(session.getId());
+        deltaDecoders.remove(session.getId());
+        streamRows.remove(session.getId());
+        streams.remove(session.getId());
+        segmenters.remove(session.getId());
+        flows.remove(session.getId());
+        flowLocks.remove(session.getId());
     }
 
-    @Override
-    protected void handleTextMessage(@NonNull WebSocketSession session, @NonNull TextMessage message) throws Exception {
-        String payload = message.getPayload();
-
-        // userId 추출 (attributes에서 가져오기)
+    // userId 추출 (attributes에서 가져오기)
+    private String resolveUserId(WebSocketSession session) {
         String userId = (String) session.getAttributes().get("userId");
         if (userId == null) {
             userId = Optional.ofNullable(session.getPrincipal())
                     .map(Principal::getName)
                     .orElse(null);
         }
+        return userId;
+    }
+
+    /**
+     * 바이너리 프레임 메시지 (MotionFrameCodec): 헤더 + float32 특징값을 JsonNode 없이 바로 프레임 버퍼로 읽습니다.
+     * 한 메시지에 여러 프레임이 올 수 있으며, buffered 모드에서는 메시지당 ack 하나를 보냅니다.
+     */
+    @Override
+    protected void handleBinaryMessage(@NonNull WebSocketSession session, @NonNull BinaryMessage message) throws Exception {
+        String userId = resolveUserId(session);
+        try {
+            ByteBuffer buf = message.getPayload();
+            MotionFrameCodec.Header header = MotionFrameCodec.readHeader(buf);
+            MotionFrameCodec.DeltaDecoder delta = null;
+            if (header.encoding() != MotionFrameCodec.ENCODING_FLOAT32) {
+                delta = deltaDecoders.get(session.getId());
+                if (delta == null) {
+                    throw new IllegalArgumentException("frame encoding " + header.encoding() + " was not negotiated");
+                }
+                delta.check(header);
+            }
+            log.debug("[MotionHandler] Received {} binary frame(s) x {} dims from client {}({})",
+                    header.frameCount(), header.dims(), session.getId(), userId);
+
+            if (streams.containsKey(session.getId())) {
+                // streaming matcher 는 프레임을 보관하지 않으므로 세션의 한 행을 재사용 (차원 수가 바뀔 때만 새로 할당)
+                double[] feat = streamRows.get(session.getId());
+                if (feat == null || feat.length != header.dims()) {
+                    feat = new double[header.dims()];
+                    streamRows.put(session.getId(), feat);
+                }
+                for (int f = 0; f < header.frameCount(); f++) {
+                    readFrame(buf, header, delta, f, feat);
+                    acceptFrame(session, userId, feat);
+                }
+            } else {
+                // buffered: float32 값을 세션 ring buffer 의 행에 바로 기록
+                SessionFrameBuffer buffer = buffer(session);
+                for (int f = 0; f < header.frameCount(); f++) {
+                    double[] row = buffer.claim(header.dims(), System.nanoTime());
+                    readFrame(buf, header, delta, f, row);
+                    buffer.commit();
+                    buffer = segment(session, userId, buffer, row);
+                }
+            }
+            afterFrames(session, header.frameCount());
+        } catch (IllegalArgumentException e) {
+            log.warn("[MotionHandler] Invalid binary frame message from client {}: {}", session.getId(), e.getMessage());
+            send(session, Map.of("error", e.getMessage()));
+        }
+    }
+
+    // float32 는 그대로, 양자화 인코딩은 delta 를 누적해 float 특징값으로 복원하며 out 행에 바로 기록
+    private static void readFrame(ByteBuffer buf, MotionFrameCodec.Header header, MotionFrameCodec.DeltaDecoder delta,
+                                  int index, double[] out) {
+        if (delta == null) {
+            MotionFrameCodec.readFrame(buf, header, out);
+        } else {
+            delta.readFrame(buf, header, index, out);
+        }
+    }
+
+    /**
+     * 바이너리 프레임 인코딩 협상: float32(기본) | q8_delta | q16_delta, 양자화 인코딩은 scale(> 0) 이 필요합니다.
+     * 재협상하면 delta 기준이 초기화되므로 클라이언트는 다음 메시지를 KEYFRAME 으로 보내야 합니다.
+     */
+    private Map<String, Object> negotiateEncoding(WebSocketSession session, String name, String scale) {
+        Map<String, Object> out = new HashMap<>();
+        out.put("type", "frame_encoding");
+        int encoding = MotionFrameCodec.encodingOf(name);
+        if (encoding < 0) {
+            out.put("status", "error");
+            out.put("message", "unknown encoding");
+            return out;
+        }
+        if (encoding == MotionFrameCodec.ENCODING_FLOAT32) {
+            deltaDecoders.remove(session.getId());
+        } else {
+            try {
+                deltaDecoders.put(session.getId(), new MotionFrameCodec.DeltaDecoder(encoding, Double.parseDouble(String.valueOf(scale))));
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException 포함
+                out.put("status", "error");
+                out.put("message", "scale must be a positive number");
+                return out;
+            }
+            out.put("scale", deltaDecoders.get(session.getId()).scale());
+        }
+        log.info("[MotionHandler] Frame encoding for client {}: {} (code {}, scale {})", session.getId(), name.toLowerCase(), encoding, scale);
+        out.put("status", "success");
+        out.put("encoding", name.toLowerCase());
+        out.put("code", encoding);
+        return out;
+    }
+
+    /**
+     * 프레임 하나 처리: streaming 모드면 subsequence matcher 에 넣고 phrase 가 끝나면 바로 보고, 아니면 세션 버퍼에 쌓습니다.
+     */
+    private void acceptFrame(WebSocketSession session, String userId, double[] feat) throws Exception {
+        // streaming mode: update the subsequence matcher and report as soon as a phrase ends
+        StreamingSubsequenceMatcher matcher = streams.get(session.getId());
+        if (matcher != null) {
+            StreamingSubsequenceMatcher.Match match = matcher.push(feat);
+            if (match != null) {
+                MatchResultDTO res = matchingService.acceptStreamingMatch(userId, match);
+                Map<String, Object> out = buildMatchResponse(res);
+                out.put("streamed", true);
+                send(session, out);
+            }
+            return;
+        }
+        SessionFrameBuffer buffer = buffer(session);
+        segment(session, userId, buffer, buffer.append(feat, System.nanoTime()));
+    }
+
+    /**
+     * 자동 분할(segment_start) 세션: 방금 버퍼에 들어간 프레임으로 motion energy 를 갱신하고,
+     * 제스처가 끝나면 앞뒤 idle 프레임을 뺀 구간만 매칭에 제출합니다.
+     *
+     * @return 이후 프레임을 쓸 세션 버퍼 (구간을 제출했으면 새 버퍼)
+     */
+    private SessionFrameBuffer segment(WebSocketSession session, String userId, SessionFrameBuffer buffer, double[] frame) throws IOException {
+        GestureSegmenter segmenter = segmenters.get(session.getId());
+        if (segmenter == null) return buffer;
+        switch (segmenter.push(frame)) {
+            case IDLE -> buffer.keepNewest(segmenter.held());
+            case CUT -> {
+                buffer.dropNewest(segmenter.trailing());
+                log.info("[MotionHandler] Gesture segment for client {}({}): {} frames ({} trailing idle trimmed)",
+                        session.getId(), userId, buffer.size(), segmenter.trailing());
+                submitMatch(session, userId, segmenter.detectionArea(), true);
+                return buffer(session);
+            }
+            case DISCARD -> {
+                log.debug("[MotionHandler] Gesture segment too short for client {}: {} frames", session.getId(), segmenter.segmentLength());
+                buffer.clear();
+            }
+            case ACTIVE -> {
+            }
+        }
+        return buffer;
+    }
+
+    private WebSocketSession outbound(WebSocketSession session) {
+        return outbound.getOrDefault(session.getId(), session);
+    }
+
+    private void send(WebSocketSession session, Object payload) throws IOException {
+        sendJson(session, mapper.writeValueAsString(payload));
+    }
+
+    // 미리 만든 JSON 응답 (MotionTextCodec) 전송
+    private void sendJson(WebSocketSession session, String json) throws IOException {
+        outbound(session).sendMessage(new TextMessage(json));
+    }
+
+    private MotionTextCodec codec(WebSocketSession session) {
+        return codecs.computeIfAbsent(session.getId(), k -> new MotionTextCodec());
+    }
+
+    private SessionFrameBuffer buffer(WebSocketSession session) {
+        return buffers.computeIfAbsent(session.getId(), k -> frameBufferPool.open());
+    }
+
+    /**
+     * 프레임을 받은 뒤(또는 버퍼가 비워진 뒤) 세션의 흐름 제어 상태에 따라 ack / credit / slow_down·resume 을 보냅니다.
+     */
+    private void afterFrames(WebSocketSession session, int frames) throws IOException {
+        flows.computeIfAbsent(session.getId(),
+                k -> SessionFlowControl.perFrame(flowHighWatermark, System.currentTimeMillis()));
+        signalFlow(session, flowLocks.computeIfAbsent(session.getId(), k -> new ReentrantLock()), frames);
+    }
+
+    private void signalFlow(WebSocketSession session, ReentrantLock lock, int frames) throws IOException {
+        lock.lock();
+        try {
+            SessionFlowControl flow = flows.get(session.getId());
+            if (flow == null) return; // 그 사이 세션이 닫힘
+            SessionFrameBuffer buffer = buffers.get(session.getId());
+            int buffered = (buffer == null) ? 0 : buffer.size();
+            SessionFlowControl.Signal signal = flow.onFrames(frames, buffered, matchJobExecutor.isSaturated(),
+                    streams.containsKey(session.getId()), System.currentTimeMillis());
+            if (signal.isEmpty()) return;
+
+            if (signal.ack()) {
+                sendJson(session, codec(session).ack(buffered, flow.received()));
+            }
+            if (signal.credit() > 0) {
+                sendJson(session, codec(session).window(signal.credit()));
+            }
+            if (signal.pressure() != SessionFlowControl.Pressure.NONE) {
+                String state = (signal.pressure() == SessionFlowControl.Pressure.SLOW_DOWN) ? "slow_down" : "resume";
+                log.info("[MotionHandler] Flow {} for client {} (buffered={})", state, session.getId(), buffered);
+                sendJson(session, codec(session).flow(state, buffered));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        // 로깅에 userId 포함
-        log.info("[MotionHandler] Received data from client {}({}): {}", session.getId(), userId, payload);
+    /**
+     * 프레임 없이 흐름 제어만 다시 평가합니다 (WebSocket 스레드 밖에서 호출). credit 을 다 쓰고 멈춘 클라이언트는
+     * 프레임을 보내지 않으므로, 버퍼나 매칭 큐가 줄어든 시점에 서버가 먼저 credit / resume 을 보내야 합니다.
+     */
+    private void refreshFlow(WebSocketSession session) {
+        ReentrantLock lock = flowLocks.get(session.getId());
+        if (lock == null || !session.isOpen()) return;
+        try {
+            signalFlow(session, lock, 0);
+        } catch (IOException e) {
+            log.warn("[MotionHandler] Failed to send flow control to client {}: {}", session.getId(), e.getMessage());
+        }
+    }
 
+    // 매칭 큐 drain 알림: 열려 있는 모든 세션의 흐름 제어를 다시 평가
+    private void refreshFlows() {
+        for (WebSocketSession session : outbound.values()) {
+            refreshFlow(session);
+        }
+    }
+
+    /**
+     * 매칭 작업: ring buffer 의 zero-copy 뷰를 그대로 매칭에 넘기고 결과를 세션으로 보낸 뒤 버퍼를 돌려놓습니다.
+     * 사전은 virtual thread 에서 미리 로드된 스냅샷만 사용하므로 매칭 풀에서 Redis / Mongo 로드가 일어나지 않습니다.
+     */
+    private void runMatch(WebSocketSession session, SessionFrameBuffer buffer, String detectionArea, String userId,
+                          CompletableFuture<UserDictionary> dictionary, boolean segmented) {
         try {
+            // 로드가 실패했으면 null 사전 (매칭 없음 응답)
+            UserDictionary snapshot = dictionary.isCompletedExceptionally() ? null : dictionary.getNow(null);
+            MatchResultDTO res = matchingService.matchSequence(buffer.view(), detectionArea, userId, snapshot);
+            if (session.isOpen()) {
+                Map<String, Object> out = buildMatchResponse(res);
+                if (segmented) out.put("segmented", true);
+                send(session, out);
+            }
+        } catch (Exception e) {
+            log.error("[MotionHandler] Match failed for client {}({})", session.getId(), userId, e);
+        } finally {
+            recycle(session, buffer);
+            // 매칭 완료로 매칭 큐가 줄었으므로 이 세션의 credit / resume 을 다시 평가
+            refreshFlow(session);
+        }
+    }
+
+    // 다 쓴 버퍼를 비워 세션의 예비 버퍼로 돌려놓음 (세션이 닫혔거나 예비가 이미 있으면 풀에 반납)
+    private void recycle(WebSocketSession session, SessionFrameBuffer buffer) {
+        buffer.clear();
+        buffer.unpin();
+        if (!session.isOpen() || spareBuffers.putIfAbsent(session.getId(), buffer) != null) {
+            frameBufferPool.close(buffer);
+        } else if (!buffers.containsKey(session.getId())) {
+            // 그 사이 세션이 닫힘
+            frameBufferPool.close(spareBuffers.remove(session.getId()));
+        }
+    }
+
+    /**
+     * 'end' 처리 (텍스트 fast path 와 트리 파싱 경로 공용): 버퍼에 쌓인 제스처를 매칭 실행기에 제출합니다.
+     */
+    private void end(WebSocketSession session, String userId, String detectionArea) throws Exception {
+        GestureSegmenter segmenter = segmenters.get(session.getId());
+        if (segmenter != null) segmenter.reset();
+        if (!submitMatch(session, userId, detectionArea, false)) {
+            sendJson(session, MotionTextCodec.EMPTY_SEQUENCE);
+        }
+        // 제출했든 버퍼가 비어 있었든 흐름 제어를 다시 평가 (credit 을 기다리는 클라이언트가 멈추지 않도록)
+        afterFrames(session, 0);
+    }
+
+    /**
+     * 채워진 버퍼를 매칭 작업에 넘기고, 세션은 예비 버퍼로 계속 프레임을 받습니다.
+     *
+     * @return false when the session buffer is empty (nothing submitted)
+     */
+    private boolean submitMatch(WebSocketSession session, String userId, String detectionArea, boolean segmented) throws IOException {
+        SessionFrameBuffer buffer = buffers.get(session.getId());
+        if (buffer == null || buffer.size() == 0) return false;
+
+        buffer.pin();
+        SessionFrameBuffer next = spareBuffers.remove(session.getId());
+        buffers.put(session.getId(), (next != null) ? next : frameBufferPool.open());
+
+        // ✨ userId를 포함하여 매칭 (전용 매칭 실행기에서 사용자별 순서대로, 결과는 작업 스레드에서 전송)
+        String area = (detectionArea == null) ? "face" : detectionArea;
+        // 사전이 캐시에 없으면 virtual thread 에서 미리 로드하고, DTW 는 로드가 끝난 뒤 그 스냅샷으로 매칭 풀에서 실행
+        CompletableFuture<UserDictionary> ready = matchingService.preloadUserDictionary(userId);
+        boolean queued = matchJobExecutor.submit(userId != null ? userId : session.getId(), ready,
+                () -> runMatch(session, buffer, area, userId, ready, segmented));
+        if (!queued) {
+            log.warn("[MotionHandler] Match queue saturated; rejecting match for client {}({})", session.getId(), userId);
+            recycle(session, buffer);
+            sendJson(session, MotionTextCodec.BUSY);
+        }
+        return true;
+    }
+
+    @Override
+    protected void handleTextMessage(@NonNull WebSocketSession session, @NonNull TextMessage message) throws Exception {
+        String payload = message.getPayload();
+        String userId = resolveUserId(session);
+
+        // 로깅에 userId 포함 (프레임마다 오므로 debug)
+        log.debug("[MotionHandler] Received data from client {}({}): {}", session.getId(), userId, payload);
+
+        try {
+            // frame / end 는 JsonNode 트리 없이 토큰 루프로 바로 처리
+            MotionTextCodec codec = codec(session);
+            MotionTextCodec.Kind kind = codec.decode(payload);
+            if (kind == MotionTextCodec.Kind.FRAME) {
+                int dims = codec.featureCount();
+                if (dims < 0) {
+                    sendJson(session, MotionTextCodec.MISSING_FEATURES);
+                    return;
+                }
+                if (streams.containsKey(session.getId())) {
+                    acceptFrame(session, userId, codec.frame());
+                } else {
+                    SessionFrameBuffer buffer = buffer(session);
+                    segment(session, userId, buffer, buffer.append(codec.features(), dims, System.nanoTime()));
+                }
+                afterFrames(session, 1);
+                return;
+            }
+            if (kind == MotionTextCodec.Kind.END) {
+                end(session, userId, codec.detectionArea());
+                return;
+            }
+
+            // 제어 메시지 및 그 밖의 형식은 기존 트리 파싱 경로
             JsonNode root = mapper.readTree(payload);
             String type = root.has("type") ? root.get("type").asText() : "frame";
 
@@ -97,63 +507,129 @@ public class MotionHandler extends TextWebSocketHandler {
                         log.info("[MotionHandler] Manually loading cache for userId: {}", userId);
                         matchingService.reloadCache(userId);
                         // Send success response
-                        session.sendMessage(new TextMessage(mapper.writeValueAsString(Map.of("type", "dictionaries_loaded", "status", "success"))));
+                        send(session, Map.of("type", "dictionaries_loaded", "status", "success"));
                     } catch (Exception e) {
                         log.error("[MotionHandler] Failed to manually load cache for userId: {}", userId, e);
-                        session.sendMessage(new TextMessage(mapper.writeValueAsString(Map.of("type", "dictionaries_loaded", "status", "error", "message", e.getMessage()))));
+                        send(session, Map.of("type", "dictionaries_loaded", "status", "error", "message", e.getMessage()));
                     }
                 } else {
                     log.warn("[MotionHandler] Attempted to load dictionaries for anonymous user.");
-                    session.sendMessage(new TextMessage(mapper.writeValueAsString(Map.of("type", "dictionaries_loaded", "status", "error", "message", "User is not authenticated"))));
+                    send(session, Map.of("type", "dictionaries_loaded", "status", "error", "message", "User is not authenticated"));
+                }
+                return;
+            }
+
+            if ("flow_control".equalsIgnoreCase(type)) {
+                // { type: flow_control, mode: per_frame | coalesced | credit, ackEvery?, ackIntervalMs?, window? }
+                SessionFlowControl.Mode mode;
+                try {
+                    mode = SessionFlowControl.Mode.valueOf(root.path("mode").asText("per_frame").toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    send(session, Map.of("type", "flow_control", "status", "error", "message", "unknown mode"));
+                    return;
+                }
+                SessionFlowControl flow = new SessionFlowControl(mode,
+                        root.path("ackEvery").asInt(flowAckEvery),
+                        root.path("ackIntervalMs").asLong(flowAckIntervalMs),
+                        root.path("window").asInt(flowWindow),
+                        flowHighWatermark, System.currentTimeMillis());
+                flows.put(session.getId(), flow);
+                log.info("[MotionHandler] Flow control for client {}: mode={}, ackEvery={}, ackIntervalMs={}, window={}",
+                        session.getId(), mode, flow.ackEvery(), flow.ackIntervalMs(), flow.window());
+                Map<String, Object> out = new HashMap<>();
+                out.put("type", "flow_control");
+                out.put("status", "success");
+                out.put("mode", mode.name().toLowerCase());
+                out.put("ackEvery", flow.ackEvery());
+                out.put("ackIntervalMs", flow.ackIntervalMs());
+                // credit 모드: 처음 window 만큼 보낼 수 있음
+                if (mode == SessionFlowControl.Mode.CREDIT) out.put("credit", flow.window());
+                send(session, out);
+                return;
+            }
+
+            if ("frame_encoding".equalsIgnoreCase(type)) {
+                // { type: frame_encoding, encoding: float32 | q8_delta | q16_delta, scale? }
+                send(session, negotiateEncoding(session, root.path("encoding").asText("float32"), root.path("scale").asText(null)));
+                return;
+            }
+
+            if ("stream_start".equalsIgnoreCase(type)) {
+                String detectionArea = root.has("detectionArea") ? root.get("detectionArea").asText() : "face";
+                StreamingSubsequenceMatcher matcher = matchingService.openStreamingMatcher(userId, detectionArea);
+                if (matcher == null) {
+                    send(session, Map.of("type", "stream_started", "status", "error", "message", "no templates for detection area"));
+                    return;
                 }
+                streams.put(session.getId(), matcher);
+                segmenters.remove(session.getId());
+                SessionFrameBuffer buffer = buffers.get(session.getId());
+                if (buffer != null) buffer.clear();
+                send(session, Map.of("type", "stream_started", "status", "success", "templates", matcher.templateCount()));
+                afterFrames(session, 0);
+                return;
+            }
+
+            if ("segment_start".equalsIgnoreCase(type)) {
+                // { type: segment_start, detectionArea? } 이후 'end' 없이 서버가 움직인 구간을 잘라 매칭
+                String detectionArea = root.has("detectionArea") ? root.get("detectionArea").asText() : "face";
+                streams.remove(session.getId());
+                segmenters.put(session.getId(), new GestureSegmenter(segmenterSettings, detectionArea));
+                SessionFrameBuffer buffer = buffers.get(session.getId());
+                if (buffer != null) buffer.clear();
+                log.info("[MotionHandler] Gesture segmentation started for client {}({}), detectionArea={}", session.getId(), userId, detectionArea);
+                send(session, Map.of("type", "segment_started", "status", "success", "detectionArea", detectionArea));
+                afterFrames(session, 0);
+                return;
+            }
+
+            if ("segment_stop".equalsIgnoreCase(type)) {
+                segmenters.remove(session.getId());
+                SessionFrameBuffer buffer = buffers.get(session.getId());
+                if (buffer != null) buffer.clear();
+                send(session, Map.of("type", "segment_stopped"));
+                afterFrames(session, 0);
+                return;
+            }
+
+            if ("stream_stop".equalsIgnoreCase(type)) {
+                streams.remove(session.getId());
+                sendJson(session, MotionTextCodec.STREAM_STOPPED);
+                afterFrames(session, 0);
                 return;
             }
 
             if ("frame".equalsIgnoreCase(type)) {
                 JsonNode featuresNode = root.get("features");
                 if (featuresNode == null || !featuresNode.isArray()) {
-                    session.sendMessage(new TextMessage(mapper.writeValueAsString(Map.of("error", "missing features array"))));
+                    sendJson(session, MotionTextCodec.MISSING_FEATURES);
                     return;
                 }
                 double[] feat = new double[featuresNode.size()];
                 for (int i = 0; i < featuresNode.size(); i++) {
                     feat[i] = featuresNode.get(i).asDouble(0.0);
                 }
-                buffers.computeIfAbsent(session.getId(), k -> new ArrayList<>()).add(feat);
 
-                // Optionally acknowledge
-                session.sendMessage(new TextMessage(mapper.writeValueAsString(Map.of("type", "ack", "buffered", buffers.get(session.getId()).size()))));
+                acceptFrame(session, userId, feat);
+
+                // ack / credit / slow_down (협상된 흐름 제어 모드에 따라)
+                afterFrames(session, 1);
                 return;
             }
 
             if ("end".equalsIgnoreCase(type)) {
                 // 'end'가 왔을 때만 매칭 수행
                 String detectionArea = root.has("detectionArea") ? root.get("detectionArea").asText() : null;
-                List<double[]> seq = buffers.getOrDefault(session.getId(), Collections.emptyList());
-
-                if (seq.isEmpty()) {
-                    session.sendMessage(new TextMessage(mapper.writeValueAsString(Map.of("type", "match", "matched", false, "reason", "empty_sequence"))));
-                    return;
-                }
-
-                // ✨ userId를 포함하여 매칭 서비스 호출 (중요!)
-                MatchResultDTO res = matchingService.matchSequence(seq, detectionArea == null ? "face" : detectionArea, userId);
-
-                // 응답 전송
-                Map<String, Object> out = buildMatchResponse(res);
-                session.sendMessage(new TextMessage(mapper.writeValueAsString(out)));
-
-                // clear buffer after end
-                buffers.remove(session.getId());
+                end(session, userId, detectionArea);
                 return;
             }
 
             // unknown type: echo
-            session.sendMessage(new TextMessage("ECHO: " + payload));
+            outbound(session).sendMessage(new TextMessage("ECHO: " + payload));
 
         } catch (Exception e) {
             log.error("[MotionHandler] Error processing message", e);
-            session.sendMessage(new TextMessage(mapper.writeValueAsString(Map.of("error", e.getMessage()))));
+            send(session, Map.of("error", e.getMessage()));
         }
     }
 }
\ No newline at end of file
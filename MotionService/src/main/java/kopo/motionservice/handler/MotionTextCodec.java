@@ -0,0 +1,142 @@
+package kopo.motionservice.handler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * /ws/motion JSON 텍스트 프로토콜의 프레임 경로 디코더 / 응답 인코더 (세션당 하나, 세션 메시지 스레드에서만 사용).
+ *
+ * frame / end 메시지는 JsonNode 트리 없이 JsonParser 토큰 루프로 type, detectionArea, features 만 읽고,
+ * features 는 세션마다 재사용하는 double[] 에 바로 채웁니다. 그 밖의 메시지(제어 메시지, 형식이 다른 값)는
+ * {@link Kind#OTHER} 로 돌려주어 호출자가 기존 트리 파싱 경로로 처리합니다.
+ * ack / window / flow 처럼 프레임마다 나가는 응답은 미리 만든 조각을 재사용 StringBuilder 에 이어 붙여 만듭니다.
+ */
+public final class MotionTextCodec {
+
+    public enum Kind { FRAME, END, OTHER }
+
+    // FastDoubleParser: 숫자 토큰을 String 으로 만들지 않고 char[] 에서 바로 파싱
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .enable(StreamReadFeature.USE_FAST_DOUBLE_PARSER)
+            .build();
+
+    // 고정 응답
+    public static final String EMPTY_SEQUENCE = "{\"type\":\"match\",\"matched\":false,\"reason\":\"empty_sequence\"}";
+    public static final String BUSY = "{\"type\":\"match\",\"matched\":false,\"reason\":\"busy\"}";
+    public static final String STREAM_STOPPED = "{\"type\":\"stream_stopped\"}";
+    public static final String MISSING_FEATURES = "{\"error\":\"missing features array\"}";
+
+    private double[] features = new double[64];
+    private int featureCount;      // -1: features missing or not an array
+    private double[] frame = new double[0];
+    private String detectionArea;
+    private final StringBuilder out = new StringBuilder(96);
+
+    /**
+     * Decodes a frame or end message. Anything the token loop does not handle exactly like the tree path
+     * (control messages, non-numeric features, malformed JSON) is reported as {@link Kind#OTHER}.
+     */
+    public Kind decode(String payload) throws IOException {
+        featureCount = -1;
+        detectionArea = null;
+        Kind kind = Kind.FRAME; // type 이 없으면 frame (기존 동작)
+
+        try (JsonParser p = FACTORY.createParser(payload)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return Kind.OTHER;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName(); // field names are canonicalized by the parser
+                JsonToken value = p.nextToken();
+                switch (name) {
+                    case "type" -> {
+                        if (value != JsonToken.VALUE_STRING) return Kind.OTHER;
+                        if (textEquals(p, "frame")) kind = Kind.FRAME;
+                        else if (textEquals(p, "end")) kind = Kind.END;
+                        else return Kind.OTHER;
+                    }
+                    case "detectionArea" -> {
+                        if (value != JsonToken.VALUE_STRING) return Kind.OTHER;
+                        detectionArea = p.getText();
+                    }
+                    case "features" -> {
+                        if (value == JsonToken.START_ARRAY) {
+                            if (!readFeatures(p)) return Kind.OTHER;
+                        } else {
+                            featureCount = -1;
+                            p.skipChildren();
+                        }
+                    }
+                    default -> p.skipChildren();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            return Kind.OTHER;
+        }
+        return kind;
+    }
+
+    private boolean readFeatures(JsonParser p) throws IOException {
+        int n = 0;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t != JsonToken.VALUE_NUMBER_FLOAT && t != JsonToken.VALUE_NUMBER_INT) return false;
+            if (n == features.length) features = Arrays.copyOf(features, n * 2);
+            features[n++] = p.getDoubleValue();
+        }
+        featureCount = n;
+        return true;
+    }
+
+    // equalsIgnoreCase without materializing the token as a String
+    private static boolean textEquals(JsonParser p, String expected) throws IOException {
+        if (p.getTextLength() != expected.length()) return false;
+        char[] chars = p.getTextCharacters();
+        int offset = p.getTextOffset();
+        for (int i = 0; i < expected.length(); i++) {
+            if (Character.toLowerCase(chars[offset + i]) != expected.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /** Decoded feature values; only the first {@link #featureCount()} entries are valid. */
+    public double[] features() {
+        return features;
+    }
+
+    public int featureCount() {
+        return featureCount;
+    }
+
+    /** Decoded features as an exact-length array, reused until the frame dimensionality changes. */
+    public double[] frame() {
+        if (frame.length != featureCount) frame = new double[featureCount];
+        System.arraycopy(features, 0, frame, 0, featureCount);
+        return frame;
+    }
+
+    public String detectionArea() {
+        return detectionArea;
+    }
+
+    public String ack(int buffered, long received) {
+        out.setLength(0);
+        return out.append("{\"type\":\"ack\",\"buffered\":").append(buffered)
+                .append(",\"received\":").append(received).append('}').toString();
+    }
+
+    public String window(int credit) {
+        out.setLength(0);
+        return out.append("{\"type\":\"window\",\"credit\":").append(credit).append('}').toString();
+    }
+
+    public String flow(String state, int buffered) {
+        out.setLength(0);
+        return out.append("{\"type\":\"flow\",\"state\":\"").append(state)
+                .append("\",\"buffered\":").append(buffered).append('}').toString();
+    }
+}
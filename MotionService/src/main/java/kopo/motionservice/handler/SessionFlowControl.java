@@ -0,0 +1,117 @@
+package kopo.motionservice.handler;
+
+/**
+ * /ws/motion 세션별 흐름 제어 상태 (클라이언트가 flow_control 메시지로 협상).
+ *
+ * <ul>
+ *   <li>PER_FRAME: 기존 동작 - buffered 모드에서 프레임(메시지)마다 ack</li>
+ *   <li>COALESCED: ackEvery 프레임 또는 ackIntervalMs 마다 누적 ack 하나</li>
+ *   <li>CREDIT: 서버가 window 만큼 credit 을 주고, 남은 credit 이 절반 이하가 되면 다시 채움.
+ *       세션 버퍼나 매칭이 포화되면 credit 을 보류해 클라이언트가 멈추게 함</li>
+ * </ul>
+ * 모든 모드에서 버퍼가 high watermark 이상이면 slow_down, low watermark(절반) 이하로 내려오면 resume 을 한 번씩 알립니다.
+ * 프레임이 오지 않아도 (매칭 완료, 매칭 큐 drain) 다시 평가될 수 있으므로, 호출자가 세션별 lock 으로 순서를 보장합니다.
+ */
+public final class SessionFlowControl {
+
+    public enum Mode { PER_FRAME, COALESCED, CREDIT }
+
+    public enum Pressure { NONE, SLOW_DOWN, RESUME }
+
+    /** What to send after frames were accepted: an ack, a credit grant (> 0) and/or a pressure change. */
+    public record Signal(boolean ack, int credit, Pressure pressure) {
+        static final Signal NONE = new Signal(false, 0, Pressure.NONE);
+
+        public boolean isEmpty() {
+            return !ack && credit == 0 && pressure == Pressure.NONE;
+        }
+    }
+
+    private final Mode mode;
+    private final int ackEvery;
+    private final long ackIntervalMs;
+    private final int window;
+    private final int highWatermark;
+
+    private long received;      // frames accepted since the session started
+    private long granted;       // credit granted so far (CREDIT)
+    private int sinceAck;
+    private long lastAckAt;
+    private boolean slowed;
+
+    public SessionFlowControl(Mode mode, int ackEvery, long ackIntervalMs, int window, int highWatermark, long nowMs) {
+        this.mode = mode;
+        this.ackEvery = Math.max(1, ackEvery);
+        this.ackIntervalMs = Math.max(0, ackIntervalMs);
+        this.window = Math.max(2, window);
+        this.highWatermark = Math.max(2, highWatermark);
+        this.lastAckAt = nowMs;
+        this.granted = (mode == Mode.CREDIT) ? this.window : 0;
+    }
+
+    /** Legacy behaviour for clients that never negotiate. */
+    public static SessionFlowControl perFrame(int highWatermark, long nowMs) {
+        return new SessionFlowControl(Mode.PER_FRAME, 1, 0, 2, highWatermark, nowMs);
+    }
+
+    /**
+     * @param frames    frames accepted by this message (0 when only the buffer changed, e.g. after end)
+     * @param buffered  frames currently held for the session
+     * @param saturated true when the server cannot take more work for this session (e.g. matching queue full)
+     * @param streaming true when frames go to a streaming matcher instead of the buffer
+     */
+    public Signal onFrames(int frames, int buffered, boolean saturated, boolean streaming, long nowMs) {
+        received += frames;
+        sinceAck += frames;
+
+        Pressure pressure = Pressure.NONE;
+        boolean full = saturated || buffered >= highWatermark;
+        if (full && !slowed) {
+            slowed = true;
+            pressure = Pressure.SLOW_DOWN;
+        } else if (slowed && !saturated && buffered <= highWatermark / 2) {
+            slowed = false;
+            pressure = Pressure.RESUME;
+        }
+
+        boolean ack = false;
+        int credit = 0;
+        switch (mode) {
+            case PER_FRAME -> ack = frames > 0 && !streaming;
+            case COALESCED -> ack = sinceAck > 0 && (sinceAck >= ackEvery || nowMs - lastAckAt >= ackIntervalMs);
+            case CREDIT -> {
+                long outstanding = granted - received;
+                if (!slowed && outstanding <= window / 2) {
+                    credit = (int) (window - Math.max(0, outstanding));
+                    granted += credit;
+                }
+            }
+        }
+        if (ack) {
+            sinceAck = 0;
+            lastAckAt = nowMs;
+        }
+        if (!ack && credit == 0 && pressure == Pressure.NONE) return Signal.NONE;
+        return new Signal(ack, credit, pressure);
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public int ackEvery() {
+        return ackEvery;
+    }
+
+    public long ackIntervalMs() {
+        return ackIntervalMs;
+    }
+
+    public int window() {
+        return window;
+    }
+
+    public long received() {
+        return received;
+    }
+}
@@ -0,0 +1,304 @@
+package kopo.motionservice.handler;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * /ws/motion 세션 하나의 프레임 ring buffer.
+ *
+ * 프레임 행(double[])은 한 번 할당되면 세션이 끝날 때까지 재사용되고, 최대 프레임 수 / 최대 보관 시간을 넘으면 가장 오래된 프레임을 덮어씁니다.
+ * 새 행을 할당할 때마다 {@link FrameBufferPool} 의 전역 메모리 예산을 예약하며, 예산이 모자라면 풀이 오래 활동이 없던 세션의
+ * 빈 행과 오래된 프레임부터 회수하고, 그래도 모자라면 버퍼 전체를 내립니다.
+ * {@link #view()} 는 복사 없이 버퍼를 시간순으로 보여주므로 매칭(DTW)이 그대로 읽을 수 있습니다.
+ *
+ * 쓰기는 세션 스레드 하나가 {@link #claim}/{@link #commit} 으로 하고, 다른 스레드는 풀의 eviction 만 합니다.
+ * 매칭 작업에 넘긴 버퍼는 {@link #pin()} 되어 있는 동안 eviction 되지 않습니다.
+ */
+public final class SessionFrameBuffer {
+
+    // 풀의 활동 순서(LRU)는 이 간격마다 한 번만 갱신 (프레임마다 풀 lock 을 잡지 않음)
+    private static final long TOUCH_INTERVAL_NANOS = 50_000_000L;
+
+    private final FrameBufferPool pool;
+    private final int maxFrames;
+    private final long maxAgeNanos;
+
+    private double[][] rows = new double[0][];
+    private long[] times = new long[0];
+    private int allocated;   // rows[0..allocated) are allocated (accounted in the pool)
+    private int head;        // index of the oldest frame
+    private int size;
+    private long generation; // bumped when the pool evicts this buffer; a claim from an older generation is dropped
+    private long claimGeneration;
+    private int claimIndex = -1;
+    private long accountedBytes; // bytes of the allocated rows, reserved in the pool
+    private long dropped;
+    private boolean pinned;  // handed to a match job; the pool must not evict it
+    private double[] scratch = new double[0];
+    private long touchedAt;  // claim 하는 세션 스레드만 읽고 씀
+    private boolean touched;
+
+    private final View view = new View();
+
+    SessionFrameBuffer(FrameBufferPool pool, int maxFrames, long maxAgeNanos) {
+        this.pool = pool;
+        this.maxFrames = Math.max(1, maxFrames);
+        this.maxAgeNanos = maxAgeNanos;
+    }
+
+    /**
+     * Returns the row the next frame of {@code dims} values must be written into; call {@link #commit()} afterwards.
+     * 링이 가득 찼거나 메모리 예산이 모자라면 이 세션의 가장 오래된 프레임 행을 재사용하고,
+     * 예산이 없어 행이 하나도 없으면 프레임을 버립니다 (commit 해도 추가되지 않음).
+     */
+    public double[] claim(int dims, long nowNanos) {
+        if (!touched || nowNanos - touchedAt >= TOUCH_INTERVAL_NANOS) {
+            touched = true;
+            touchedAt = nowNanos;
+            pool.touch(this);
+        }
+        boolean grow;
+        synchronized (this) {
+            dropExpired(nowNanos);
+            grow = size == allocated && allocated < maxFrames;
+        }
+        // 예약(다른 버퍼 eviction 포함)은 이 버퍼의 lock 밖에서 수행
+        long bytes = rowBytes(dims);
+        boolean reserved = grow && pool.reserve(this, bytes);
+
+        synchronized (this) {
+            int idx;
+            if (size < allocated) {
+                idx = (head + size) % allocated;
+            } else if (reserved && allocated < maxFrames) {
+                idx = growByOne();
+                rows[idx] = new double[dims];
+                accountedBytes += bytes;
+                reserved = false;
+            } else if (size > 0) {
+                // ring full or no budget: overwrite the oldest frame
+                idx = head;
+                head = (head + 1) % allocated;
+                size--;
+                dropped++;
+            } else {
+                // 예산이 없고 내릴 버퍼도 없음: 이 프레임은 버림
+                if (reserved) pool.release(bytes);
+                dropped++;
+                claimIndex = -1;
+                if (scratch.length < dims) scratch = new double[dims];
+                return scratch;
+            }
+            if (reserved) pool.release(bytes);
+
+            if (rows[idx].length != dims) {
+                // 차원 수가 바뀐 프레임: 행만 다시 할당 (예산 초과분은 다음 예약 때 정리됨)
+                long delta = bytes - rowBytes(rows[idx].length);
+                rows[idx] = new double[dims];
+                accountedBytes += delta;
+                pool.adjust(delta);
+            }
+            times[idx] = nowNanos;
+            claimIndex = idx;
+            claimGeneration = generation;
+            return rows[idx];
+        }
+    }
+
+    /** Makes the frame written into the last claimed row visible. */
+    public synchronized void commit() {
+        if (claimIndex < 0) return;
+        if (claimGeneration == generation && allocated > 0 && claimIndex == (head + size) % allocated) {
+            size++;
+        }
+        claimIndex = -1;
+    }
+
+    /** Copies {@code frame} into the buffer and returns the row it was written to. */
+    public double[] append(double[] frame, long nowNanos) {
+        return append(frame, frame.length, nowNanos);
+    }
+
+    /**
+     * Copies the first {@code dims} values of {@code values} into the buffer (JSON path, decoder scratch row).
+     *
+     * @return the row the frame was written to, valid until the next claim
+     */
+    public double[] append(double[] values, int dims, long nowNanos) {
+        double[] row = claim(dims, nowNanos);
+        System.arraycopy(values, 0, row, 0, dims);
+        commit();
+        return row;
+    }
+
+    /** Forgets the buffered frames; rows are kept for the next gesture. */
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /** Protects the buffered frames from pool eviction while a match job reads {@link #view()}. */
+    public synchronized void pin() {
+        pinned = true;
+    }
+
+    public synchronized void unpin() {
+        pinned = false;
+    }
+
+    /** Drops the oldest frames so that at most {@code n} remain (idle frames in front of a gesture). */
+    public synchronized void keepNewest(int n) {
+        int drop = size - Math.max(0, n);
+        if (drop <= 0) return;
+        head = (head + drop) % allocated;
+        size -= drop;
+    }
+
+    /** Drops the {@code n} newest frames (idle frames after a gesture). */
+    public synchronized void dropNewest(int n) {
+        size -= Math.min(size, Math.max(0, n));
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Frames dropped because the ring was full, had expired, or the memory budget was exhausted. */
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Zero-copy chronological view; valid until the next claim/clear on this buffer.
+     */
+    public synchronized List<double[]> view() {
+        view.set(head, size);
+        return view;
+    }
+
+    /** Releases rows beyond the buffered frames (idle sessions keep nothing). */
+    synchronized long trimIdle() {
+        if (size > 0 || allocated == 0 || pinned) return 0L;
+        return releaseAll();
+    }
+
+    /**
+     * Gives back rows under memory pressure: first rows holding no frame, then the oldest frames, always keeping the
+     * newest half of the buffered frames (the gesture in progress).
+     *
+     * @param wantBytes bytes the pool still has to reclaim
+     * @return bytes released
+     */
+    synchronized long trimOldest(long wantBytes) {
+        if (pinned || allocated == 0) return 0L;
+        long freed = 0L;
+        for (int i = size; i < allocated; i++) {
+            freed += rowBytes(rows[(head + i) % allocated].length);
+        }
+        int drop = 0;
+        while (freed < wantBytes && drop < size / 2) {
+            freed += rowBytes(rows[(head + drop) % allocated].length);
+            drop++;
+        }
+        if (freed == 0L) return 0L;
+
+        // 남길 프레임만 시간순으로 다시 담음 (진행 중인 claim 은 generation 으로 무효화)
+        int keep = size - drop;
+        double[][] r = new double[keep][];
+        long[] t = new long[keep];
+        for (int i = 0; i < keep; i++) {
+            r[i] = rows[(head + drop + i) % allocated];
+            t[i] = times[(head + drop + i) % allocated];
+        }
+        generation++;
+        rows = r;
+        times = t;
+        allocated = keep;
+        head = 0;
+        size = keep;
+        dropped += drop;
+        accountedBytes -= freed;
+        return freed;
+    }
+
+    /** Drops all frames and rows (pool eviction or session close). */
+    synchronized long evict() {
+        if (pinned) return 0L;
+        generation++;
+        head = 0;
+        size = 0;
+        return releaseAll();
+    }
+
+    private long releaseAll() {
+        long bytes = accountedBytes;
+        accountedBytes = 0L;
+        rows = new double[0][];
+        times = new long[0];
+        allocated = 0;
+        head = 0;
+        return bytes;
+    }
+
+    private void dropExpired(long nowNanos) {
+        if (maxAgeNanos <= 0) return;
+        while (size > 0 && nowNanos - times[head] > maxAgeNanos) {
+            head = (head + 1) % allocated;
+            size--;
+            dropped++;
+        }
+    }
+
+    // 새 행은 논리적으로 가장 최신 위치(head + size)에 들어가야 하므로, ring 이 돌았으면 시간순으로 다시 펴서 끝에 붙임
+    private int growByOne() {
+        if (rows.length == allocated) {
+            int cap = Math.min(maxFrames, Math.max(16, allocated * 2));
+            double[][] r = new double[cap][];
+            long[] t = new long[cap];
+            for (int i = 0; i < allocated; i++) {
+                r[i] = rows[(head + i) % allocated];
+                t[i] = times[(head + i) % allocated];
+            }
+            rows = r;
+            times = t;
+            head = 0;
+        } else if (head != 0) {
+            double[][] r = new double[rows.length][];
+            long[] t = new long[times.length];
+            for (int i = 0; i < allocated; i++) {
+                r[i] = rows[(head + i) % allocated];
+                t[i] = times[(head + i) % allocated];
+            }
+            rows = r;
+            times = t;
+            head = 0;
+        }
+        return allocated++;
+    }
+
+    static long rowBytes(int dims) {
+        return 16L + (long) dims * Double.BYTES;
+    }
+
+    private final class View extends AbstractList<double[]> implements RandomAccess {
+        private int from;
+        private int count;
+
+        void set(int from, int count) {
+            this.from = from;
+            this.count = count;
+        }
+
+        @Override
+        public double[] get(int index) {
+            if (index < 0 || index >= count) throw new IndexOutOfBoundsException(index);
+            return rows[(from + index) % allocated];
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package kopo.motionservice.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 캐시/매칭에 쓰이는 템플릿 한 개 (Mongo 문서에서 전처리된 프레임 특징 벡터).
+ * {@link TemplateStore} / {@link TemplateCodec} 의 입력이며 서비스 계층은 이 타입을 그대로 사용합니다.
+ */
+@NoArgsConstructor
+@Data
+@AllArgsConstructor
+public class CachedMotion {
+    private String recordId;
+    private String phrase;
+    private String motionType;
+    private double[][] sequence; // precomputed per-frame feature vectors
+}
@@ -0,0 +1,52 @@
+package kopo.motionservice.matching;
+
+/**
+ * Normalized detection area keywords (hand normalization, per-area counts in logs).
+ *
+ * motion_type / detectionArea 문자열은 대소문자 구분 없이 키워드로 분류됩니다 (예: "hands" -> HAND).
+ * 템플릿 선택 자체는 이 분류가 아니라 기존 부분 문자열 규칙({@link TemplateStore#bucket(String)})을 따르므로,
+ * 한 템플릿이 여러 영역 키워드를 포함하면 각 영역에서 모두 매칭됩니다.
+ */
+public enum DetectionArea {
+    FACE("face"),
+    HAND("hand"),
+    EYES("eye"),
+    SIGN("sign"),
+    UNKNOWN(null);
+
+    private static final DetectionArea[] VALUES = values();
+
+    private final String keyword;
+
+    DetectionArea(String keyword) {
+        this.keyword = keyword;
+    }
+
+    /** Lower-case keyword a motion type of this area contains (null for UNKNOWN). */
+    public String keyword() {
+        return keyword;
+    }
+
+    public static DetectionArea[] all() {
+        return VALUES;
+    }
+
+    /**
+     * Classifies a motion type or a client detection area. Sign language is checked first because its
+     * motion types may also mention hands.
+     */
+    public static DetectionArea from(String value) {
+        if (value == null || value.isBlank()) return UNKNOWN;
+        String v = value.toLowerCase();
+        if (v.contains("sign")) return SIGN;
+        if (v.contains("hand")) return HAND;
+        if (v.contains("eye")) return EYES;
+        if (v.contains("face")) return FACE;
+        return UNKNOWN;
+    }
+
+    /** Whether a motion type stores hand landmarks (needs hand normalization of the live sequence). */
+    public static boolean isHandMotionType(String motionType) {
+        return motionType != null && motionType.toLowerCase().contains("hand");
+    }
+}
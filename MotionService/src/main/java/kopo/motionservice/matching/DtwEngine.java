@@ -0,0 +1,311 @@
+package kopo.motionservice.matching;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Banded, early-abandoning DTW engine used by MotionDetectorServiceImpl.
+ *
+ * 템플릿은 {@link TemplateStore} 의 연속 float 배열에서 순차적으로 읽습니다.
+ * 점수는 기존 dtwDistance 와 동일하게 (누적 비용 / (n + m)) 으로 정규화됩니다.
+ * band 가 충분히 넓으면 (window-ratio >= 1.0) 기존 full-matrix DTW 와 동일한 결과를 반환하고,
+ * LB_Kim / LB_Keogh 하한과 early abandoning 은 결과를 바꾸지 않고 불필요한 계산만 건너뜁니다.
+ * 모든 작업 버퍼는 bounded 풀에서 빌린 {@link DtwScratch} 를 재사용하므로 템플릿당 힙 할당이 없습니다.
+ */
+public final class DtwEngine {
+
+    public enum Band {
+        /** full (n x m) matrix, same as the legacy implementation */
+        NONE,
+        /** Sakoe-Chiba band around the (length-scaled) diagonal */
+        SAKOE_CHIBA,
+        /** Itakura parallelogram with the configured max slope */
+        ITAKURA;
+
+        public static Band from(String value) {
+            if (value == null || value.isBlank()) return NONE;
+            String v = value.trim().toLowerCase().replace('_', '-');
+            return switch (v) {
+                case "sakoe-chiba", "sakoe", "sakoechiba" -> SAKOE_CHIBA;
+                case "itakura" -> ITAKURA;
+                default -> NONE;
+            };
+        }
+    }
+
+    private final Band band;
+    private final double windowRatio;   // Sakoe-Chiba radius as a fraction of max(n, m)
+    private final double itakuraSlope;  // max slope of the Itakura parallelogram (> 1)
+    private final boolean lowerBounds;  // LB_Kim / LB_Keogh pruning on/off
+
+    public DtwEngine(Band band, double windowRatio, double itakuraSlope, boolean lowerBounds) {
+        this.band = (band == null) ? Band.NONE : band;
+        this.windowRatio = Math.max(0.0, windowRatio);
+        this.itakuraSlope = Math.max(1.0 + 1e-6, itakuraSlope);
+        this.lowerBounds = lowerBounds;
+    }
+
+    /** Unconstrained engine: identical scores to the legacy full-matrix dtwDistance. */
+    public static DtwEngine exact() {
+        return new DtwEngine(Band.NONE, 1.0, 2.0, true);
+    }
+
+    public Band getBand() {
+        return band;
+    }
+
+    /**
+     * Normalized DTW distance between a live sequence and a single template.
+     * Convenience entry point; the match loop uses {@link #distance(List, TemplateStore, int, double)}.
+     * 템플릿은 스크래치의 float 행에 {@link TemplateStore} 와 같은 레이아웃(첫 프레임 차원, 모자란 값은 0)으로 펼쳐지므로
+     * 호출마다 스토어를 컴파일하지 않고 결과도 컴파일된 스토어와 같습니다.
+     */
+    public double distance(List<double[]> live, double[][] template, double bestSoFar) {
+        if (live == null || live.isEmpty() || template == null || template.length == 0) return Double.POSITIVE_INFINITY;
+        double[] first = template[0];
+        if (first == null || first.length == 0) return Double.POSITIVE_INFINITY;
+        int m = template.length;
+        int dims = first.length;
+
+        DtwScratch scratch = DtwScratch.acquire();
+        try {
+            float[] data = scratch.ensureTemplate(m * dims);
+            for (int j = 0, pos = 0; j < m; j++, pos += dims) {
+                double[] frame = template[j];
+                int copy = (frame == null) ? 0 : Math.min(dims, frame.length);
+                for (int k = 0; k < copy; k++) data[pos + k] = (float) frame[k];
+                if (copy < dims) Arrays.fill(data, pos + copy, pos + dims, 0f);
+            }
+            return distance(live, data, 0, m, dims, bestSoFar, scratch);
+        } finally {
+            DtwScratch.release(scratch);
+        }
+    }
+
+    /**
+     * Normalized DTW distance between a live sequence and template {@code t} of a compiled store.
+     *
+     * @param live      live feature frames
+     * @param store     compiled template dictionary
+     * @param t         template index in the store
+     * @param bestSoFar best normalized score found so far; the computation is abandoned as soon as
+     *                  this template can no longer beat it (pass +Infinity to disable)
+     * @return normalized distance, or +Infinity if the template was pruned/abandoned
+     */
+    public double distance(List<double[]> live, TemplateStore store, int t, double bestSoFar) {
+        DtwScratch scratch = DtwScratch.acquire();
+        try {
+            return distance(live, store, t, bestSoFar, scratch);
+        } finally {
+            DtwScratch.release(scratch);
+        }
+    }
+
+    /** Same as {@link #distance(List, TemplateStore, int, double)} with scratch the caller borrowed for a whole scan. */
+    double distance(List<double[]> live, TemplateStore store, int t, double bestSoFar, DtwScratch scratch) {
+        if (live == null || live.isEmpty() || store == null) return Double.POSITIVE_INFINITY;
+        return distance(live, store.data, store.offsets[t], store.frames[t], store.dims[t], bestSoFar, scratch);
+    }
+
+    // kernel over one template of m frames x dims floats starting at data[base]
+    private double distance(List<double[]> live, float[] data, int base, int m, int dims, double bestSoFar,
+                            DtwScratch scratch) {
+        int n = live.size();
+        if (m == 0) return Double.POSITIVE_INFINITY;
+        double norm = Math.max(1.0, n + m);
+        // 누적 비용 기준 임계값: score = cost / norm 이므로 cost >= best * norm 이면 이길 수 없음
+        double threshold = Double.isInfinite(bestSoFar) ? Double.POSITIVE_INFINITY : bestSoFar * norm;
+
+        scratch.ensureRows(n + 1);
+        scratch.ensureColumns(m + 1);
+        int[] lo = scratch.lo;
+        int[] hi = scratch.hi;
+        computeWindow(n, m, lo, hi);
+
+        // suffix[i] = sum of per-row lower bounds for rows i+1..n (0 when bounds are disabled)
+        double[] suffix = scratch.suffix;
+        boolean pruned = lowerBounds && threshold != Double.POSITIVE_INFINITY;
+        if (pruned) {
+            if (lbKim(live, data, base, m, dims) >= threshold) return Double.POSITIVE_INFINITY;
+            if (lbKeogh(live, data, base, m, dims, lo, hi, suffix, scratch) >= threshold) return Double.POSITIVE_INFINITY;
+        } else {
+            Arrays.fill(suffix, 0, n + 1, 0.0);
+        }
+
+        // rolling two-row kernel: only rows i-1 and i of the cost matrix are alive
+        double[] prev = scratch.prev;
+        double[] cur = scratch.cur;
+        prev[0] = 0.0;
+        for (int j = 1; j <= hi[1]; j++) prev[j] = Double.POSITIVE_INFINITY;
+
+        for (int i = 1; i <= n; i++) {
+            double[] ai = live.get(i - 1);
+            int jLo = lo[i];
+            int jHi = hi[i];
+            cur[jLo - 1] = Double.POSITIVE_INFINITY;
+            double rowMin = Double.POSITIVE_INFINITY;
+            int off = base + (jLo - 1) * dims;
+            for (int j = jLo; j <= jHi; j++, off += dims) {
+                double minPrev = Math.min(prev[j], Math.min(cur[j - 1], prev[j - 1]));
+                double v = euclidean(ai, data, off, dims) + minPrev;
+                cur[j] = v;
+                if (v < rowMin) rowMin = v;
+            }
+            if (rowMin + suffix[i] >= threshold) return Double.POSITIVE_INFINITY;
+
+            // cells of this row that the next row reads outside of [lo, hi] must be +inf
+            int nextHi = (i < n) ? hi[i + 1] : jHi;
+            for (int j = jHi + 1; j <= nextHi; j++) cur[j] = Double.POSITIVE_INFINITY;
+
+            double[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+
+        return prev[m] / norm;
+    }
+
+    /**
+     * Per-row admissible template columns (1-based, inclusive). Both bounds are non-decreasing,
+     * row 1 starts at column 1, row n ends at column m and consecutive windows stay connected.
+     */
+    void computeWindow(int n, int m, int[] lo, int[] hi) {
+        if (band == Band.NONE || n == 1 || m == 1) {
+            for (int i = 1; i <= n; i++) { lo[i] = 1; hi[i] = m; }
+            return;
+        }
+
+        if (band == Band.SAKOE_CHIBA) {
+            // radius never narrower than the diagonal step, otherwise rows would disconnect
+            int radius = (int) Math.ceil(windowRatio * Math.max(n, m));
+            radius = Math.max(radius, (int) Math.ceil((double) (m - 1) / (n - 1)));
+            for (int i = 1; i <= n; i++) {
+                int center = 1 + (int) Math.round((double) (i - 1) * (m - 1) / (n - 1));
+                lo[i] = Math.max(1, center - radius);
+                hi[i] = Math.min(m, center + radius);
+            }
+        } else {
+            double s = itakuraSlope;
+            for (int i = 1; i <= n; i++) {
+                double x = (double) (i - 1) / (n - 1);
+                double yMin = Math.max(x / s, 1.0 - s * (1.0 - x));
+                double yMax = Math.min(s * x, 1.0 - (1.0 - x) / s);
+                lo[i] = Math.max(1, 1 + (int) Math.ceil(yMin * (m - 1) - 1e-9));
+                hi[i] = Math.min(m, 1 + (int) Math.floor(yMax * (m - 1) + 1e-9));
+            }
+        }
+
+        // repair: keep bounds monotone and consecutive rows connected (handles extreme length ratios)
+        lo[1] = 1;
+        hi[n] = m;
+        for (int i = 1; i <= n; i++) {
+            if (i > 1) {
+                lo[i] = Math.max(lo[i], lo[i - 1]);
+                lo[i] = Math.min(lo[i], hi[i - 1] + 1);
+                hi[i] = Math.max(hi[i], hi[i - 1]);
+            }
+            if (hi[i] < lo[i]) hi[i] = lo[i];
+        }
+    }
+
+    /**
+     * LB_Kim (first/last frame): every warping path starts at (1,1) and ends at (n,m).
+     */
+    double lbKim(List<double[]> live, float[] data, int base, int m, int dims) {
+        int n = live.size();
+        double lb = euclidean(live.get(0), data, base, dims);
+        if (n > 1 || m > 1) lb += euclidean(live.get(n - 1), data, base + (m - 1) * dims, dims);
+        return lb;
+    }
+
+    /**
+     * LB_Keogh against the template envelope over each row's band window.
+     * Every row i is visited at least once inside [lo(i), hi(i)], so the distance from the live
+     * frame to the per-dimension min/max box of that window bounds the row's cost from below.
+     * Fills suffix[i] with the bound of rows i+1..n for early abandoning and returns the total.
+     */
+    double lbKeogh(List<double[]> live, float[] data, int base, int m, int dims,
+                   int[] lo, int[] hi, double[] suffix, DtwScratch scratch) {
+        int n = live.size();
+        double[] acc = scratch.acc;
+        Arrays.fill(acc, 0, n + 1, 0.0);
+        int[] maxQ = scratch.maxQ;
+        int[] minQ = scratch.minQ;
+
+        for (int k = 0; k < dims; k++) {
+            int col = base + k - dims; // data index of (column j, dim k) is col + j * dims
+            int maxHead = 0, maxTail = 0, minHead = 0, minTail = 0;
+            int next = 1;
+            for (int i = 1; i <= n; i++) {
+                while (next <= hi[i]) {
+                    float v = data[col + next * dims];
+                    while (maxTail > maxHead && data[col + maxQ[maxTail - 1] * dims] <= v) maxTail--;
+                    maxQ[maxTail++] = next;
+                    while (minTail > minHead && data[col + minQ[minTail - 1] * dims] >= v) minTail--;
+                    minQ[minTail++] = next;
+                    next++;
+                }
+                while (maxQ[maxHead] < lo[i]) maxHead++;
+                while (minQ[minHead] < lo[i]) minHead++;
+
+                double[] ai = live.get(i - 1);
+                if (ai == null || k >= ai.length) continue;
+                double x = ai[k];
+                double upper = data[col + maxQ[maxHead] * dims];
+                double lower = data[col + minQ[minHead] * dims];
+                if (x > upper) { double d = x - upper; acc[i] += d * d; }
+                else if (x < lower) { double d = lower - x; acc[i] += d * d; }
+            }
+        }
+
+        suffix[n] = 0.0;
+        for (int i = n; i >= 1; i--) {
+            double[] ai = live.get(i - 1);
+            double rowLb;
+            if (ai == null) {
+                rowLb = Double.POSITIVE_INFINITY;
+            } else {
+                // same length-difference penalty as euclidean()
+                rowLb = Math.sqrt(acc[i] + Math.abs(ai.length - dims));
+            }
+            suffix[i - 1] = suffix[i] + rowLb;
+        }
+        return suffix[0];
+    }
+
+    /**
+     * Frame distance shared with the legacy implementation: euclidean over the common prefix
+     * plus 1 per missing/extra dimension.
+     */
+    public static double euclidean(double[] x, double[] y) {
+        if (x == null || y == null) return Double.POSITIVE_INFINITY;
+        int len = Math.min(x.length, y.length);
+        double sum = 0.0;
+        for (int i = 0; i < len; i++) {
+            double d = x[i] - y[i];
+            sum += d * d;
+        }
+        // account for length difference as penalty
+        if (x.length != y.length) {
+            sum += Math.abs(x.length - y.length);
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Same frame distance against one template frame stored in a flat array (no allocation).
+     */
+    static double euclidean(double[] x, float[] data, int off, int dims) {
+        if (x == null) return Double.POSITIVE_INFINITY;
+        int len = Math.min(x.length, dims);
+        double sum = 0.0;
+        for (int i = 0; i < len; i++) {
+            double d = x[i] - data[off + i];
+            sum += d * d;
+        }
+        if (x.length != dims) {
+            sum += Math.abs(x.length - dims);
+        }
+        return Math.sqrt(sum);
+    }
+}
@@ -0,0 +1,91 @@
+package kopo.motionservice.matching;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pooled scratch buffers for {@link DtwEngine}.
+ *
+ * 스레드에 묶지 않고 bounded 풀에서 빌려 쓰고 돌려줍니다: 요청 처리가 수명이 짧은 virtual thread 에서 이뤄져도
+ * ThreadLocal 처럼 스레드마다 새 버퍼를 만들지 않습니다. 동시에 빌려 가는 수는 DTW 를 실행하는 스레드 수
+ * (매칭 풀 + 스캔 ForkJoinPool) 정도이므로, 풀 크기를 넘는 초과분만 할당되고 반납 시 버려집니다.
+ * 버퍼는 필요할 때만 커지고 줄어들지 않으므로, 정상 상태에서는 템플릿당 할당이 발생하지 않습니다.
+ */
+final class DtwScratch {
+
+    private static final Pool POOL = new Pool(Math.max(8, Runtime.getRuntime().availableProcessors() * 4));
+
+    // per live row (n + 1)
+    int[] lo = new int[0];
+    int[] hi = new int[0];
+    double[] suffix = new double[0];
+    double[] acc = new double[0];
+
+    // per template column (m + 1)
+    double[] prev = new double[0];
+    double[] cur = new double[0];
+    int[] maxQ = new int[0];
+    int[] minQ = new int[0];
+
+    // flattened template for the legacy double[][] entry point (m * dims)
+    float[] template = new float[0];
+
+    private DtwScratch() {
+    }
+
+    /** Borrows a scratch instance from the shared pool; return it with {@link #release}. */
+    static DtwScratch acquire() {
+        return POOL.acquire();
+    }
+
+    static void release(DtwScratch scratch) {
+        POOL.release(scratch);
+    }
+
+    /** Bounded scratch pool; the engine uses one shared instance, tests create their own. */
+    static final class Pool {
+
+        private final ArrayBlockingQueue<DtwScratch> idle;
+
+        Pool(int capacity) {
+            this.idle = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        }
+
+        DtwScratch acquire() {
+            DtwScratch scratch = idle.poll();
+            return (scratch != null) ? scratch : new DtwScratch();
+        }
+
+        void release(DtwScratch scratch) {
+            idle.offer(scratch); // pool full: drop it
+        }
+    }
+
+    void ensureRows(int rows) {
+        if (lo.length < rows) {
+            int cap = grow(lo.length, rows);
+            lo = new int[cap];
+            hi = new int[cap];
+            suffix = new double[cap];
+            acc = new double[cap];
+        }
+    }
+
+    void ensureColumns(int cols) {
+        if (prev.length < cols) {
+            int cap = grow(prev.length, cols);
+            prev = new double[cap];
+            cur = new double[cap];
+            maxQ = new int[cap];
+            minQ = new int[cap];
+        }
+    }
+
+    float[] ensureTemplate(int size) {
+        if (template.length < size) template = new float[grow(template.length, size)];
+        return template;
+    }
+
+    private static int grow(int current, int required) {
+        return Math.max(required, current + (current >> 1));
+    }
+}
@@ -0,0 +1,171 @@
+package kopo.motionservice.matching;
+
+/**
+ * Server-side gesture segmentation for continuous frame streams (segment_start ~ segment_stop).
+ *
+ * 프레임마다 motion energy(직전 프레임 대비 특징값 변화량의 RMS, 손 영역은 normalizeHandBlock 정규화 후 변위)를 EMA 로 평활하고,
+ * start / stop 두 임계값(hysteresis)으로 제스처 구간을 자릅니다. 구간 앞의 idle 프레임은 pre-roll 몇 개만 남기고,
+ * 구간 뒤의 idle 프레임은 잘라낸 뒤 너무 짧은 구간은 버리므로 매칭(DTW)에는 실제로 움직인 구간만 들어갑니다.
+ *
+ * 세그멘터는 프레임을 보관하지 않고, 호출자(세션 프레임 버퍼)가 들고 있어야 할 프레임 수만 알려줍니다.
+ * Not thread-safe: one instance per WebSocket session.
+ */
+public final class GestureSegmenter {
+
+    /** What the caller must do with its buffered frames after {@link #push}. */
+    public enum Decision {
+        /** No gesture: keep only the newest {@link #held()} frames (pre-roll). */
+        IDLE,
+        /** Inside a gesture: keep everything. */
+        ACTIVE,
+        /** Gesture ended: drop the newest {@link #trailing()} idle frames and match the rest. */
+        CUT,
+        /** Gesture ended but was shorter than the minimum: drop all buffered frames. */
+        DISCARD
+    }
+
+    /**
+     * @param startThreshold     smoothed energy that starts a gesture (blendshape / raw features)
+     * @param stopThreshold      smoothed energy below which frames count as idle inside a gesture
+     * @param handStartThreshold start threshold for normalized hand landmarks
+     * @param handStopThreshold  stop threshold for normalized hand landmarks
+     * @param emaAlpha           weight of the newest frame in the energy EMA (0, 1]
+     * @param minActiveFrames    consecutive frames above start before a gesture starts (debounce)
+     * @param idleFrames         consecutive frames below stop that end a gesture
+     * @param preRollFrames      idle frames kept in front of a gesture
+     * @param minSegmentFrames   shorter segments are discarded instead of matched
+     * @param maxSegmentFrames   a gesture is cut after this many frames even if motion continues
+     */
+    public record Settings(double startThreshold, double stopThreshold,
+                           double handStartThreshold, double handStopThreshold,
+                           double emaAlpha, int minActiveFrames, int idleFrames, int preRollFrames,
+                           int minSegmentFrames, int maxSegmentFrames) {
+    }
+
+    private final String detectionArea;
+    private final boolean hand;
+    private final double start;
+    private final double stop;
+    private final double alpha;
+    private final int minActiveFrames;
+    private final int idleFrames;
+    private final int preRollFrames;
+    private final int minSegmentFrames;
+    private final int maxSegmentFrames;
+
+    // 직전 / 현재 프레임 (손 영역은 정규화된 사본), 세션 동안 재사용
+    private double[] prev = new double[0];
+    private double[] cur = new double[0];
+    private boolean hasPrev;
+
+    private double energy;
+    private boolean active;
+    private int activeRun;   // consecutive frames above start while idle
+    private int quietRun;    // consecutive frames below stop while active
+    private int held;        // frames the caller should be holding
+    private int trailing;
+    private int segmentLength;
+
+    public GestureSegmenter(Settings settings, String detectionArea) {
+        this.detectionArea = detectionArea;
+        this.hand = DetectionArea.from(detectionArea) == DetectionArea.HAND;
+        this.start = hand ? settings.handStartThreshold() : settings.startThreshold();
+        this.stop = Math.min(start, hand ? settings.handStopThreshold() : settings.stopThreshold());
+        this.alpha = (settings.emaAlpha() > 0 && settings.emaAlpha() <= 1) ? settings.emaAlpha() : 1.0;
+        this.minActiveFrames = Math.max(1, settings.minActiveFrames());
+        this.idleFrames = Math.max(1, settings.idleFrames());
+        this.preRollFrames = Math.max(0, settings.preRollFrames());
+        this.minSegmentFrames = Math.max(1, settings.minSegmentFrames());
+        this.maxSegmentFrames = Math.max(this.minSegmentFrames, settings.maxSegmentFrames());
+    }
+
+    /**
+     * Feeds the frame the caller has just buffered and tells it what to do with its buffer.
+     */
+    public Decision push(double[] frame) {
+        double e = displacement(frame);
+        energy = alpha * e + (1 - alpha) * energy;
+        held++;
+
+        if (!active) {
+            activeRun = (energy >= start) ? activeRun + 1 : 0;
+            if (activeRun >= minActiveFrames) {
+                active = true;
+                quietRun = 0;
+                return Decision.ACTIVE;
+            }
+            // 제스처 전 idle 프레임은 pre-roll 만 남김 (debounce 중인 프레임은 유지)
+            held = Math.min(held, preRollFrames + activeRun);
+            return Decision.IDLE;
+        }
+
+        quietRun = (energy < stop) ? quietRun + 1 : 0;
+        if (quietRun < idleFrames && held < maxSegmentFrames) return Decision.ACTIVE;
+
+        trailing = Math.min(quietRun, held);
+        segmentLength = held - trailing;
+        reset();
+        return (segmentLength >= minSegmentFrames) ? Decision.CUT : Decision.DISCARD;
+    }
+
+    /** Forgets the current segment (the caller matched or cleared its buffer); the energy history is kept. */
+    public void reset() {
+        active = false;
+        activeRun = 0;
+        quietRun = 0;
+        held = 0;
+    }
+
+    public int held() {
+        return held;
+    }
+
+    /** Idle frames at the end of the last cut segment. */
+    public int trailing() {
+        return trailing;
+    }
+
+    /** Frames in the last cut (or discarded) segment, without the trailing idle frames. */
+    public int segmentLength() {
+        return segmentLength;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public double energy() {
+        return energy;
+    }
+
+    public String detectionArea() {
+        return detectionArea;
+    }
+
+    // RMS of the per-dimension change since the previous frame (0 for the first frame or after a dims change)
+    private double displacement(double[] frame) {
+        int dims = frame.length;
+        if (cur.length != dims) {
+            cur = new double[dims];
+            prev = new double[dims];
+            hasPrev = false;
+        }
+        System.arraycopy(frame, 0, cur, 0, dims);
+        if (hand) HandFeatureNormalizer.normalizeHandFrameInplace(cur, (dims / 3) / 2);
+
+        double e = 0.0;
+        if (hasPrev && dims > 0) {
+            double sum = 0.0;
+            for (int k = 0; k < dims; k++) {
+                double d = cur[k] - prev[k];
+                sum += d * d;
+            }
+            e = Math.sqrt(sum / dims);
+        }
+        double[] t = prev;
+        prev = cur;
+        cur = t;
+        hasPrev = true;
+        return e;
+    }
+}
@@ -0,0 +1,112 @@
+package kopo.motionservice.matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hand landmark normalization shared by template compilation and live matching.
+ * 프레임 레이아웃: [right hand (pointCount * xyz), left hand (pointCount * xyz)].
+ */
+public final class HandFeatureNormalizer {
+
+    private HandFeatureNormalizer() {
+    }
+
+    // Normalize a cached hand sequence per-frame: center each hand block and scale to unit magnitude
+    public static List<double[]> normalizeHandSequence(List<double[]> seq, int pointCount) {
+        if (seq == null) return Collections.emptyList();
+        List<double[]> out = new ArrayList<>(seq.size());
+        int dims = pointCount * 3 * 2;
+        for (double[] frame : seq) {
+            double[] f = padOrTrim(frame, dims);
+            normalizeHandFrameInplace(f, pointCount);
+            out.add(f);
+        }
+        return out;
+    }
+
+    // Align incoming live sequence frames to expected dims and normalize similarly
+    public static List<double[]> alignAndNormalizeLiveHandSequence(List<double[]> live, int expectedDims) {
+        if (live == null) return Collections.emptyList();
+        // expectedDims should be divisible by 6 (pointCount*3*2)
+        int pointCount = (expectedDims / 3) / 2;
+        List<double[]> out = new ArrayList<>(live.size());
+        for (double[] raw : live) {
+            double[] f = padOrTrim(raw, expectedDims);
+            normalizeHandFrameInplace(f, pointCount);
+            out.add(f);
+        }
+        return out;
+    }
+
+    // Same as padOrTrim + normalizeHandFrameInplace, but writes into a caller-owned buffer (no allocation)
+    public static void alignAndNormalizeInto(double[] raw, int dims, double[] out) {
+        int copy = (raw == null) ? 0 : Math.min(dims, raw.length);
+        if (copy > 0) System.arraycopy(raw, 0, out, 0, copy);
+        if (copy < dims) Arrays.fill(out, copy, dims, 0.0);
+        normalizeHandFrameInplace(out, (dims / 3) / 2);
+    }
+
+    // Ensure frame is exactly 'dims' long by padding zeros or truncating
+    public static double[] padOrTrim(double[] frame, int dims) {
+        if (frame == null) return new double[dims];
+        if (frame.length == dims) return Arrays.copyOf(frame, frame.length);
+        double[] out = new double[dims];
+        int copy = Math.min(dims, frame.length);
+        System.arraycopy(frame, 0, out, 0, copy);
+        if (copy < dims) Arrays.fill(out, copy, dims, 0.0);
+        return out;
+    }
+
+    // Center each hand block (right and left) and scale by RMS of non-zero coords to reduce scale variance
+    public static void normalizeHandFrameInplace(double[] f, int pointCount) {
+        if (f == null) return;
+        int handBlock = pointCount * 3; // coords per hand
+        // normalize right hand block
+        normalizeHandBlock(f, 0, pointCount);
+        // normalize left hand block
+        normalizeHandBlock(f, handBlock, pointCount);
+    }
+
+    public static void normalizeHandBlock(double[] f, int startIdx, int pointCount) {
+        // compute centroid of present points
+        double cx = 0, cy = 0, cz = 0; int count = 0;
+        for (int p = 0; p < pointCount; p++) {
+            int base = startIdx + p * 3;
+            if (base + 2 >= f.length) break;
+            double x = f[base], y = f[base + 1], z = f[base + 2];
+            if (!isZeroPoint(x, y, z)) {
+                cx += x; cy += y; cz += z; count++;
+            }
+        }
+        if (count == 0) return; // nothing to normalize
+        cx /= count; cy /= count; cz /= count;
+        // subtract centroid
+        double energy = 0.0;
+        for (int p = 0; p < pointCount; p++) {
+            int base = startIdx + p * 3;
+            if (base + 2 >= f.length) break;
+            double x = f[base], y = f[base + 1], z = f[base + 2];
+            if (!isZeroPoint(x, y, z)) {
+                double nx = x - cx; double ny = y - cy; double nz = z - cz;
+                f[base] = nx; f[base + 1] = ny; f[base + 2] = nz;
+                energy += nx*nx + ny*ny + nz*nz;
+            } else {
+                f[base] = 0; f[base + 1] = 0; f[base + 2] = 0;
+            }
+        }
+        double scale = Math.sqrt(energy / Math.max(1, count));
+        if (scale < 1e-6) scale = 1.0;
+        for (int p = 0; p < pointCount; p++) {
+            int base = startIdx + p * 3;
+            if (base + 2 >= f.length) break;
+            f[base] /= scale; f[base + 1] /= scale; f[base + 2] /= scale;
+        }
+    }
+
+    private static boolean isZeroPoint(double x, double y, double z) {
+        return Math.abs(x) < 1e-8 && Math.abs(y) < 1e-8 && Math.abs(z) < 1e-8;
+    }
+}
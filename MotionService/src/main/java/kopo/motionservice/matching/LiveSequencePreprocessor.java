@@ -0,0 +1,143 @@
+package kopo.motionservice.matching;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Live-sequence preprocessing stage for one match.
+ *
+ * 손 템플릿마다 라이브 시퀀스를 다시 padOrTrim/정규화하던 것을, 매칭 시작 시 "템플릿 차원 수별로 한 번만" 계산합니다.
+ * 결과는 bounded 풀에서 빌린 인스턴스의 버퍼에 기록되어 매칭 간에 재사용되며(virtual thread 마다 새로 만들지 않음),
+ * 스캔 중에는 읽기 전용이므로 병렬 스캔 작업자들이 함께 읽어도 안전합니다.
+ *
+ * 반환된 뷰는 {@link #close()} 로 인스턴스를 풀에 돌려주기 전까지만 유효합니다 (try-with-resources).
+ */
+public final class LiveSequencePreprocessor implements AutoCloseable {
+
+    private static final ArrayBlockingQueue<LiveSequencePreprocessor> POOL =
+            new ArrayBlockingQueue<>(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    // one slot per distinct hand-template dimensionality seen by this instance
+    private int slots = 0;
+    private int[] slotDims = new int[4];
+    private double[][][] slotRows = new double[4][][];
+    private FrameView[] slotViews = new FrameView[4];
+    private boolean[] slotReady = new boolean[4];
+
+    private List<double[]> raw;
+
+    private LiveSequencePreprocessor() {
+    }
+
+    /**
+     * Starts a match with a pooled instance; call {@link #include} for every store/bucket that will be scanned
+     * and {@link #close()} when the match is done.
+     */
+    public static LiveSequencePreprocessor prepare(List<double[]> live) {
+        LiveSequencePreprocessor p = POOL.poll();
+        if (p == null) p = new LiveSequencePreprocessor();
+        p.raw = live;
+        for (int i = 0; i < p.slots; i++) p.slotReady[i] = false;
+        return p;
+    }
+
+    /**
+     * Normalizes the live sequence once for every distinct dimensionality of the hand templates in the bucket.
+     */
+    public static LiveSequencePreprocessor prepare(List<double[]> live, TemplateStore store, int[] bucket) {
+        return prepare(live).include(store, bucket);
+    }
+
+    /**
+     * Adds the hand-template dimensionalities of another bucket (e.g. the shared dictionary).
+     * 정규화 결과는 템플릿 차원 수에만 의존하므로 여러 저장소가 같은 슬롯을 공유합니다.
+     */
+    public LiveSequencePreprocessor include(TemplateStore store, int[] bucket) {
+        for (int t : bucket) {
+            if (!store.isHand(t)) continue;
+            int slot = slotFor(store.dims(t));
+            if (!slotReady[slot]) {
+                fill(slot, raw);
+                slotReady[slot] = true;
+            }
+        }
+        return this;
+    }
+
+    /** Returns this instance to the pool; its views must no longer be used. */
+    @Override
+    public void close() {
+        raw = null;
+        POOL.offer(this); // pool full: drop it
+    }
+
+    /** Live sequence to compare with template t: the normalized view for hand templates, otherwise the raw frames. */
+    public List<double[]> forTemplate(TemplateStore store, int t) {
+        if (!store.isHand(t)) return raw;
+        int dims = store.dims(t);
+        for (int i = 0; i < slots; i++) {
+            if (slotDims[i] == dims && slotReady[i]) return slotViews[i];
+        }
+        // template outside the prepared buckets: fall back to an unpooled copy
+        return HandFeatureNormalizer.alignAndNormalizeLiveHandSequence(raw, dims);
+    }
+
+    private int slotFor(int dims) {
+        for (int i = 0; i < slots; i++) {
+            if (slotDims[i] == dims) return i;
+        }
+        if (slots == slotDims.length) {
+            int cap = slots * 2;
+            slotDims = Arrays.copyOf(slotDims, cap);
+            slotRows = Arrays.copyOf(slotRows, cap);
+            slotViews = Arrays.copyOf(slotViews, cap);
+            slotReady = Arrays.copyOf(slotReady, cap);
+        }
+        int i = slots++;
+        slotDims[i] = dims;
+        slotRows[i] = new double[0][];
+        slotViews[i] = new FrameView();
+        return i;
+    }
+
+    private void fill(int slot, List<double[]> live) {
+        int dims = slotDims[slot];
+        int n = live.size();
+        double[][] rows = slotRows[slot];
+        if (rows.length < n) {
+            double[][] grown = Arrays.copyOf(rows, Math.max(n, rows.length + (rows.length >> 1)));
+            for (int i = rows.length; i < grown.length; i++) grown[i] = new double[dims];
+            rows = grown;
+            slotRows[slot] = rows;
+        }
+        for (int i = 0; i < n; i++) {
+            HandFeatureNormalizer.alignAndNormalizeInto(live.get(i), dims, rows[i]);
+        }
+        slotViews[slot].set(rows, n);
+    }
+
+    /** Reusable fixed-size list view over the first n pooled rows. */
+    private static final class FrameView extends AbstractList<double[]> implements RandomAccess {
+        private double[][] rows;
+        private int size;
+
+        void set(double[][] rows, int size) {
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public double[] get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            return rows[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
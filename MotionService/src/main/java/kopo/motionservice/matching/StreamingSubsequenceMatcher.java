@@ -0,0 +1,213 @@
+package kopo.motionservice.matching;
+
+import java.util.Arrays;
+
+/**
+ * SPRING-style streaming subsequence DTW (Sakurai et al.) over a user's templates (own + visible shared).
+ *
+ * 'end' 메시지를 기다리지 않고 프레임이 들어올 때마다 템플릿별 DTW 열(column) 하나만 갱신합니다.
+ * 템플릿의 누적 비용이 임계값 아래로 내려가고, 그 경로가 더 이상 개선될 수 없을 때(경로 종료) 매치를 보고합니다.
+ * 프레임당 작업량은 O(템플릿 수 x 템플릿 길이 x 차원)이고, 세션당 메모리는 템플릿 길이 합에 비례하며
+ * 스트림 길이와 무관합니다.
+ *
+ * Not thread-safe: one instance per WebSocket session.
+ */
+public final class StreamingSubsequenceMatcher {
+
+    /**
+     * A detected subsequence: template {@code index} (of its store) matched frames [startFrame, endFrame],
+     * found in the dictionary snapshot {@code dictionaryVersion} the matcher was opened on.
+     */
+    public record Match(int index, String recordId, String phrase, String motionType,
+                        double score, long startFrame, long endFrame, long dictionaryVersion) {
+    }
+
+    private final TemplateStore[] stores; // store of each active template
+    private final int[] templates;      // active template indices in their store
+    private final boolean[] hand;       // hand templates get the live frame normalized to their dims
+    private final int[] handRow;        // per active hand template: index into handRows (one row per distinct dims)
+    private final double[][] handRows;  // normalized live frame per distinct hand dims, reused for every frame
+    private final long[] handRowFrame;  // frame number handRows[r] was last filled for
+    private final double threshold;     // normalized score threshold (same scale as matchSequence)
+    private final double minLengthRatio;
+    private final long dictionaryVersion; // UserDictionary#version() of the snapshot the templates come from
+
+    // per active template: cost column d[0..m] and start frame s[0..m], double-buffered
+    private final double[][] dPrev;
+    private final double[][] dCur;
+    private final long[][] sPrev;
+    private final long[][] sCur;
+    // per active template: best candidate still waiting for its path to end
+    private final double[] candCost;
+    private final long[] candStart;
+    private final long[] candEnd;
+
+    private long frameNo = 0;
+
+    public StreamingSubsequenceMatcher(TemplateStore[] stores, int[] templates,
+                                       double threshold, double minLengthRatio) {
+        this(stores, templates, threshold, minLengthRatio, 0L);
+    }
+
+    private StreamingSubsequenceMatcher(TemplateStore[] stores, int[] templates,
+                                        double threshold, double minLengthRatio, long dictionaryVersion) {
+        this.dictionaryVersion = dictionaryVersion;
+        this.stores = stores;
+        this.templates = templates;
+        this.hand = new boolean[templates.length];
+        this.handRow = new int[templates.length];
+        int[] rowDims = new int[templates.length];
+        int rows = 0;
+        for (int a = 0; a < templates.length; a++) {
+            hand[a] = stores[a].isHand(templates[a]);
+            if (!hand[a]) continue;
+            int dims = stores[a].dims[templates[a]];
+            int r = 0;
+            while (r < rows && rowDims[r] != dims) r++;
+            if (r == rows) rowDims[rows++] = dims;
+            handRow[a] = r;
+        }
+        this.handRows = new double[rows][];
+        for (int r = 0; r < rows; r++) handRows[r] = new double[rowDims[r]];
+        this.handRowFrame = new long[rows];
+        this.threshold = threshold;
+        this.minLengthRatio = Math.max(0.0, minLengthRatio);
+
+        int k = templates.length;
+        this.dPrev = new double[k][];
+        this.dCur = new double[k][];
+        this.sPrev = new long[k][];
+        this.sCur = new long[k][];
+        this.candCost = new double[k];
+        this.candStart = new long[k];
+        this.candEnd = new long[k];
+        for (int a = 0; a < k; a++) {
+            int m = stores[a].frames[templates[a]];
+            dPrev[a] = new double[m + 1];
+            dCur[a] = new double[m + 1];
+            sPrev[a] = new long[m + 1];
+            sCur[a] = new long[m + 1];
+        }
+        reset();
+    }
+
+    /** Matcher over the user's own bucket followed by the visible shared templates of the detection area. */
+    public static StreamingSubsequenceMatcher of(UserDictionary dictionary, String detectionArea,
+                                                 double threshold, double minLengthRatio) {
+        int[] own = dictionary.ownBucket(detectionArea);
+        int[] shared = dictionary.sharedBucket(detectionArea);
+        TemplateStore[] stores = new TemplateStore[own.length + shared.length];
+        int[] templates = new int[stores.length];
+        for (int i = 0; i < own.length; i++) {
+            stores[i] = dictionary.own();
+            templates[i] = own[i];
+        }
+        for (int i = 0; i < shared.length; i++) {
+            stores[own.length + i] = dictionary.shared();
+            templates[own.length + i] = shared[i];
+        }
+        return new StreamingSubsequenceMatcher(stores, templates, threshold, minLengthRatio, dictionary.version());
+    }
+
+    public int templateCount() {
+        return templates.length;
+    }
+
+    /** Forget all partial paths (e.g. after a reported match or when the client restarts). */
+    public void reset() {
+        for (int a = 0; a < templates.length; a++) {
+            Arrays.fill(dPrev[a], Double.POSITIVE_INFINITY);
+            candCost[a] = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Consumes one live frame.
+     *
+     * @return the best match whose warping path ended with this frame, or null
+     */
+    public Match push(double[] frame) {
+        long t = ++frameNo;
+        Match best = null;
+
+        for (int a = 0; a < templates.length; a++) {
+            int tpl = templates[a];
+            TemplateStore store = stores[a];
+            int m = store.frames[tpl];
+            int dims = store.dims[tpl];
+            int base = store.offsets[tpl];
+
+            double[] x = frame;
+            if (hand[a]) {
+                // 손 템플릿 차원 수별로 프레임당 한 번만 정규화 (행은 matcher 가 생성될 때 한 번 할당)
+                int r = handRow[a];
+                x = handRows[r];
+                if (handRowFrame[r] != t) {
+                    HandFeatureNormalizer.alignAndNormalizeInto(frame, dims, x);
+                    handRowFrame[r] = t;
+                }
+            }
+
+            double[] dp = dPrev[a];
+            double[] dc = dCur[a];
+            long[] sp = sPrev[a];
+            long[] sc = sCur[a];
+
+            // star-padding: a path may start at any frame
+            dc[0] = 0.0;
+            sc[0] = t;
+            int off = base;
+            for (int i = 1; i <= m; i++, off += dims) {
+                double best3 = dc[i - 1];
+                long start = sc[i - 1];
+                if (dp[i] < best3) { best3 = dp[i]; start = sp[i]; }
+                if (dp[i - 1] < best3) { best3 = dp[i - 1]; start = sp[i - 1]; }
+                dc[i] = DtwEngine.euclidean(x, store.data, off, dims) + best3;
+                sc[i] = start;
+            }
+
+            // raw-cost threshold for this template: normalized score * (expected path length n + m ~ 2m)
+            double eps = threshold * 2.0 * m;
+            Match reported = null;
+
+            if (candCost[a] <= eps) {
+                boolean ended = true;
+                for (int i = 1; i <= m; i++) {
+                    if (dc[i] < candCost[a] && sc[i] <= candEnd[a]) { ended = false; break; }
+                }
+                if (ended) {
+                    double score = candCost[a] / Math.max(1.0, (candEnd[a] - candStart[a] + 1) + m);
+                    reported = new Match(tpl, store.recordId(tpl), store.phrase(tpl), store.motionType(tpl),
+                            score, candStart[a], candEnd[a], dictionaryVersion);
+                    // paths overlapping the reported one must not be reported again
+                    for (int i = 1; i <= m; i++) {
+                        if (sc[i] <= candEnd[a]) dc[i] = Double.POSITIVE_INFINITY;
+                    }
+                    candCost[a] = Double.POSITIVE_INFINITY;
+                }
+            }
+
+            long length = t - sc[m] + 1;
+            if (dc[m] <= eps && dc[m] < candCost[a] && length >= minLengthRatio * m) {
+                candCost[a] = dc[m];
+                candStart[a] = sc[m];
+                candEnd[a] = t;
+            }
+
+            dPrev[a] = dc;
+            dCur[a] = dp;
+            sPrev[a] = sc;
+            sCur[a] = sp;
+
+            if (reported != null && (best == null || reported.score() < best.score())) {
+                best = reported;
+            }
+        }
+
+        if (best != null) {
+            // one phrase per gesture: restart every template after emitting a match
+            reset();
+        }
+        return best;
+    }
+}
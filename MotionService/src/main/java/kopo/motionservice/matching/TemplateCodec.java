@@ -0,0 +1,129 @@
+package kopo.motionservice.matching;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Redis 해시 필드(recordId 당 하나)에 저장하는 템플릿 바이너리 코덱.
+ *
+ * 레이아웃 (little-endian):
+ * <pre>
+ *   magic 'M''T' | format u8 | reserved u8 | frames i32 | dims i32
+ *   phrase len u16 + UTF-8 | motionType len u16 + UTF-8   (len 0xFFFF = null, format 2 부터)
+ *   frames x dims float32
+ * </pre>
+ * 프레임은 TemplateStore 와 같은 float32 로 저장되므로 매칭 결과는 JSON(double) 경로와 같습니다.
+ * 프레임 길이는 첫 프레임 차원 수로 pad/trim 됩니다 (TemplateStore.compile 과 동일).
+ */
+public final class TemplateCodec {
+
+    private static final byte MAGIC_0 = 'M';
+    private static final byte MAGIC_1 = 'T';
+    private static final byte FORMAT = 2;
+    private static final byte FORMAT_V1 = 1;   // null 문자열을 "" 로 쓰던 형식 (읽기만 지원)
+    private static final int HEADER_BYTES = 12;
+    private static final int NULL_STRING = 0xFFFF;
+    private static final int MAX_STRING_BYTES = NULL_STRING - 1;
+
+    private TemplateCodec() {
+    }
+
+    /** Encodes a template, or returns null when it has no frames. */
+    public static byte[] encode(CachedMotion motion) {
+        double[][] seq = (motion == null) ? null : motion.getSequence();
+        if (seq == null || seq.length == 0 || seq[0] == null) return null;
+        int frames = seq.length;
+        int dims = seq[0].length;
+        byte[] phrase = utf8(motion.getPhrase());
+        byte[] motionType = utf8(motion.getMotionType());
+
+        long size = HEADER_BYTES + stringBytes(phrase) + stringBytes(motionType) + payloadBytes(frames, dims);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Template too large to encode: " + frames + " x " + dims);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(MAGIC_0).put(MAGIC_1).put(FORMAT).put((byte) 0);
+        buf.putInt(frames).putInt(dims);
+        writeString(buf, phrase);
+        writeString(buf, motionType);
+        for (double[] frame : seq) {
+            int copy = (frame == null) ? 0 : Math.min(dims, frame.length);
+            for (int k = 0; k < copy; k++) buf.putFloat((float) frame[k]);
+            for (int k = copy; k < dims; k++) buf.putFloat(0f);
+        }
+        return buf.array();
+    }
+
+    /**
+     * Decodes one hash field.
+     *
+     * @throws IllegalArgumentException on an unknown header or a truncated value (callers then rebuild from the DB)
+     */
+    public static CachedMotion decode(String recordId, byte[] value) {
+        if (value == null || value.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("Template value too short for recordId=" + recordId);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.get() != MAGIC_0 || buf.get() != MAGIC_1) {
+            throw new IllegalArgumentException("Unknown template encoding for recordId=" + recordId);
+        }
+        byte format = buf.get();
+        if (format != FORMAT && format != FORMAT_V1) {
+            throw new IllegalArgumentException("Unknown template format " + format + " for recordId=" + recordId);
+        }
+        buf.get(); // reserved
+        int frames = buf.getInt();
+        int dims = buf.getInt();
+        String phrase = readString(buf, format, recordId);
+        String motionType = readString(buf, format, recordId);
+        if (frames < 0 || dims < 0 || buf.remaining() != payloadBytes(frames, dims)) {
+            throw new IllegalArgumentException("Truncated template value for recordId=" + recordId);
+        }
+
+        double[][] seq = new double[frames][dims];
+        for (double[] frame : seq) {
+            for (int k = 0; k < dims; k++) frame[k] = buf.getFloat();
+        }
+        return new CachedMotion(recordId, phrase, motionType, seq);
+    }
+
+    // frames x dims float32, in long so a corrupt header cannot overflow the size check
+    private static long payloadBytes(int frames, int dims) {
+        return (long) frames * dims * Float.BYTES;
+    }
+
+    private static byte[] utf8(String s) {
+        if (s == null) return null;
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) throw new IllegalArgumentException("String too long to encode: " + bytes.length + " bytes");
+        return bytes;
+    }
+
+    private static int stringBytes(byte[] bytes) {
+        return Short.BYTES + ((bytes == null) ? 0 : bytes.length);
+    }
+
+    private static void writeString(ByteBuffer buf, byte[] bytes) {
+        if (bytes == null) {
+            buf.putShort((short) NULL_STRING);
+        } else {
+            buf.putShort((short) bytes.length).put(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buf, byte format, String recordId) {
+        if (buf.remaining() < Short.BYTES) {
+            throw new IllegalArgumentException("Truncated template value for recordId=" + recordId);
+        }
+        int len = Short.toUnsignedInt(buf.getShort());
+        if (len == NULL_STRING && format != FORMAT_V1) return null;
+        if (buf.remaining() < len) {
+            throw new IllegalArgumentException("Truncated template value for recordId=" + recordId);
+        }
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
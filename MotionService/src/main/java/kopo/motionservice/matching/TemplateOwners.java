@@ -0,0 +1,18 @@
+package kopo.motionservice.matching;
+
+import java.util.Set;
+
+/**
+ * 골든셋 템플릿 소유자 계정. 이 계정들의 동작은 모든 사용자가 공유하는 사전으로 한 번만 컴파일됩니다.
+ */
+public final class TemplateOwners {
+
+    public static final Set<String> IDS = Set.of("HandDef", "FaceDef", "EyesDef", "SignLangDef");
+
+    private TemplateOwners() {
+    }
+
+    public static boolean isOwner(String userId) {
+        return userId != null && IDS.contains(userId);
+    }
+}
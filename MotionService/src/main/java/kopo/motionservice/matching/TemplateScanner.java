@@ -0,0 +1,148 @@
+package kopo.motionservice.matching;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * 컴파일된 템플릿 저장소를 스캔해 가장 가까운 템플릿을 찾습니다.
+ *
+ * 템플릿 수가 parallelThreshold 미만이면 호출 스레드에서 순차 스캔하고, 그 이상이면 전용 ForkJoinPool 에서
+ * chunk 단위로 나누어 병렬 스캔합니다. 병렬 작업자들은 현재까지의 최고 점수를 공유하여 early abandoning 에 사용합니다.
+ * 동점일 때는 저장소 인덱스가 작은 템플릿을 선택합니다 (병렬 모드에서는 공유 점수로 먼저 가지치기된 동점 템플릿이 빠질 수 있음).
+ */
+public final class TemplateScanner {
+
+    private final DtwEngine engine;
+    private final ForkJoinPool pool;          // null -> always sequential
+    private final int parallelThreshold;
+    private final int chunkSize;
+
+    public TemplateScanner(DtwEngine engine, ForkJoinPool pool, int parallelThreshold, int chunkSize) {
+        this.engine = engine;
+        this.pool = pool;
+        this.parallelThreshold = Math.max(1, parallelThreshold);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /** Best template of a scan; {@code index} is -1 when nothing matched. */
+    public record Result(int index, double score) {
+        static final Result NONE = new Result(-1, Double.POSITIVE_INFINITY);
+
+        public boolean found() {
+            return index >= 0;
+        }
+
+        Result better(Result other) {
+            if (other.score < score || (other.score == score && other.index >= 0 && (index < 0 || other.index < index))) {
+                return other;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * @param store   compiled user dictionary
+     * @param bucket  template indices to scan (e.g. {@link TemplateStore#bucket(String)})
+     * @param liveFor live sequence to compare with template t, or null to skip that template
+     *                (must be safe to call from several threads in parallel mode)
+     */
+    public Result scan(TemplateStore store, int[] bucket, IntFunction<List<double[]>> liveFor) {
+        return scan(store, bucket, liveFor, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Same as {@link #scan(TemplateStore, int[], IntFunction)}, but only templates strictly better than
+     * {@code bestSoFar} are reported (e.g. the best score of a previously scanned store).
+     */
+    public Result scan(TemplateStore store, int[] bucket, IntFunction<List<double[]>> liveFor, double bestSoFar) {
+        if (store == null || bucket == null || bucket.length == 0) return Result.NONE;
+        if (pool == null || bucket.length < parallelThreshold) {
+            return scanRange(store, bucket, liveFor, 0, bucket.length, null, bestSoFar);
+        }
+        SharedBest shared = new SharedBest();
+        shared.offer(bestSoFar);
+        return pool.invoke(new ScanTask(store, bucket, liveFor, 0, bucket.length, shared, bestSoFar));
+    }
+
+    private Result scanRange(TemplateStore store, int[] bucket, IntFunction<List<double[]>> liveFor,
+                             int from, int to, SharedBest shared, double bestSoFar) {
+        int bestIndex = -1;
+        double bestScore = bestSoFar;
+        // 구간 하나를 스캔하는 동안 스크래치를 한 번만 빌림
+        DtwScratch scratch = DtwScratch.acquire();
+        try {
+            for (int p = from; p < to; p++) {
+                int t = bucket[p];
+                List<double[]> live = liveFor.apply(t);
+                if (live == null) continue;
+
+                double bound = (shared == null) ? bestScore : Math.min(bestScore, shared.get());
+                double score = engine.distance(live, store, t, bound, scratch);
+                if (score < bestScore) {
+                    bestScore = score;
+                    bestIndex = t;
+                    if (shared != null) shared.offer(score);
+                }
+            }
+        } finally {
+            DtwScratch.release(scratch);
+        }
+        return (bestIndex < 0) ? Result.NONE : new Result(bestIndex, bestScore);
+    }
+
+    // ForkJoinTask 은 Serializable 이지만 스캔 작업은 직렬화되지 않음
+    @SuppressWarnings("serial")
+    private final class ScanTask extends RecursiveTask<Result> {
+        private final TemplateStore store;
+        private final int[] bucket;
+        private final IntFunction<List<double[]>> liveFor;
+        private final int from;
+        private final int to;
+        private final SharedBest shared;
+        private final double bestSoFar;
+
+        ScanTask(TemplateStore store, int[] bucket, IntFunction<List<double[]>> liveFor, int from, int to,
+                 SharedBest shared, double bestSoFar) {
+            this.store = store;
+            this.bucket = bucket;
+            this.liveFor = liveFor;
+            this.from = from;
+            this.to = to;
+            this.shared = shared;
+            this.bestSoFar = bestSoFar;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= chunkSize) {
+                return scanRange(store, bucket, liveFor, from, to, shared, bestSoFar);
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(store, bucket, liveFor, from, mid, shared, bestSoFar);
+            ScanTask right = new ScanTask(store, bucket, liveFor, mid, to, shared, bestSoFar);
+            left.fork();
+            Result r = right.compute();
+            return left.join().better(r);
+        }
+    }
+
+    /** Lock-free shared minimum score (non-negative doubles keep their order as raw long bits). */
+    private static final class SharedBest {
+        private final AtomicLong bits = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+
+        double get() {
+            return Double.longBitsToDouble(bits.get());
+        }
+
+        void offer(double score) {
+            long candidate = Double.doubleToLongBits(score);
+            long current;
+            while (candidate < (current = bits.get())) {
+                if (bits.compareAndSet(current, candidate)) return;
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package kopo.motionservice.matching;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 사용자 한 명의 템플릿 사전을 연속된 primitive 배열로 컴파일한 불변 저장소.
+ *
+ * 모든 템플릿의 프레임은 하나의 float[] 에 (template, frame, dim) 순서로 이어 붙여지고,
+ * offset/frames/dims 테이블과 recordId/phrase/motionType 병렬 배열로 접근합니다.
+ * double[][] (프레임당 객체 하나) 대비 템플릿당 메모리가 절반 이하로 줄고 DTW 루프가 순차 접근하게 됩니다.
+ * 매칭 대상 선택은 기존 규칙(motion_type 이 detectionArea 를 대소문자 무시 부분 문자열로 포함)을 그대로 따르며,
+ * 영역 문자열별 템플릿 인덱스 목록(bucket)을 한 번만 계산해 저장소에 메모이즈합니다. 따라서 "sign_hand" 같은 템플릿은
+ * "sign" 과 "hand" 양쪽 버킷에 모두 들어갑니다. 저장소가 불변이므로 메모이즈된 버킷은 교체 없이 계속 유효합니다.
+ */
+public final class TemplateStore {
+
+    private static final int[] NONE = new int[0];
+
+    // 메모이즈할 서로 다른 detectionArea 문자열 수 상한 (클라이언트가 임의 문자열을 보내도 메모리가 늘지 않도록)
+    private static final int MAX_CACHED_AREAS = 32;
+    // 클라이언트가 보내는 기본 영역 문자열: 컴파일 시 미리 계산
+    private static final String[] PRESET_AREAS = {"face", "hand", "hands", "eye", "eyes", "sign"};
+
+    // 위 상수들 뒤에 선언 (생성자가 사용)
+    private static final TemplateStore EMPTY =
+            new TemplateStore(new float[0], new int[0], new int[0], new int[0], new String[0], new String[0], new String[0],
+                    new boolean[0]);
+
+    final float[] data;
+    final int[] offsets;   // index of the first value of template t in data
+    final int[] frames;    // frame count of template t
+    final int[] dims;      // values per frame of template t
+    private final String[] recordIds;
+    private final String[] phrases;
+    private final String[] motionTypes;
+    private final boolean[] hand;         // motion type stores hand landmarks
+    private final String[] lowerTypes;    // motion types lower-cased once for the area filter
+    private final ConcurrentHashMap<String, int[]> buckets = new ConcurrentHashMap<>(); // lower-cased area -> indices
+
+    private TemplateStore(float[] data, int[] offsets, int[] frames, int[] dims,
+                          String[] recordIds, String[] phrases, String[] motionTypes,
+                          boolean[] hand) {
+        this.data = data;
+        this.offsets = offsets;
+        this.frames = frames;
+        this.dims = dims;
+        this.recordIds = recordIds;
+        this.phrases = phrases;
+        this.motionTypes = motionTypes;
+        this.hand = hand;
+        this.lowerTypes = new String[motionTypes.length];
+        for (int t = 0; t < motionTypes.length; t++) {
+            lowerTypes[t] = (motionTypes[t] == null) ? null : motionTypes[t].toLowerCase(Locale.ROOT);
+        }
+        for (String area : PRESET_AREAS) bucket(area);
+    }
+
+    public static TemplateStore empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Packs the given cached motions (in iteration order) into one store.
+     * Templates without frames are skipped; frames of a template are padded/trimmed to the
+     * dimensionality of its first frame.
+     */
+    public static TemplateStore compile(Collection<CachedMotion> motions) {
+        if (motions == null || motions.isEmpty()) return EMPTY;
+
+        int count = 0;
+        long total = 0;
+        for (CachedMotion cm : motions) {
+            int d = dimsOf(cm);
+            if (d <= 0) continue;
+            count++;
+            total += (long) cm.getSequence().length * d;
+        }
+        if (count == 0) return EMPTY;
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Template dictionary too large to compile: " + total + " values");
+        }
+
+        float[] data = new float[(int) total];
+        int[] offsets = new int[count];
+        int[] frames = new int[count];
+        int[] dims = new int[count];
+        String[] recordIds = new String[count];
+        String[] phrases = new String[count];
+        String[] motionTypes = new String[count];
+        boolean[] hand = new boolean[count];
+
+        int t = 0;
+        int pos = 0;
+        for (CachedMotion cm : motions) {
+            int d = dimsOf(cm);
+            if (d <= 0) continue;
+            double[][] seq = cm.getSequence();
+            offsets[t] = pos;
+            frames[t] = seq.length;
+            dims[t] = d;
+            recordIds[t] = cm.getRecordId();
+            phrases[t] = cm.getPhrase();
+            motionTypes[t] = cm.getMotionType();
+            hand[t] = DetectionArea.isHandMotionType(cm.getMotionType());
+            for (double[] frame : seq) {
+                int copy = (frame == null) ? 0 : Math.min(d, frame.length);
+                for (int k = 0; k < copy; k++) data[pos + k] = (float) frame[k];
+                pos += d; // remaining values stay 0 (padding)
+            }
+            t++;
+        }
+        return new TemplateStore(data, offsets, frames, dims, recordIds, phrases, motionTypes, hand);
+    }
+
+    /**
+     * Copy-on-write patch for incremental cache updates: returns a new store without the templates whose recordId is
+     * in {@code removeIds} (or equals the recordId of {@code add}) and with {@code add} appended, if given.
+     * Kept templates are copied as raw float slices, so only the added motion is converted.
+     * The receiver is not modified and stays valid for in-flight matches.
+     */
+    public TemplateStore patch(Collection<String> removeIds, CachedMotion add) {
+        Set<String> remove = (removeIds == null) ? new HashSet<>() : new HashSet<>(removeIds);
+        int addDims = dimsOf(add);
+        if (addDims > 0 && add.getRecordId() != null) remove.add(add.getRecordId());
+
+        int count = 0;
+        long total = 0;
+        for (int t = 0; t < size(); t++) {
+            if (remove.contains(recordIds[t])) continue;
+            count++;
+            total += (long) frames[t] * dims[t];
+        }
+        if (addDims > 0) {
+            count++;
+            total += (long) add.getSequence().length * addDims;
+        }
+        if (count == 0) return EMPTY;
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Template dictionary too large to compile: " + total + " values");
+        }
+
+        float[] nData = new float[(int) total];
+        int[] nOffsets = new int[count];
+        int[] nFrames = new int[count];
+        int[] nDims = new int[count];
+        String[] nRecordIds = new String[count];
+        String[] nPhrases = new String[count];
+        String[] nMotionTypes = new String[count];
+        boolean[] nHand = new boolean[count];
+
+        int k = 0;
+        int pos = 0;
+        for (int t = 0; t < size(); t++) {
+            if (remove.contains(recordIds[t])) continue;
+            int len = frames[t] * dims[t];
+            System.arraycopy(data, offsets[t], nData, pos, len);
+            nOffsets[k] = pos;
+            nFrames[k] = frames[t];
+            nDims[k] = dims[t];
+            nRecordIds[k] = recordIds[t];
+            nPhrases[k] = phrases[t];
+            nMotionTypes[k] = motionTypes[t];
+            nHand[k] = hand[t];
+            pos += len;
+            k++;
+        }
+        if (addDims > 0) {
+            double[][] seq = add.getSequence();
+            nOffsets[k] = pos;
+            nFrames[k] = seq.length;
+            nDims[k] = addDims;
+            nRecordIds[k] = add.getRecordId();
+            nPhrases[k] = add.getPhrase();
+            nMotionTypes[k] = add.getMotionType();
+            nHand[k] = DetectionArea.isHandMotionType(add.getMotionType());
+            for (double[] frame : seq) {
+                int copy = (frame == null) ? 0 : Math.min(addDims, frame.length);
+                for (int i = 0; i < copy; i++) nData[pos + i] = (float) frame[i];
+                pos += addDims;
+            }
+        }
+        return new TemplateStore(nData, nOffsets, nFrames, nDims, nRecordIds, nPhrases, nMotionTypes, nHand);
+    }
+
+    /** Whether a template with this recordId is in the store. */
+    public boolean contains(String recordId) {
+        if (recordId == null) return false;
+        for (String id : recordIds) {
+            if (recordId.equals(id)) return true;
+        }
+        return false;
+    }
+
+    private static int dimsOf(CachedMotion cm) {
+        if (cm == null || cm.getSequence() == null || cm.getSequence().length == 0) return -1;
+        double[] first = cm.getSequence()[0];
+        return (first == null) ? -1 : first.length;
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    public boolean isEmpty() {
+        return offsets.length == 0;
+    }
+
+    public String recordId(int t) {
+        return recordIds[t];
+    }
+
+    public String phrase(int t) {
+        return phrases[t];
+    }
+
+    public String motionType(int t) {
+        return motionTypes[t];
+    }
+
+    public int frames(int t) {
+        return frames[t];
+    }
+
+    public int dims(int t) {
+        return dims[t];
+    }
+
+    public boolean isHand(int t) {
+        return hand[t];
+    }
+
+    /**
+     * Indices (store order) of the templates whose motion type contains {@code detectionArea}, ignoring case —
+     * the legacy {@code motionType.contains(detectionArea)} rule. A null area matches nothing.
+     * The result is memoized per area string and must not be modified.
+     */
+    public int[] bucket(String detectionArea) {
+        if (detectionArea == null) return NONE;
+        String area = detectionArea.toLowerCase(Locale.ROOT);
+        int[] cached = buckets.get(area);
+        if (cached != null) return cached;
+        int[] computed = filter(area);
+        if (buckets.size() < MAX_CACHED_AREAS) {
+            int[] raced = buckets.putIfAbsent(area, computed);
+            if (raced != null) return raced;
+        }
+        return computed;
+    }
+
+    private int[] filter(String area) {
+        int[] out = new int[lowerTypes.length];
+        int n = 0;
+        for (int t = 0; t < lowerTypes.length; t++) {
+            if (lowerTypes[t] != null && lowerTypes[t].contains(area)) out[n++] = t;
+        }
+        return (n == 0) ? NONE : Arrays.copyOf(out, n);
+    }
+
+    /** Number of templates matched for a detection area, e.g. for logging and metrics. */
+    public int count(DetectionArea area) {
+        return bucket(area.keyword()).length;
+    }
+
+    /** Approximate heap footprint of the compiled store in bytes (for logging/metrics). */
+    public long memoryBytes() {
+        return 16L + (long) data.length * Float.BYTES + (long) offsets.length * (3L * Integer.BYTES + 3L * 4);
+    }
+}
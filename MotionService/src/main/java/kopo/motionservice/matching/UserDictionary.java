@@ -0,0 +1,180 @@
+package kopo.motionservice.matching;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 한 사용자가 매칭에 사용하는 템플릿 사전: 사용자 고유 템플릿 + 공유(골든셋) 템플릿에 대한 참조.
+ *
+ * 공유 템플릿(HandDef/FaceDef/EyesDef/SignLangDef)은 한 번만 컴파일되어 모든 사용자가 같은 {@link TemplateStore} 를 참조합니다.
+ * 사용자가 같은 (phrase, motion_type) 을 직접 녹화했으면 해당 공유 템플릿은 가려지고(override),
+ * 사용자가 삭제한 공유 phrase 는 tombstone 으로 가려집니다. 메모리는 O(사용자 + 템플릿) 입니다.
+ *
+ * Immutable; rebuild with {@link #withShared(TemplateStore)} when the shared set changes.
+ */
+public final class UserDictionary {
+
+    private final TemplateStore own;
+    private final TemplateStore shared;
+    private final Set<String> ownKeys;
+    private final Set<String> tombstones;
+    private final boolean[] sharedVisible; // per shared template: not overridden and not tombstoned
+    private final int sharedVisibleCount;
+    // shared store bucket (identity) -> its visible subset; bounded by the store's own memoized buckets
+    private final ConcurrentHashMap<int[], int[]> sharedBuckets = new ConcurrentHashMap<>();
+    // Redis 해시 버전: epoch 은 해시를 새로 만들 때마다 바뀌고 (TTL 만료 후 재생성 포함), version 은 그 epoch 안에서만 증가
+    private final long epoch;             // hash creation id the own templates correspond to (0 = unknown)
+    private final long version;           // Redis hash version within that epoch (0 = unknown)
+
+    private UserDictionary(TemplateStore own, TemplateStore shared, Set<String> ownKeys, Set<String> tombstones,
+                           long epoch, long version) {
+        this.epoch = epoch;
+        this.version = version;
+        this.own = (own == null) ? TemplateStore.empty() : own;
+        this.shared = (shared == null) ? TemplateStore.empty() : shared;
+        this.ownKeys = ownKeys;
+        this.tombstones = tombstones;
+
+        this.sharedVisible = new boolean[this.shared.size()];
+        int visible = 0;
+        for (int t = 0; t < sharedVisible.length; t++) {
+            String k = key(this.shared.phrase(t), this.shared.motionType(t));
+            if (!ownKeys.contains(k) && !tombstones.contains(k)) {
+                sharedVisible[t] = true;
+                visible++;
+            }
+        }
+        this.sharedVisibleCount = visible;
+    }
+
+    /**
+     * @param own        the user's own compiled templates
+     * @param shared     compiled shared template set (may be empty)
+     * @param tombstones keys ({@link #key}) of shared phrases the user removed
+     */
+    public static UserDictionary of(TemplateStore own, TemplateStore shared, Set<String> tombstones) {
+        TemplateStore o = (own == null) ? TemplateStore.empty() : own;
+        Set<String> keys = new HashSet<>();
+        for (int t = 0; t < o.size(); t++) keys.add(key(o.phrase(t), o.motionType(t)));
+        Set<String> tomb = (tombstones == null || tombstones.isEmpty()) ? Collections.emptySet() : Set.copyOf(tombstones);
+        return new UserDictionary(o, shared, keys, tomb, 0L, 0L);
+    }
+
+    /** Patched own templates, same shared set and tombstones (overrides are recomputed). */
+    public UserDictionary withOwn(TemplateStore newOwn) {
+        return of(newOwn, shared, tombstones).withVersion(epoch, version);
+    }
+
+    /** Adds a tombstone, hiding the shared template(s) with this key. */
+    public UserDictionary withTombstone(String phrase, String motionType) {
+        Set<String> tomb = new HashSet<>(tombstones);
+        tomb.add(key(phrase, motionType));
+        return new UserDictionary(own, shared, ownKeys, Set.copyOf(tomb), epoch, version);
+    }
+
+    /** Same user templates re-linked to a new shared set. */
+    public UserDictionary withShared(TemplateStore newShared) {
+        return new UserDictionary(own, newShared, ownKeys, tombstones, epoch, version);
+    }
+
+    /** Same dictionary tagged with the Redis hash epoch and version of its own templates. */
+    public UserDictionary withVersion(long newEpoch, long newVersion) {
+        if (newEpoch == epoch && newVersion == version) return this;
+        return new UserDictionary(own, shared, ownKeys, tombstones, newEpoch, newVersion);
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * True when this snapshot is a later version of the same Redis hash epoch than {@code other}.
+     * 다른 epoch 끼리는 (해시 만료 후 재생성, DB 에서 새로 만든 해시) 순서를 알 수 없으므로 항상 false 입니다.
+     */
+    public boolean isNewerThan(UserDictionary other) {
+        return epoch != 0 && epoch == other.epoch && version > other.version;
+    }
+
+    /**
+     * Applies one Redis hash change (epoch, version) to the own templates.
+     * 버전은 같은 epoch 안에서만 비교합니다: 해시가 만료 후 다시 만들어지면 version 이 1 부터 다시 시작하므로,
+     * epoch 이 다르거나 모르면 순서를 판단할 수 없어 로컬 사본을 버립니다.
+     *
+     * @return this when the change is already contained, the patched dictionary when it directly follows this
+     *         version, or null when the local copy must be dropped (other epoch, unknown version or a missed change)
+     */
+    public UserDictionary applyPatch(long patchEpoch, long patchVersion, Collection<String> removeIds, CachedMotion add) {
+        if (epoch == 0 || epoch != patchEpoch || version <= 0) return null;
+        if (version >= patchVersion) return this;          // 이미 이 버전 이후를 로드함
+        if (version != patchVersion - 1) return null;       // 중간 변경 누락
+        return withOwn(own.patch(removeIds, add)).withVersion(patchEpoch, patchVersion);
+    }
+
+    /** Normalized (phrase, motion_type) key used for overrides and tombstones. */
+    public static String key(String phrase, String motionType) {
+        String p = (phrase == null) ? "" : phrase.trim().toLowerCase();
+        String m = (motionType == null) ? "" : motionType.trim().toLowerCase();
+        return p + "|" + m;
+    }
+
+    public TemplateStore own() {
+        return own;
+    }
+
+    public TemplateStore shared() {
+        return shared;
+    }
+
+    public Set<String> tombstones() {
+        return tombstones;
+    }
+
+    /** Own templates matched for a client detection area ({@link TemplateStore#bucket(String)}). */
+    public int[] ownBucket(String detectionArea) {
+        return own.bucket(detectionArea);
+    }
+
+    /** Visible shared templates matched for a client detection area (overrides and tombstones removed). */
+    public int[] sharedBucket(String detectionArea) {
+        int[] bucket = shared.bucket(detectionArea);
+        if (bucket.length == 0 || sharedVisibleCount == sharedVisible.length) return bucket;
+        int[] cached = sharedBuckets.get(bucket);
+        if (cached != null) return cached;
+        int[] out = new int[bucket.length];
+        int n = 0;
+        for (int t : bucket) {
+            if (sharedVisible[t]) out[n++] = t;
+        }
+        int[] visible = (n == out.length) ? bucket : Arrays.copyOf(out, n);
+        // 저장소가 메모이즈한 버킷만 캐시 (상한 초과로 매번 새로 계산된 배열은 캐시하지 않음)
+        if (shared.bucket(detectionArea) == bucket) sharedBuckets.putIfAbsent(bucket, visible);
+        return visible;
+    }
+
+    /** Number of templates this user actually matches against. */
+    public int size() {
+        return own.size() + sharedVisibleCount;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Approximate heap owned by this user: own templates (frames x dims) plus the shared-visibility index and keys.
+     * The shared store itself is accounted once, not per user.
+     */
+    public long memoryBytes() {
+        return own.memoryBytes()
+                + sharedVisible.length
+                + (long) (ownKeys.size() + tombstones.size()) * 64L;
+    }
+}
@@ -0,0 +1,17 @@
+package kopo.motionservice.repository;
+
+import kopo.motionservice.repository.document.TemplateTombstoneDocument;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TemplateTombstoneRepository extends MongoRepository<TemplateTombstoneDocument, String> {
+    List<TemplateTombstoneDocument> findAllByUserId(String userId);
+
+    List<TemplateTombstoneDocument> findAllByUserIdIn(Collection<String> userIds);
+
+    boolean existsByUserIdAndPhraseAndMotionType(String userId, String phrase, String motionType);
+}
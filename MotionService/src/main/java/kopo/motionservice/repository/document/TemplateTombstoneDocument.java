@@ -0,0 +1,45 @@
+package kopo.motionservice.repository.document;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * 사용자가 삭제한 공유(골든셋) 템플릿 표시. 공유 템플릿은 사용자별로 복제되지 않으므로
+ * 삭제는 원본 대신 (user_id, phrase, motion_type) tombstone 으로 기록됩니다.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Document(collection = "TEMPLATE_TOMBSTONES")
+@CompoundIndex(name = "user_id_phrase_motion_type", def = "{'user_id': 1, 'phrase': 1, 'motion_type': 1}", unique = true)
+public class TemplateTombstoneDocument {
+
+    @Id
+    private String id;
+
+    @Field(name = "user_id")
+    private String userId;
+
+    @Field(name = "phrase")
+    private String phrase;
+
+    @Field(name = "motion_type")
+    private String motionType;
+
+    @Field(name = "created_at")
+    private LocalDateTime createdAt;
+
+    public TemplateTombstoneDocument(String userId, String phrase, String motionType) {
+        this.userId = userId;
+        this.phrase = phrase;
+        this.motionType = motionType;
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,16 @@
+package kopo.motionservice.service;
+
+/**
+ * 매칭 후처리 (위험 문구 알림, phrase history, LangGraph 용 최근 phrase) 를 매칭 경로 밖에서 처리합니다.
+ */
+public interface IDetectionRecordService {
+
+    /**
+     * Record a detected phrase. Dangerous phrases are broadcast before this returns;
+     * persistence is batched in the background.
+     *
+     * @param userId user the phrase was detected for
+     * @param phrase detected phrase
+     */
+    void record(String userId, String phrase);
+}
@@ -2,7 +2,15 @@
 package kopo.motionservice.service;
 
 import kopo.motionservice.dto.MatchResultDTO;
+import kopo.motionservice.dto.MotionCacheEventDTO;
+import kopo.motionservice.matching.StreamingSubsequenceMatcher;
+import kopo.motionservice.matching.TemplateStore;
+import kopo.motionservice.matching.UserDictionary;
+import kopo.motionservice.repository.document.RecordedMotionDocument;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Motion detector service contract.
@@ -45,6 +53,90 @@ public interface IMotionDetectorService {
      * @return match result dto
      */
     MatchResultDTO matchSequence(List<double[]> liveSequence, String detectionArea, String userId);
+
+    /**
+     * Match live sequence against an already loaded dictionary snapshot. Never loads, so it is safe on CPU match workers.
+     *
+     * @param liveSequence live motion sequence
+     * @param detectionArea detection area id/name
+     * @param userId target user id (history, alerts)
+     * @param dictionary snapshot from {@link #preloadUserDictionary(String)}, or null when the user has no templates
+     * @return match result dto
+     */
+    MatchResultDTO matchSequence(List<double[]> liveSequence, String detectionArea, String userId, UserDictionary dictionary);
     
     void reloadCacheForUser(String userId);
+
+    /**
+     * Make sure the user's dictionary is loaded before a CPU-bound match runs. A cold load (Redis / Mongo I/O) runs on
+     * a virtual thread, so match workers never block on it.
+     *
+     * @param userId target user id
+     * @return an already completed future if the dictionary is cached, otherwise one that completes after the load;
+     *         its value is the dictionary to match against (null when the user has none)
+     */
+    CompletableFuture<UserDictionary> preloadUserDictionary(String userId);
+
+    /**
+     * Open an incremental (SPRING-style) subsequence matcher over the user's templates for the area.
+     * Frames are pushed one by one and a match is emitted as soon as a phrase ends, without an explicit "end".
+     *
+     * @param userId target user id
+     * @param detectionArea detection area id/name
+     * @return matcher bound to the current template snapshot, or null if the user has no templates for the area
+     */
+    StreamingSubsequenceMatcher openStreamingMatcher(String userId, String detectionArea);
+
+    /**
+     * Record a match emitted by a streaming matcher (history, alerts) the same way matchSequence does.
+     *
+     * @param userId target user id
+     * @param match match reported by {@link StreamingSubsequenceMatcher#push(double[])}
+     * @return match result dto
+     */
+    MatchResultDTO acceptStreamingMatch(String userId, StreamingSubsequenceMatcher.Match match);
+
+    /**
+     * Add or replace (by recordId) one template in the user's compiled cache and its Redis copy,
+     * without reloading the user's dictionary.
+     *
+     * @param userId owner of the motion
+     * @param motion saved motion document (with motion data)
+     */
+    void putTemplate(String userId, RecordedMotionDocument motion);
+
+    /**
+     * Remove templates by recordId from the user's compiled cache and its Redis copy.
+     * Removing a user's own recording of a shared (phrase, motion_type) ends the override, so the shared template
+     * becomes visible to that user again (reset to default); use a tombstone to hide it as well.
+     *
+     * @param userId owner of the motions
+     * @param recordIds deleted record ids
+     */
+    void removeTemplates(String userId, Collection<String> recordIds);
+
+    /**
+     * Hide a shared (golden-set) template for one user after its tombstone was written.
+     *
+     * @param userId target user id
+     * @param phrase phrase of the shared template
+     * @param motionType motion type of the shared template
+     */
+    void hideSharedTemplate(String userId, String phrase, String motionType);
+
+    /**
+     * Current compiled shared (golden-set) dictionary. A new instance is published whenever the golden set changes,
+     * so callers may cache data derived from it keyed by identity.
+     *
+     * @return shared template snapshot (possibly empty)
+     */
+    TemplateStore sharedTemplateSnapshot();
+
+    /**
+     * Apply a template cache change published by another replica (Redis pub/sub).
+     * Events from this instance are ignored; out-of-order or missed versions drop the local dictionary instead.
+     *
+     * @param event cache event
+     */
+    void applyCacheEvent(MotionCacheEventDTO event);
 }
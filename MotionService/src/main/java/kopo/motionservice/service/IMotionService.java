@@ -5,14 +5,16 @@ import kopo.motionservice.repository.document.RecordedMotionDocument;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface IMotionService {
 
     /**
      * 녹화된 동작 데이터를 DB에 저장하는 메서드
      * @param requestDTO 프론트엔드로부터 받은 동작 데이터 묶음
+     * @return 저장된 문서 (recordId 포함)
      */
-    void saveRecordedMotion(MotionRecordRequestDTO requestDTO);
+    RecordedMotionDocument saveRecordedMotion(MotionRecordRequestDTO requestDTO);
 
 //    /**
 //     * 프레이즈, 검출영역, 영상 파일을 FastAPI로 전송하는 메서드
@@ -122,5 +124,14 @@ public interface IMotionService {
      */
     List<RecordedMotionDocument> getAllRecordedMotions();
 
+    /**
+     * 매칭 템플릿 생성용으로 한 사용자의 동작을 커서로 하나씩 읽어 넘기는 메서드
+     * (user_id + motion_type 인덱스 사용, id / 사용자 ID / 프레이즈 / 동작 타입 / 얼굴·손 프레임만 projection)
+     * @param userId 소유자 ID (null 이면 전체 사용자 동작을 읽음, 전체 리로드용)
+     * @param consumer 문서마다 커서 순서대로 한 번씩 호출됨
+     * @return 읽은 문서 수
+     */
+    int forEachMotionForMatching(String userId, Consumer<RecordedMotionDocument> consumer);
+
     public String generateSentence(String userId);
 }
@@ -7,5 +7,6 @@ public interface IRecordedMotionService {
     List<RecordedMotionDTO> getRecordedMotionsByUserId(String userId);
     boolean deleteRecordedMotionsByUserId(String userId);
     // 삭제된 문서의 개수를 반환 (0이면 삭제 없음)
+    // 공유 템플릿 삭제는 tombstone 으로 숨기고, 공유 템플릿을 덮어쓴 자기 녹화 삭제는 공유 템플릿을 다시 보이게 함
     long deleteRecordedMotionById(String motionId, String userId);
 }
@@ -0,0 +1,447 @@
+package kopo.motionservice.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import kopo.motionservice.dto.DetectionEventDTO;
+import kopo.motionservice.handler.AlertWebSocketHandler;
+import kopo.motionservice.repository.document.DangerousPhraseAlertDocument;
+import kopo.motionservice.repository.document.PhraseHistoryDocument;
+import kopo.motionservice.service.IDetectionRecordService;
+import kopo.motionservice.util.RecentPhraseRedisUtil;
+import lombok.extern.slf4j.Slf4j;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 매칭 후처리 write-behind 파이프라인.
+ *
+ * 위험 문구는 우선 경로: 호출 스레드에서 즉시 broadcast 하고, 알림 문서는 전용 큐에 넣어 바로 flush 를 요청합니다.
+ * 일반 phrase history 는 bounded 큐에 쌓아 batch-size 또는 flush-interval 마다 insertMany 로 저장합니다.
+ * 큐가 가득 차면 spill-dir 가 설정된 경우 JSON lines 파일로 내리고(Mongo 회복 후 재적재), 아니면 호출 스레드에서 직접 저장합니다(backpressure).
+ * 알림은 미리 부여한 id 로 unordered bulk insert 하며, 이미 저장된 id(duplicate key)는 성공으로 봅니다. 실제로 실패한 알림만
+ * 알림 큐로 되돌리고, 큐에도 들어가지 않으면 별도 spill 파일로 내립니다(spill 도 불가하면 error 로그).
+ */
+@Slf4j
+@Service
+public class DetectionRecordServiceImpl implements IDetectionRecordService {
+
+    private static final Set<String> DANGEROUS_PHRASES = new HashSet<>(Arrays.asList("도와주세요", "아파요"));
+    private static final String SPILL_FILE = "phrase-history.spill.jsonl";
+    private static final String ALERT_SPILL_FILE = "dangerous-alerts.spill.jsonl";
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final AlertWebSocketHandler alertWebSocketHandler;
+    private final RecentPhraseRedisUtil recentPhraseRedisUtil;
+    private final ObjectMapper spillMapper = JsonMapper.builder().addModule(new JavaTimeModule()).build();
+
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Path spillFile;   // null = spill 비활성
+    private final Path alertSpillFile;
+
+    private final BlockingQueue<DetectionEventDTO> historyQueue;
+    private final BlockingQueue<DangerousPhraseAlertDocument> alertQueue = new ArrayBlockingQueue<>(1024);
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    // spill 은 요청 스레드에서도 파일 I/O 를 하므로 synchronized 대신 ReentrantLock (virtual thread pinning 방지)
+    private final ReentrantLock spillLock = new ReentrantLock();
+
+    // 단일 스레드: 주기 flush, 크기 도달 flush, 알림 flush 가 서로 겹치지 않음
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "detection-write-behind");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Counter flushedCounter;
+    private final Counter spilledCounter;
+    private final Counter callerRunsCounter;
+    private final Counter droppedCounter;
+    private final Timer flushTimer;
+
+    public DetectionRecordServiceImpl(MongoTemplate mongoTemplate,
+                                      AlertWebSocketHandler alertWebSocketHandler,
+                                      RecentPhraseRedisUtil recentPhraseRedisUtil,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${motion.detection.write-behind.queue-capacity:10000}") int queueCapacity,
+                                      @Value("${motion.detection.write-behind.batch-size:200}") int batchSize,
+                                      @Value("${motion.detection.write-behind.flush-interval:500ms}") Duration flushInterval,
+                                      @Value("${motion.detection.write-behind.spill-dir:}") String spillDir) {
+        this.mongoTemplate = mongoTemplate;
+        this.alertWebSocketHandler = alertWebSocketHandler;
+        this.recentPhraseRedisUtil = recentPhraseRedisUtil;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = flushInterval;
+        this.spillFile = (spillDir == null || spillDir.isBlank()) ? null : Path.of(spillDir, SPILL_FILE);
+        this.alertSpillFile = (spillFile == null) ? null : spillFile.resolveSibling(ALERT_SPILL_FILE);
+        this.historyQueue = new ArrayBlockingQueue<>(Math.max(this.batchSize, queueCapacity));
+
+        Gauge.builder("motion.detection.writebehind.queue", historyQueue, BlockingQueue::size)
+                .description("Phrase history events waiting to be flushed")
+                .register(meterRegistry);
+        Gauge.builder("motion.detection.writebehind.alert.queue", alertQueue, BlockingQueue::size)
+                .description("Dangerous phrase alerts waiting to be persisted")
+                .register(meterRegistry);
+        this.flushedCounter = meterRegistry.counter("motion.detection.writebehind.events", "result", "flushed");
+        this.spilledCounter = meterRegistry.counter("motion.detection.writebehind.events", "result", "spilled");
+        this.callerRunsCounter = meterRegistry.counter("motion.detection.writebehind.events", "result", "caller-runs");
+        this.droppedCounter = meterRegistry.counter("motion.detection.writebehind.events", "result", "dropped");
+        this.flushTimer = meterRegistry.timer("motion.detection.writebehind.flush");
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (spillFile != null) Files.createDirectories(spillFile.getParent());
+        long millis = Math.max(10, flushInterval.toMillis());
+        flushExecutor.scheduleWithFixedDelay(this::flushAll, millis, millis, TimeUnit.MILLISECONDS);
+        log.info("[DetectionRecordServiceImpl] Write-behind started (capacity={}, batchSize={}, interval={}ms, spill={})",
+                historyQueue.remainingCapacity(), batchSize, millis, spillFile == null ? "off" : spillFile);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        // 남은 이벤트는 종료 스레드에서 마저 저장
+        flushAlerts();
+        flushHistory();
+    }
+
+    @Override
+    public void record(String userId, String phrase) {
+        LocalDateTime now = LocalDateTime.now();
+
+        if (DANGEROUS_PHRASES.contains(phrase)) {
+            log.warn("[DetectionRecordServiceImpl] Dangerous phrase detected for userId={}: {}", userId, phrase);
+            // TODO: userName을 실제 사용자 이름으로 바꾸는 로직 필요 (현재는 userId를 임시로 사용)
+            DangerousPhraseAlertDocument alert = new DangerousPhraseAlertDocument(userId, userId, phrase, now);
+            // 저장 전에 broadcast 하므로 id 를 미리 부여 (클라이언트가 같은 id 로 confirm)
+            alert.setId(new ObjectId().toHexString());
+            alertWebSocketHandler.broadcast(alert);
+            if (alertQueue.offer(alert)) {
+                flushExecutor.execute(this::flushAlerts);
+            } else {
+                saveAlerts(List.of(alert));
+            }
+        }
+
+        DetectionEventDTO event = new DetectionEventDTO(userId, phrase, now);
+        if (!historyQueue.offer(event)) {
+            overflow(event);
+        } else if (historyQueue.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(this::flushHistory);
+        }
+    }
+
+    private void flushAll() {
+        try {
+            flushAlerts();
+            flushHistory();
+            replaySpill();
+            replayAlertSpill();
+        } catch (Exception e) {
+            // 주기 작업은 예외로 중단되면 안 됨
+            log.error("[DetectionRecordServiceImpl] Write-behind flush failed: {}", e.getMessage());
+        }
+    }
+
+    private void flushAlerts() {
+        List<DangerousPhraseAlertDocument> batch = new ArrayList<>();
+        alertQueue.drainTo(batch);
+        if (!batch.isEmpty()) saveAlerts(batch);
+    }
+
+    private void saveAlerts(List<DangerousPhraseAlertDocument> alerts) {
+        List<DangerousPhraseAlertDocument> failed = insertAlerts(alerts);
+        if (failed.isEmpty()) {
+            log.info("[DetectionRecordServiceImpl] {} dangerous phrase alert(s) saved to MongoDB", alerts.size());
+            return;
+        }
+        // 알림은 버리지 않음: 실패한 알림만 큐로 되돌려 다음 주기에 다시 시도하고, 큐가 가득 차면 spill
+        List<DangerousPhraseAlertDocument> rejected = new ArrayList<>();
+        for (DangerousPhraseAlertDocument alert : failed) {
+            if (!alertQueue.offer(alert)) rejected.add(alert);
+        }
+        if (!rejected.isEmpty()) spillAlerts(rejected);
+    }
+
+    /**
+     * Unordered bulk insert of alerts with preassigned ids. A duplicate key means an earlier, partially
+     * successful attempt already stored that alert, so it counts as saved; the batch can never become a poison batch.
+     *
+     * @return the alerts that were not stored
+     */
+    private List<DangerousPhraseAlertDocument> insertAlerts(List<DangerousPhraseAlertDocument> alerts) {
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DangerousPhraseAlertDocument.class)
+                    .insert(alerts)
+                    .execute();
+            return List.of();
+        } catch (BulkOperationException e) {
+            List<DangerousPhraseAlertDocument> failed = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) failed.add(alerts.get(error.getIndex()));
+            }
+            if (!failed.isEmpty()) {
+                log.error("[DetectionRecordServiceImpl] Failed to save {} of {} dangerous phrase alert(s): {}",
+                        failed.size(), alerts.size(), e.getMessage());
+            }
+            return failed;
+        } catch (Exception e) {
+            // 연결 오류 등: 어느 알림이 저장됐는지 모르므로 전부 재시도 (이미 저장된 것은 다음 시도에서 duplicate key 로 성공 처리)
+            log.error("[DetectionRecordServiceImpl] Failed to save {} dangerous phrase alert(s): {}", alerts.size(), e.getMessage());
+            return alerts;
+        }
+    }
+
+    /** One spilled alert (JSON line); the document itself has no default constructor. */
+    private record SpilledAlert(String id, String userId, String userName, String phrase, LocalDateTime detectedTime) {
+    }
+
+    private void spillAlerts(List<DangerousPhraseAlertDocument> alerts) {
+        if (alertSpillFile != null) {
+            spillLock.lock();
+            try (BufferedWriter w = Files.newBufferedWriter(alertSpillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (DangerousPhraseAlertDocument a : alerts) {
+                    w.write(spillMapper.writeValueAsString(
+                            new SpilledAlert(a.getId(), a.getUserId(), a.getUserName(), a.getPhrase(), a.getDetectedTime())));
+                    w.newLine();
+                }
+                spilledCounter.increment(alerts.size());
+                log.warn("[DetectionRecordServiceImpl] Spilled {} dangerous phrase alert(s) to {}", alerts.size(), alertSpillFile);
+                return;
+            } catch (IOException e) {
+                log.error("[DetectionRecordServiceImpl] Failed to spill {} dangerous phrase alert(s) to {}: {}",
+                        alerts.size(), alertSpillFile, e.getMessage());
+            } finally {
+                spillLock.unlock();
+            }
+        }
+        // 보관할 곳이 없음: 복구할 수 있도록 알림마다 error 로그를 남김
+        droppedCounter.increment(alerts.size());
+        for (DangerousPhraseAlertDocument a : alerts) {
+            log.error("[DetectionRecordServiceImpl] Dropped dangerous phrase alert: id={}, userId={}, phrase={}, detectedTime={}",
+                    a.getId(), a.getUserId(), a.getPhrase(), a.getDetectedTime());
+        }
+    }
+
+    /**
+     * 알림 큐가 비어 있으면 spill 된 알림을 큐로 되돌립니다 (저장은 flushAlerts 가 담당, 큐에 안 들어가면 다시 spill).
+     */
+    private void replayAlertSpill() {
+        if (alertSpillFile == null || !alertQueue.isEmpty()) return;
+
+        Path replaying = alertSpillFile.resolveSibling(ALERT_SPILL_FILE + ".replay");
+        spillLock.lock();
+        try {
+            if (!Files.exists(alertSpillFile)) return;
+            try {
+                Files.move(alertSpillFile, replaying, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                log.warn("[DetectionRecordServiceImpl] Failed to take alert spill file {}: {}", alertSpillFile, e.getMessage());
+                return;
+            }
+        } finally {
+            spillLock.unlock();
+        }
+
+        try {
+            List<DangerousPhraseAlertDocument> rejected = new ArrayList<>();
+            int replayed = 0;
+            for (String line : Files.readAllLines(replaying, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) continue;
+                SpilledAlert s = spillMapper.readValue(line, SpilledAlert.class);
+                DangerousPhraseAlertDocument alert =
+                        new DangerousPhraseAlertDocument(s.userId(), s.userName(), s.phrase(), s.detectedTime());
+                alert.setId(s.id());
+                if (alertQueue.offer(alert)) replayed++;
+                else rejected.add(alert);
+            }
+            if (!rejected.isEmpty()) spillAlerts(rejected);
+            Files.delete(replaying);
+            log.info("[DetectionRecordServiceImpl] Re-queued {} spilled dangerous phrase alert(s) from {}", replayed, alertSpillFile);
+            if (replayed > 0) flushAlerts();
+        } catch (IOException e) {
+            log.error("[DetectionRecordServiceImpl] Failed to replay alert spill file {}: {}", replaying, e.getMessage());
+        }
+    }
+
+    private void flushHistory() {
+        flushRequested.set(false);
+        List<DetectionEventDTO> batch = new ArrayList<>(batchSize);
+        while (historyQueue.drainTo(batch, batchSize) > 0) {
+            long start = System.nanoTime();
+            boolean saved = insertHistory(batch);
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (saved) {
+                updateRecentPhrases(batch);
+            } else {
+                spillOrDrop(batch);
+            }
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    private boolean insertHistory(List<DetectionEventDTO> events) {
+        List<PhraseHistoryDocument> docs = new ArrayList<>(events.size());
+        for (DetectionEventDTO e : events) {
+            PhraseHistoryDocument doc = new PhraseHistoryDocument();
+            doc.setUserId(e.getUserId());
+            doc.setPhrase(e.getPhrase());
+            doc.setDetectedTime(e.getDetectedTime());
+            docs.add(doc);
+        }
+        try {
+            mongoTemplate.insert(docs, PhraseHistoryDocument.class);
+            flushedCounter.increment(docs.size());
+            log.debug("[DetectionRecordServiceImpl] {} phrase history document(s) saved to MongoDB", docs.size());
+            return true;
+        } catch (Exception e) {
+            log.error("[DetectionRecordServiceImpl] Failed to save {} phrase history document(s): {}", docs.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 큐가 가득 찼을 때: spill 파일이 있으면 내리고, 없으면 호출 스레드가 직접 저장합니다.
+     */
+    private void overflow(DetectionEventDTO event) {
+        if (spillFile != null && spill(List.of(event))) {
+            return;
+        }
+        callerRunsCounter.increment();
+        if (insertHistory(List.of(event))) {
+            updateRecentPhrases(List.of(event));
+        } else {
+            droppedCounter.increment();
+        }
+    }
+
+    private void spillOrDrop(List<DetectionEventDTO> events) {
+        if (spillFile == null || !spill(events)) {
+            droppedCounter.increment(events.size());
+            log.warn("[DetectionRecordServiceImpl] Dropped {} phrase history event(s)", events.size());
+        }
+    }
+
+    private boolean spill(List<DetectionEventDTO> events) {
+        spillLock.lock();
+        try {
+            try (BufferedWriter w = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (DetectionEventDTO e : events) {
+                    w.write(spillMapper.writeValueAsString(e));
+                    w.newLine();
+                }
+                spilledCounter.increment(events.size());
+                return true;
+            } catch (IOException e) {
+                log.error("[DetectionRecordServiceImpl] Failed to spill {} phrase history event(s) to {}: {}",
+                        events.size(), spillFile, e.getMessage());
+                return false;
+            }
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * 큐에 여유가 있으면 spill 파일을 Mongo 로 다시 적재합니다. 실패한 배치는 다시 spill 됩니다.
+     * (spill 된 이벤트는 이미 오래된 것이므로 최근 phrase 목록에는 반영하지 않음)
+     */
+    private void replaySpill() {
+        if (spillFile == null || historyQueue.size() > historyQueue.remainingCapacity()) return;
+
+        Path replaying = spillFile.resolveSibling(SPILL_FILE + ".replay");
+        spillLock.lock();
+        try {
+            if (!Files.exists(spillFile)) return;
+            try {
+                Files.move(spillFile, replaying, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                log.warn("[DetectionRecordServiceImpl] Failed to take spill file {}: {}", spillFile, e.getMessage());
+                return;
+            }
+        } finally {
+            spillLock.unlock();
+        }
+
+        try {
+            // Mongo 가 아직 느리면 첫 실패 이후 나머지는 시도하지 않고 그대로 다시 spill
+            boolean failed = false;
+            List<DetectionEventDTO> batch = new ArrayList<>(batchSize);
+            for (String line : Files.readAllLines(replaying, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) continue;
+                batch.add(spillMapper.readValue(line, DetectionEventDTO.class));
+                if (batch.size() == batchSize) {
+                    if (failed || !insertHistory(batch)) {
+                        failed = true;
+                        spillOrDrop(batch);
+                    }
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty() && (failed || !insertHistory(batch))) spillOrDrop(batch);
+            Files.delete(replaying);
+            log.info("[DetectionRecordServiceImpl] Replayed spilled phrase history from {}", spillFile);
+        } catch (IOException e) {
+            log.error("[DetectionRecordServiceImpl] Failed to replay spill file {}: {}", replaying, e.getMessage());
+        }
+    }
+
+    /**
+     * LangGraph용 최근 phrase ring buffer 갱신: 배치 안에서 사용자별로 모아 사용자당 스크립트 1회 (검출 순서 유지)
+     */
+    private void updateRecentPhrases(List<DetectionEventDTO> events) {
+        Map<String, List<String>> byUser = new LinkedHashMap<>();
+        for (DetectionEventDTO e : events) {
+            byUser.computeIfAbsent(e.getUserId(), k -> new ArrayList<>()).add(e.getPhrase());
+        }
+        byUser.forEach((userId, phrases) -> {
+            try {
+                long size = recentPhraseRedisUtil.append(userId, phrases);
+                log.debug("[DetectionRecordServiceImpl] Updated recent phrases in Redis for userId={}, size={}", userId, size);
+            } catch (Exception ex) {
+                log.warn("[DetectionRecordServiceImpl] Failed to update recent phrases in Redis for userId={}: {}",
+                        userId, ex.getMessage());
+            }
+        });
+    }
+}
@@ -1,60 +1,97 @@
 package kopo.motionservice.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import kopo.motionservice.dto.MatchResultDTO;
-import kopo.motionservice.handler.AlertWebSocketHandler;
-import kopo.motionservice.repository.DangerousPhraseAlertRepository;
-import kopo.motionservice.repository.document.DangerousPhraseAlertDocument;
+import kopo.motionservice.dto.MotionCacheEventDTO;
+import kopo.motionservice.matching.CachedMotion;
+import kopo.motionservice.matching.DetectionArea;
+import kopo.motionservice.matching.DtwEngine;
+import kopo.motionservice.matching.HandFeatureNormalizer;
+import kopo.motionservice.matching.LiveSequencePreprocessor;
+import kopo.motionservice.matching.StreamingSubsequenceMatcher;
+import kopo.motionservice.matching.TemplateCodec;
+import kopo.motionservice.matching.TemplateOwners;
+import kopo.motionservice.matching.TemplateScanner;
+import kopo.motionservice.matching.TemplateStore;
+import kopo.motionservice.matching.UserDictionary;
+import kopo.motionservice.repository.TemplateTombstoneRepository;
+import kopo.motionservice.repository.document.TemplateTombstoneDocument;
 import kopo.motionservice.repository.document.RecordedMotionDocument;
+import kopo.motionservice.service.IDetectionRecordService;
 import kopo.motionservice.service.IMotionDetectorService;
 import kopo.motionservice.service.IMotionService;
-import kopo.motionservice.util.RedisUtil;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import kopo.motionservice.util.MotionCacheRedisUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.type.TypeReference;
 
 import jakarta.annotation.PostConstruct;
-import java.time.LocalDateTime;
+import jakarta.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
-import kopo.motionservice.repository.PhraseHistoryRepository;
-import kopo.motionservice.repository.document.PhraseHistoryDocument;
-import kopo.motionservice.repository.RecordedMotionRepository;
-
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class MotionDetectorServiceImpl implements IMotionDetectorService {
 
     private final IMotionService motionService;
-    private final PhraseHistoryRepository phraseHistoryRepository; // Add repository for history
-    private final AlertWebSocketHandler alertWebSocketHandler;
-    @Autowired
-    private RedisUtil redisUtil;
+    private final IDetectionRecordService detectionRecordService;
+    private final DtwEngine dtwEngine;
+    private final TemplateScanner templateScanner;
+    private final TemplateTombstoneRepository templateTombstoneRepository;
     @Autowired
-    private DangerousPhraseAlertRepository dangerousPhraseAlertRepository;
-    // NEW: write access for cloning imports
-    @Autowired private RecordedMotionRepository recordedMotionRepository;
+    private MotionCacheRedisUtil motionCacheRedisUtil;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    // 사용자별 캐시: userId -> Map<recordId, CachedMotion>
-    private final Map<String, Map<String, CachedMotion>> userCaches = new ConcurrentHashMap<>();
+    // 사용자별 캐시: userId -> 고유 템플릿 + 공유 템플릿 참조 (Redis 에는 고유 템플릿만 recordId 별 바이너리 해시 필드로 저장)
+    // byte weight / idle 시간 기준으로 bounded (MatchingConfig#userDictionaryCache), 내려간 사용자는 Redis/Mongo 에서 다시 로드
+    // 값은 불변 스냅샷(RCU): 리로드/패치는 옆에서 새 사전을 만든 뒤 키 단위로 교체하고, 진행 중인 매칭은 시작 시점 스냅샷으로 끝남
+    private final Cache<String, UserDictionary> userCaches;
 
-    private static final String REDIS_CACHE_PREFIX = "motion_cache:";
-    private static final long REDIS_CACHE_TIMEOUT_SECONDS = 3600; // 1 hour
+    // 사용자별 진행 중인 로드 (single-flight): 동시에 들어온 콜드 매칭은 같은 로드를 기다림
+    private final Map<LoadKey, CompletableFuture<UserDictionary>> inFlightLoads = new ConcurrentHashMap<>();
+
+    // serve-stale 모드의 백그라운드 사전 갱신 (사용자 수와 무관하게 소수 스레드)
+    private final ExecutorService cacheRefreshExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "dictionary-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 콜드 사전 로드(Redis / Mongo I/O) 전용: virtual thread 라 로드 수만큼 대기해도 매칭 CPU 풀을 잡지 않음
+    private final ExecutorService dictionaryLoadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // true 이면 reloadCacheForUser 가 갱신을 기다리지 않고 백그라운드에서 새 스냅샷으로 교체
+    @Value("${motion.matching.cache.serve-stale-while-refresh:false}")
+    private boolean serveStaleWhileRefresh;
+
+    // 골든셋(TemplateOwners) 템플릿: 프로세스당 한 번만 컴파일되어 모든 사용자 사전이 참조
+    private volatile TemplateStore sharedTemplates;
+    // 골든셋 로드는 Mongo I/O 를 포함하므로 synchronized 대신 ReentrantLock (virtual thread 가 carrier 에 고정되지 않음)
+    private final ReentrantLock sharedTemplatesLock = new ReentrantLock();
 
-    // NEW: template definition owners that act like “golden sets”
-    private static final Set<String> TEMPLATE_USER_IDS =
-            new HashSet<>(Arrays.asList("HandDef", "FaceDef", "EyesDef", "SignLangDef"));
+    // 캐시 이벤트(motion_cache_events) 발행 레플리카 식별자: 자기가 보낸 이벤트는 수신 시 무시
+    private final String instanceId = UUID.randomUUID().toString();
 
-    private static final Set<String> DANGEROUS_PHRASES = new HashSet<>(Arrays.asList("도와주세요", "아파요"));
+    // streaming(SPRING) 매칭 임계값: matchSequence 와 같은 정규화 점수 기준
+    @Value("${motion.matching.streaming.threshold:0.35}")
+    private double streamingThreshold;
+
+    // 템플릿 길이 대비 최소 매칭 구간 길이 비율 (너무 짧은 부분 일치 방지)
+    @Value("${motion.matching.streaming.min-length-ratio:0.5}")
+    private double streamingMinLengthRatio;
+
+    // 템플릿 Redis 해시 (motion_tpl:<userId>, MotionCacheRedisUtil) TTL
+    private static final long REDIS_CACHE_TIMEOUT_SECONDS = 3600; // 1 hour
 
     @PostConstruct
     public void init() {
@@ -62,151 +99,207 @@ public class MotionDetectorServiceImpl implements IMotionDetectorService {
         // 초기화 시에는 빈 상태로 시작 - 각 사용자 연결 시 해당 사용자의 캐시를 로드
     }
 
+    @PreDestroy
+    public void shutdown() {
+        cacheRefreshExecutor.shutdown();
+        dictionaryLoadExecutor.shutdown();
+    }
+
     /**
      * 특정 사용자의 캐시를 리로드합니다.
      * userId가 null이면 전체 사용자의 데이터를 로드합니다.
      */
     public void reloadCache(String userId) {
         if (userId == null || userId.isEmpty()) { reloadAllUserCaches(); return; }
+        loadSingleFlight(userId, false);
+    }
 
-        String redisKey = REDIS_CACHE_PREFIX + userId;
+    /**
+     * 같은 사용자에 대한 동시 로드를 하나로 합칩니다: 먼저 온 호출이 로드하고, 나머지는 같은 future 를 기다립니다.
+     * Redis 우선 로드와 DB 강제 로드는 서로 다른 결과를 낼 수 있으므로 따로 합칩니다.
+     */
+    private UserDictionary loadSingleFlight(String userId, boolean fromDb) {
+        LoadKey key = new LoadKey(userId, fromDb);
+        CompletableFuture<UserDictionary> mine = new CompletableFuture<>();
+        CompletableFuture<UserDictionary> inFlight = inFlightLoads.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            log.info("[MotionDetectorServiceImpl] Joining in-flight cache load for userId={} (fromDb={})", userId, fromDb);
+            return inFlight.join();
+        }
 
-        // 0) import; if imported, invalidate Redis
-        int imported = 0;
         try {
-            imported = ensureDefaultTemplatesImported(userId);
-            if (imported > 0) {
-                redisUtil.delete(redisKey); // force rebuild from DB
-                log.info("[MotionDetectorServiceImpl] Deleted Redis cache after import for userId={}", userId);
-            }
-        } catch (Exception e) {
-            log.warn("[MotionDetectorServiceImpl] Template import error for userId={}: {}", userId, e.getMessage());
+            UserDictionary loaded = fromDb ? forceReloadFromDb(userId) : loadFromRedisOrDb(userId);
+            // 로드 중에 같은 해시 epoch 의 더 새로운 버전이 게시됐으면 (로컬/원격 패치) 그 스냅샷을 유지.
+            // epoch 이 다르면 (DB 에서 해시를 새로 만든 로드, 만료 후 재생성된 해시) 버전을 비교할 수 없으므로 로드한 스냅샷을 게시
+            UserDictionary dictionary = userCaches.asMap().compute(userId, (uid, current) ->
+                    (current != null && current.isNewerThan(loaded)) ? current : loaded);
+            mine.complete(dictionary);
+            return dictionary;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, mine);
         }
+    }
 
-        // 1) try Redis, but only trust it if non-empty
-        String cachedData = redisUtil.get(redisKey);
-        if (cachedData != null  && !cachedData.isBlank()) {
-            try {
-                Map<String, CachedMotion> userCache = objectMapper.readValue(
-                        cachedData, new TypeReference<Map<String, CachedMotion>>() {});
-                if (userCache != null && !userCache.isEmpty()) {
-                    userCaches.put(userId, userCache);
-                    log.info("[MotionDetectorServiceImpl] Cache loaded from Redis for userId={}. {} motions cached.",
-                            userId, userCache.size());
-                    return;
-                } else {
-                    log.info("[MotionDetectorServiceImpl] Redis cache empty for userId={}; rebuilding from DB.", userId);
-                }
-            } catch (Exception e) {
-                log.warn("[MotionDetectorServiceImpl] Failed to load cache from Redis for userId={}: {}",
-                        userId, e.getMessage());
+    private record LoadKey(String userId, boolean fromDb) {
+    }
+
+    private UserDictionary loadFromRedisOrDb(String userId) {
+        // 1) try Redis (binary hash, HGETALL), but only trust it if non-empty
+        try {
+            MotionCacheRedisUtil.Snapshot snapshot = motionCacheRedisUtil.load(userId);
+            if (!snapshot.isEmpty()) {
+                List<CachedMotion> motions = new ArrayList<>(snapshot.records().size());
+                snapshot.records().forEach((recordId, value) -> motions.add(TemplateCodec.decode(recordId, value)));
+                TemplateStore store = TemplateStore.compile(motions);
+                UserDictionary dictionary = link(userId, store).withVersion(snapshot.epoch(), snapshot.version());
+                log.info("[MotionDetectorServiceImpl] Cache loaded from Redis for userId={} (epoch {}, version {}). {} own + {} shared motions ({} bytes).",
+                        userId, snapshot.epoch(), snapshot.version(), store.size(), dictionary.size() - store.size(), store.memoryBytes());
+                return dictionary;
+            } else {
+                log.info("[MotionDetectorServiceImpl] Redis cache empty for userId={}; rebuilding from DB.", userId);
             }
+        } catch (Exception e) {
+            log.warn("[MotionDetectorServiceImpl] Failed to load cache from Redis for userId={}: {}",
+                    userId, e.getMessage());
         }
 
-        // 2) rebuild from DB
+        // 2) rebuild from DB (user-scoped, indexed, projected cursor)
         log.info("[MotionDetectorServiceImpl] Reloading cache from DB for userId={}...", userId);
-        List<RecordedMotionDocument> all = motionService.getAllRecordedMotions();
-        Map<String, CachedMotion> userCache = new HashMap<>();
-        int loadedCount = 0;
+        Map<String, CachedMotion> userCache = loadUserMotionsFromDb(userId);
+        int loadedCount = userCache.size();
 
-        for (RecordedMotionDocument doc : all) {
-            if (!userId.equals(doc.getUserId())) continue;
-            try {
-                CachedMotion cm = buildCachedMotion(doc);
-                if (cm != null) {
-                    userCache.put(doc.getRecordId(), cm);
-                    loadedCount++;
-                }
-            } catch (Exception e) {
-                log.warn("[MotionDetectorServiceImpl] Failed to cache record {}: {}", doc.getRecordId(), e.getMessage());
-            }
-        }
+        TemplateStore store = TemplateStore.compile(userCache.values());
+        UserDictionary dictionary = link(userId, store);
+        log.info("[MotionDetectorServiceImpl] Cache loaded for userId={}. {} own + {} shared motions ({} bytes, face={}, hand={}, eyes={}, sign={}).",
+                userId, loadedCount, dictionary.size() - loadedCount, store.memoryBytes(),
+                store.count(DetectionArea.FACE), store.count(DetectionArea.HAND),
+                store.count(DetectionArea.EYES), store.count(DetectionArea.SIGN));
 
-        userCaches.put(userId, userCache);
-        log.info("[MotionDetectorServiceImpl] Cache loaded for userId={}. {} motions cached.", userId, loadedCount);
+        return withVersion(dictionary, saveToRedis(userId, userCache));
+    }
 
+    private static UserDictionary withVersion(UserDictionary dictionary, MotionCacheRedisUtil.Version version) {
+        return version.known() ? dictionary.withVersion(version.epoch(), version.version()) : dictionary;
+    }
+
+    /**
+     * 사용자 템플릿 전체를 Redis 해시로 원자적으로 교체합니다 (recordId 당 필드 하나, float32 바이너리).
+     * 해시를 새로 만들므로 새 epoch 이 발급됩니다.
+     *
+     * @return 교체 후 해시 epoch / 버전, 실패 시 {@link MotionCacheRedisUtil.Version#MISSING} (버전 모름)
+     */
+    private MotionCacheRedisUtil.Version saveToRedis(String userId, Map<String, CachedMotion> userCache) {
         try {
-            String jsonCache = objectMapper.writeValueAsString(userCache);
-            redisUtil.set(redisKey, jsonCache, REDIS_CACHE_TIMEOUT_SECONDS);
-            log.info("[MotionDetectorServiceImpl] Cache saved to Redis for userId={}", userId);
+            Map<String, byte[]> records = new HashMap<>(userCache.size());
+            userCache.forEach((recordId, cm) -> {
+                byte[] value = TemplateCodec.encode(cm);
+                if (value != null) records.put(recordId, value);
+            });
+            MotionCacheRedisUtil.Version version = motionCacheRedisUtil.replace(userId, records, REDIS_CACHE_TIMEOUT_SECONDS);
+            log.info("[MotionDetectorServiceImpl] Cache saved to Redis for userId={} (epoch {}, version {})",
+                    userId, version.epoch(), version.version());
+            return version;
         } catch (Exception e) {
             log.error("[MotionDetectorServiceImpl] Failed to save cache to Redis for userId={}: {}", userId, e.getMessage());
+            return MotionCacheRedisUtil.Version.MISSING;
         }
     }
 
     /**
-     * NEW: Import default template motions into target user if not already present.
-     * Idempotent: skips creating a copy when the user already has the same (phrase, motionType).
+     * 사용자 고유 템플릿을 공유 사전 및 사용자의 tombstone 과 연결합니다.
+     * 골든셋 소유자 계정은 자기 템플릿만 사용합니다 (공유 사전이 곧 자기 템플릿).
      */
-    private int ensureDefaultTemplatesImported(String targetUserId) {
-        if (TEMPLATE_USER_IDS.contains(targetUserId)) return 0;
-
-        List<RecordedMotionDocument> all = motionService.getAllRecordedMotions();
-
-        Set<String> targetKeys = all.stream()
-                .filter(d -> targetUserId.equals(d.getUserId()))
-                .map(d -> key(d.getPhrase(), d.getMotionType()))
-                .collect(Collectors.toSet());
-
-        List<RecordedMotionDocument> templates = all.stream()
-                .filter(d -> TEMPLATE_USER_IDS.contains(d.getUserId()))
-                .collect(Collectors.toList());
-
-        if (templates.isEmpty()) {
-            log.info("[Importer] No template motions found to import for userId={}", targetUserId);
-            return 0;
+    private UserDictionary link(String userId, TemplateStore own) {
+        if (TemplateOwners.isOwner(userId)) {
+            return UserDictionary.of(own, TemplateStore.empty(), Set.of());
         }
+        return UserDictionary.of(own, sharedTemplates(), loadTombstones(userId));
+    }
 
-        List<RecordedMotionDocument> copies = new ArrayList<>();
-        for (RecordedMotionDocument t : templates) {
-            String k = key(t.getPhrase(), t.getMotionType());
-            if (targetKeys.contains(k)) continue;
-
-            RecordedMotionDocument clone = new RecordedMotionDocument();
-            clone.setRecordId(UUID.randomUUID().toString());
-            clone.setUserId(targetUserId);
-            clone.setPhrase(t.getPhrase());
-            clone.setMotionType(t.getMotionType());
-            clone.setDescription(t.getDescription());
-
-            RecordedMotionDocument.MotionDataDocument mdCopy =
-                    objectMapper.convertValue(t.getMotionData(), RecordedMotionDocument.MotionDataDocument.class);
-            clone.setMotionData(mdCopy);
-            copies.add(clone);
+    private Set<String> loadTombstones(String userId) {
+        try {
+            return templateTombstoneRepository.findAllByUserId(userId).stream()
+                    .map(t -> UserDictionary.key(t.getPhrase(), t.getMotionType()))
+                    .collect(Collectors.toSet());
+        } catch (Exception e) {
+            log.warn("[MotionDetectorServiceImpl] Failed to load template tombstones for userId={}: {}", userId, e.getMessage());
+            return Set.of();
         }
+    }
 
-        if (copies.isEmpty()) {
-            log.info("[Importer] All template motions already exist for userId={}; nothing to import.", targetUserId);
-            return 0;
+    /**
+     * 공유 템플릿 사전 (지연 로드, 프로세스당 1회 컴파일).
+     */
+    private TemplateStore sharedTemplates() {
+        TemplateStore shared = sharedTemplates;
+        if (shared != null) return shared;
+        sharedTemplatesLock.lock();
+        try {
+            if (sharedTemplates == null) {
+                sharedTemplates = loadSharedTemplatesFromDb();
+            }
+            return sharedTemplates;
+        } finally {
+            sharedTemplatesLock.unlock();
         }
+    }
 
-        recordedMotionRepository.saveAll(copies);
-        log.info("[Importer] Imported {} template motions into userId={}", copies.size(), targetUserId);
-        return copies.size();
+    @Override
+    public TemplateStore sharedTemplateSnapshot() {
+        return sharedTemplates();
     }
 
-    private String key(String phrase, String motionType) {
-        String p = (phrase == null) ? "" : phrase.trim().toLowerCase();
-        String m = (motionType == null) ? "" : motionType.trim().toLowerCase();
-        return p + "|" + m;
+    private TemplateStore loadSharedTemplatesFromDb() {
+        Map<String, CachedMotion> motions = new LinkedHashMap<>();
+        for (String ownerId : TemplateOwners.IDS) {
+            motions.putAll(loadUserMotionsFromDb(ownerId));
+        }
+        TemplateStore shared = TemplateStore.compile(motions.values());
+        log.info("[MotionDetectorServiceImpl] Shared template dictionary compiled. {} motions ({} bytes).",
+                shared.size(), shared.memoryBytes());
+        return shared;
+    }
+
+    /**
+     * 골든셋이 바뀌면 공유 사전을 다시 컴파일하고, 캐시된 모든 사용자 사전을 새 공유 사전에 다시 연결합니다.
+     * 사용자 고유 템플릿은 다시 읽지 않습니다.
+     */
+    private void refreshSharedTemplates() {
+        TemplateStore shared;
+        sharedTemplatesLock.lock();
+        try {
+            shared = loadSharedTemplatesFromDb();
+            sharedTemplates = shared;
+        } finally {
+            sharedTemplatesLock.unlock();
+        }
+        userCaches.asMap().replaceAll((uid, dictionary) ->
+                TemplateOwners.isOwner(uid) ? dictionary : dictionary.withShared(shared));
     }
 
     /**
      * 모든 사용자의 캐시를 리로드 (관리자 용도)
+     * 캐시가 bounded 이므로 현재 캐시에 올라와 있는 사용자와 골든셋만 다시 컴파일하고, 나머지는 다음 매칭 때 로드됩니다.
      */
     private void reloadAllUserCaches() {
         // For simplicity, reloadAllUserCaches will not use Redis for aggregated cache.
         // It will just reload from DB and update local cache.
         // Individual user caches will be saved to Redis when reloadCache(userId) is called.
         log.info("[MotionDetectorServiceImpl] Reloading all user caches from DB (Redis not used for aggregated cache)...");
-        List<RecordedMotionDocument> all = motionService.getAllRecordedMotions();
         Map<String, Map<String, CachedMotion>> tempCaches = new HashMap<>();
+        Set<String> hotUsers = new HashSet<>(userCaches.asMap().keySet());
 
-        for (RecordedMotionDocument doc : all) {
+        motionService.forEachMotionForMatching(null, doc -> {
             String docUserId = doc.getUserId();
             if (docUserId == null || docUserId.isEmpty()) {
                 log.warn("[MotionDetectorServiceImpl] Skipping record {} with null/empty userId", doc.getRecordId());
-                continue;
+                return;
+            }
+            if (!hotUsers.contains(docUserId) && !TemplateOwners.isOwner(docUserId)) {
+                return;
             }
 
             try {
@@ -218,13 +311,49 @@ public class MotionDetectorServiceImpl implements IMotionDetectorService {
             } catch (Exception e) {
                 log.warn("[MotionDetectorServiceImpl] Failed to cache record {}: {}", doc.getRecordId(), e.getMessage());
             }
+        });
+
+        // 골든셋은 같은 스트림에서 모아 한 번만 컴파일
+        Map<String, CachedMotion> sharedMotions = new LinkedHashMap<>();
+        for (String ownerId : TemplateOwners.IDS) {
+            Map<String, CachedMotion> owned = tempCaches.get(ownerId);
+            if (owned != null) sharedMotions.putAll(owned);
+        }
+        TemplateStore shared = TemplateStore.compile(sharedMotions.values());
+
+        // tombstone 은 다시 컴파일하는 사용자 것만 조회 (골든셋 계정은 공유 사전을 쓰지 않음)
+        Set<String> linkedUsers = new HashSet<>(hotUsers);
+        linkedUsers.removeIf(TemplateOwners::isOwner);
+        Map<String, Set<String>> tombstones = new HashMap<>();
+        if (!linkedUsers.isEmpty()) {
+            for (TemplateTombstoneDocument t : templateTombstoneRepository.findAllByUserIdIn(linkedUsers)) {
+                tombstones.computeIfAbsent(t.getUserId(), k -> new HashSet<>())
+                          .add(UserDictionary.key(t.getPhrase(), t.getMotionType()));
+            }
         }
 
-        userCaches.clear();
-        userCaches.putAll(tempCaches);
-        log.info("[MotionDetectorServiceImpl] Cache loaded for all users. {} users, total {} motions cached.",
-                userCaches.size(),
-                userCaches.values().stream().mapToInt(Map::size).sum());
+        // 새 스냅샷을 모두 옆에서 만든 뒤 교체: 캐시를 비우지 않으므로 리로드 중 매칭이 빈 캐시를 보고 각자 로드하는 일이 없음
+        // (동작이 모두 지워진 hot 사용자도 빈 고유 사전 + 공유 사전으로 교체)
+        Map<String, UserDictionary> compiled = new HashMap<>();
+        for (String uid : hotUsers) tempCaches.putIfAbsent(uid, Map.of());
+        tempCaches.forEach((uid, motions) -> {
+            TemplateStore own = TemplateStore.compile(motions.values());
+            compiled.put(uid, TemplateOwners.isOwner(uid)
+                    ? UserDictionary.of(own, TemplateStore.empty(), Set.of())
+                    : UserDictionary.of(own, shared, tombstones.get(uid)));
+        });
+
+        sharedTemplatesLock.lock();
+        try {
+            sharedTemplates = shared;
+        } finally {
+            sharedTemplatesLock.unlock();
+        }
+        userCaches.putAll(compiled);
+        log.info("[MotionDetectorServiceImpl] Cache reloaded for all cached users. {} users, {} own motions, {} shared motions ({} bytes).",
+                userCaches.estimatedSize(),
+                userCaches.asMap().values().stream().mapToInt(d -> d.own().size()).sum(),
+                shared.size(), shared.memoryBytes());
     }
 
     @Override
@@ -240,120 +369,118 @@ public class MotionDetectorServiceImpl implements IMotionDetectorService {
             return MatchResultDTO.noMatch();
         }
 
-        // 해당 사용자의 캐시 가져오기
-        Map<String, CachedMotion> userCache = userCaches.get(userId);
-
-        // 캐시가 없으면 로드 시도
-        if (userCache == null || userCache.isEmpty()) {
-            log.info("[MotionDetectorServiceImpl] No cache found for userId={}. Loading cache...", userId);
-            reloadCache(userId);
-            userCache = userCaches.get(userId);
+        // 해당 사용자의 캐시 가져오기 (없으면 로드 시도)
+        return matchSequence(liveSequence, detectionArea, userId, getOrLoadUserCache(userId));
+    }
 
-            if (userCache == null || userCache.isEmpty()) {
-                log.warn("[MotionDetectorServiceImpl] No recorded motions found for userId={}", userId);
-                return MatchResultDTO.noMatch();
-            }
+    @Override
+    public MatchResultDTO matchSequence(List<double[]> liveSequence, String detectionArea, String userId,
+                                        UserDictionary userCache) {
+        if (liveSequence == null || liveSequence.isEmpty() || userCache == null || userCache.isEmpty()) {
+            return MatchResultDTO.noMatch();
         }
 
-        double bestScore = Double.POSITIVE_INFINITY;
-        CachedMotion best = null;
-
         log.debug("[MotionDetectorServiceImpl] Matching against {} cached motions for userId={}", userCache.size(), userId);
 
-        // 해당 사용자의 캐시에서만 매칭 수행
-        for (CachedMotion cm : userCache.values()) {
-            if (!matchesArea(cm.motionType, detectionArea)) continue;
-
-            // If cached motion is hand-type, align and normalize the live sequence to cached dimensionality
-            List<double[]> alignedLive = liveSequence;
-            if (cm.motionType != null && cm.motionType.toLowerCase().contains("hand")) {
-                int dims = (cm.sequence != null && cm.sequence.length > 0) ? cm.sequence[0].length : -1;
-                if (dims <= 0) continue;
-                alignedLive = alignAndNormalizeLiveHandSequence(liveSequence, dims);
-            }
-
-            double score = dtwDistance(alignedLive, cm.sequence);
-            if (score < bestScore) {
-                bestScore = score;
-                best = cm;
-            }
+        // motion_type 이 detectionArea 를 포함하는 템플릿만 매칭 (기존 규칙, 버킷은 저장소에 메모이즈):
+        // 사용자 고유 템플릿 먼저, 이어서 가려지지 않은 공유 템플릿 (대형 사전은 ForkJoinPool 에서 병렬 스캔)
+        TemplateStore own = userCache.own();
+        TemplateStore shared = userCache.shared();
+        int[] ownBucket = userCache.ownBucket(detectionArea);
+        int[] sharedBucket = userCache.sharedBucket(detectionArea);
+        // hand 템플릿용 라이브 시퀀스는 차원 수별로 한 번만 정렬/정규화 (풀에서 빌린 버퍼 재사용)
+        TemplateScanner.Result ownResult;
+        TemplateScanner.Result sharedResult;
+        try (LiveSequencePreprocessor live = LiveSequencePreprocessor.prepare(liveSequence)) {
+            live.include(own, ownBucket).include(shared, sharedBucket);
+            ownResult = templateScanner.scan(own, ownBucket, t -> live.forTemplate(own, t));
+            // 공유 템플릿은 고유 템플릿의 최고 점수보다 엄격히 좋을 때만 채택 (동점이면 고유 템플릿 우선)
+            sharedResult = templateScanner.scan(shared, sharedBucket, t -> live.forTemplate(shared, t), ownResult.score());
         }
 
-        if (best == null) {
+        TemplateStore bestStore = sharedResult.found() ? shared : own;
+        TemplateScanner.Result result = sharedResult.found() ? sharedResult : ownResult;
+        if (!result.found()) {
             log.debug("[MotionDetectorServiceImpl] No match found for userId={}, detectionArea={}", userId, detectionArea);
             return MatchResultDTO.noMatch();
         }
 
-        log.info("[MotionDetectorServiceImpl] Match found for userId={}. recordId={}, phrase={}, score={}",
-                userId, best.recordId, best.phrase, bestScore);
+        int best = result.index();
+        double bestScore = result.score();
+        String bestRecordId = bestStore.recordId(best);
+        String bestPhrase = bestStore.phrase(best);
+        String bestMotionType = bestStore.motionType(best);
 
-        // Check for dangerous phrases and save alert
-        if (DANGEROUS_PHRASES.contains(best.phrase)) {
-            log.warn("[MotionDetectorServiceImpl] Dangerous phrase detected for userId={}: {}", userId, best.phrase);
-            // TODO: userName을 실제 사용자 이름으로 바꾸는 로직 필요 (현재는 userId를 임시로 사용)
-            DangerousPhraseAlertDocument alert = new DangerousPhraseAlertDocument(userId, userId, best.phrase, LocalDateTime.now());
-            dangerousPhraseAlertRepository.save(alert);
-            log.info("[MotionDetectorServiceImpl] Dangerous phrase alert saved to MongoDB for userId={}", userId);
+        log.info("[MotionDetectorServiceImpl] Match found for userId={}. recordId={}, phrase={}, score={}",
+                userId, bestRecordId, bestPhrase, bestScore);
 
-            // Broadcast the alert to connected clients
-            alertWebSocketHandler.broadcast(alert);
-        }
+        recordDetection(userId, bestPhrase);
 
-        // Save all detected phrases to history
-        try {
-            log.info("[MotionDetectorServiceImpl] Saving phrase to history for userId={}: {}", userId, best.phrase);
-            PhraseHistoryDocument historyDoc = new PhraseHistoryDocument();
-            historyDoc.setUserId(userId);
-            historyDoc.setPhrase(best.phrase);
-            historyDoc.setDetectedTime(LocalDateTime.now());
-            phraseHistoryRepository.save(historyDoc);
-            log.info("[MotionDetectorServiceImpl] Phrase history saved to MongoDB for userId={}", userId);
-
-            // 2) ✅ LangGraph용 최근 phrase 목록을 Redis에 JSON 배열로 저장
-            try {
-                String redisKey = "phrases:" + userId;
-
-                // 기존 JSON 배열 불러오기
-                List<String> phrases = new ArrayList<>();
-                String existingJson = redisUtil.get(redisKey);
-                if (existingJson != null && !existingJson.isBlank()) {
-                    try {
-                        phrases = objectMapper.readValue(
-                                existingJson,
-                                new TypeReference<List<String>>() {}
-                        );
-                    } catch (Exception ex) {
-                        log.warn("[MotionDetectorServiceImpl] Failed to parse existing phrases from Redis for userId={}: {}",
-                                userId, ex.getMessage());
-                        phrases = new ArrayList<>();
-                    }
-                }
+        return new MatchResultDTO(bestRecordId, bestPhrase, bestMotionType, bestScore, userCache.version());
+    }
 
-                // 새 phrase 추가
-                phrases.add(best.phrase);
+    @Override
+    public CompletableFuture<UserDictionary> preloadUserDictionary(String userId) {
+        if (userId == null || userId.isEmpty()) return CompletableFuture.completedFuture(null);
+        UserDictionary cached = userCaches.getIfPresent(userId);
+        if (cached != null && !cached.isEmpty()) return CompletableFuture.completedFuture(cached);
+        // single-flight 이므로 같은 사용자의 동시 preload 는 하나의 로드를 함께 기다림
+        return CompletableFuture.supplyAsync(() -> getOrLoadUserCache(userId), dictionaryLoadExecutor);
+    }
 
-                // 최근 N개만 유지 (예: 20개)
-                int MAX = 20;
-                if (phrases.size() > MAX) {
-                    phrases = phrases.subList(phrases.size() - MAX, phrases.size());
-                }
+    /**
+     * 사용자의 컴파일된 캐시를 반환합니다. 없으면 로드를 시도하고, 그래도 비어 있으면 null.
+     */
+    private UserDictionary getOrLoadUserCache(String userId) {
+        UserDictionary userCache = userCaches.getIfPresent(userId);
 
-                // 다시 JSON으로 저장 (TTL 2시간)
-                String json = objectMapper.writeValueAsString(phrases);
-                redisUtil.set(redisKey, json, 2 * 60 * 60);
-                log.info("[MotionDetectorServiceImpl] Updated recent phrases in Redis for userId={}, size={}",
-                        userId, phrases.size());
+        // 캐시가 없으면 로드 시도
+        if (userCache == null || userCache.isEmpty()) {
+            log.info("[MotionDetectorServiceImpl] No cache found for userId={}. Loading cache...", userId);
+            userCache = loadSingleFlight(userId, false);
 
-            } catch (Exception ex) {
-                log.warn("[MotionDetectorServiceImpl] Failed to update recent phrases in Redis for userId={}: {}",
-                        userId, ex.getMessage());
+            if (userCache == null || userCache.isEmpty()) {
+                log.warn("[MotionDetectorServiceImpl] No recorded motions found for userId={}", userId);
+                return null;
             }
+        }
+        return userCache;
+    }
 
-        } catch (Exception e) {
-            log.error("[MotionDetectorServiceImpl] Failed to save phrase history for userId={}: {}", userId, e.getMessage());
+    /**
+     * 매칭 후처리: 위험 문구 알림은 즉시 broadcast, phrase history / 최근 phrase 는 write-behind 로 배치 저장.
+     */
+    private void recordDetection(String userId, String phrase) {
+        detectionRecordService.record(userId, phrase);
+    }
+
+    @Override
+    public StreamingSubsequenceMatcher openStreamingMatcher(String userId, String detectionArea) {
+        if (userId == null || userId.isEmpty()) {
+            log.warn("[MotionDetectorServiceImpl] No userId provided for streaming matcher");
+            return null;
+        }
+        UserDictionary dictionary = getOrLoadUserCache(userId);
+        if (dictionary == null) return null;
+
+        StreamingSubsequenceMatcher matcher = StreamingSubsequenceMatcher.of(
+                dictionary, detectionArea, streamingThreshold, streamingMinLengthRatio);
+        if (matcher.templateCount() == 0) {
+            log.info("[MotionDetectorServiceImpl] No templates for streaming: userId={}, detectionArea={}", userId, detectionArea);
+            return null;
         }
+        log.info("[MotionDetectorServiceImpl] Streaming matcher opened for userId={}, detectionArea={}, templates={}",
+                userId, detectionArea, matcher.templateCount());
+        return matcher;
+    }
 
-        return new MatchResultDTO(best.recordId, best.phrase, best.motionType, bestScore);
+    @Override
+    public MatchResultDTO acceptStreamingMatch(String userId, StreamingSubsequenceMatcher.Match match) {
+        if (match == null) return MatchResultDTO.noMatch();
+        log.info("[MotionDetectorServiceImpl] Streaming match for userId={}. recordId={}, phrase={}, score={}, frames=[{}, {}]",
+                userId, match.recordId(), match.phrase(), match.score(), match.startFrame(), match.endFrame());
+        recordDetection(userId, match.phrase());
+        return new MatchResultDTO(match.recordId(), match.phrase(), match.motionType(), match.score(), match.dictionaryVersion());
     }
 
     @Override
@@ -371,25 +498,211 @@ public class MotionDetectorServiceImpl implements IMotionDetectorService {
             return;
         }
 
-        // 1) 우선 로컬 캐시와 Redis 캐시 둘 다 날리기
-        String redisKey = REDIS_CACHE_PREFIX + userId;
+        // 로컬 사전과 Redis 해시는 지우지 않음: DB 에서 새 스냅샷을 옆에서 만든 뒤 Redis 해시(원자적 replace)와 로컬 사전을 교체하므로
+        // 리로드 중에도 매칭은 기존 스냅샷으로 계속 진행됨
+        // stale-while-refresh: 호출자도 기다리지 않고 백그라운드에서 교체
+        boolean serveStale = serveStaleWhileRefresh && userCaches.getIfPresent(userId) != null;
+
+        // DB에서 강제로 다시 로드, 골든셋 계정이면 공유 사전도 다시 컴파일해 모든 사용자에게 반영
+        if (serveStale) {
+            CompletableFuture.runAsync(() -> refreshFromDb(userId), cacheRefreshExecutor)
+                    .exceptionally(e -> {
+                        log.error("[MotionDetectorServiceImpl] Background cache refresh failed for userId={}: {}", userId, e.getMessage());
+                        return null;
+                    });
+            return;
+        }
+        refreshFromDb(userId);
+    }
+
+    private void refreshFromDb(String userId) {
+        UserDictionary dictionary = loadSingleFlight(userId, true);
+        if (TemplateOwners.isOwner(userId)) {
+            refreshSharedTemplates();
+        }
+        // 다른 레플리카는 로컬 사본을 버리고 다음 매칭 때 새 Redis 해시에서 로드
+        publishCacheEvent(new MotionCacheEventDTO(MotionCacheEventDTO.Op.RELOAD, userId, List.of(),
+                dictionary.epoch(), dictionary.version(), null, null, instanceId));
+    }
+
+    @Override
+    public void putTemplate(String userId, RecordedMotionDocument motion) {
+        if (userId == null || userId.isEmpty() || motion == null || motion.getRecordId() == null) return;
+        CachedMotion cm = buildCachedMotion(motion);
+        if (cm == null) {
+            // 프레임이 없는 동작은 매칭 대상이 아니므로 기존 항목만 제거
+            patchTemplates(userId, List.of(motion.getRecordId()), null);
+            return;
+        }
+        patchTemplates(userId, List.of(), cm);
+    }
+
+    @Override
+    public void removeTemplates(String userId, Collection<String> recordIds) {
+        if (userId == null || userId.isEmpty() || recordIds == null || recordIds.isEmpty()) return;
+        patchTemplates(userId, recordIds, null);
+    }
+
+    @Override
+    public void hideSharedTemplate(String userId, String phrase, String motionType) {
+        if (userId == null || userId.isEmpty()) return;
+        userCaches.asMap().computeIfPresent(userId, (uid, dictionary) -> dictionary.withTombstone(phrase, motionType));
+        log.info("[MotionDetectorServiceImpl] Shared template hidden in cache for userId={}, phrase={}, motionType={}",
+                userId, phrase, motionType);
+        // tombstone 은 Redis 해시 밖(Mongo)에 있으므로 버전 없이 전파
+        publishCacheEvent(new MotionCacheEventDTO(MotionCacheEventDTO.Op.HIDE, userId, List.of(),
+                0L, 0L, phrase, motionType, instanceId));
+    }
+
+    /**
+     * 컴파일된 사전과 Redis 표현을 제자리에서 패치합니다 (사전 전체 재로드 없음).
+     * 로컬에 캐시되지 않은 사용자는 Redis 만 패치되고, 다음 매칭 때 패치된 Redis 에서 로드됩니다.
+     */
+    private void patchTemplates(String userId, Collection<String> removeIds, CachedMotion add) {
+        // Redis 먼저 패치해 새 해시 epoch / 버전을 얻고, 로컬 사전에 같은 버전을 기록 (다른 레플리카가 순서/누락 판단에 사용)
+        // 로컬 사본이 다른 epoch 이거나 중간 버전을 놓쳤으면 패치하지 않고 내려, 다음 매칭 때 Redis 에서 다시 로드
+        MotionCacheRedisUtil.Version version = patchRedisCache(userId, removeIds, add);
+        UserDictionary patched = userCaches.asMap().computeIfPresent(userId, (uid, dictionary) -> version.known()
+                ? dictionary.applyPatch(version.epoch(), version.version(), removeIds, add)
+                : dictionary.withOwn(dictionary.own().patch(removeIds, add)));
+        if (patched == null) {
+            dropAfterInFlightLoads(userId);
+        }
+
+        // 골든셋 계정이면 공유 사전도 같은 패치를 적용해 모든 사용자에게 반영
+        if (TemplateOwners.isOwner(userId)) {
+            patchSharedTemplates(removeIds, add);
+        }
+
+        log.info("[MotionDetectorServiceImpl] Cache patched for userId={}: removed={}, added={}, cached={}, epoch={}, version={}",
+                userId, removeIds.size(), add == null ? null : add.getRecordId(), patched == null ? "no" : patched.size(),
+                version.epoch(), version.version());
+
+        MotionCacheEventDTO event = (add != null)
+                ? new MotionCacheEventDTO(MotionCacheEventDTO.Op.PUT, userId, List.of(add.getRecordId()),
+                        version.epoch(), version.version(), null, null, instanceId)
+                : new MotionCacheEventDTO(MotionCacheEventDTO.Op.REMOVE, userId, List.copyOf(removeIds),
+                        version.epoch(), version.version(), null, null, instanceId);
+        publishCacheEvent(event);
+    }
+
+    /**
+     * 로컬에 없는 사용자를 패치하는 동안 로드가 진행 중이면, 그 로드는 패치 이전 스냅샷을 게시할 수 있으므로 완료 직후 내립니다.
+     */
+    private void dropAfterInFlightLoads(String userId) {
+        inFlightLoads.forEach((key, future) -> {
+            if (key.userId().equals(userId)) {
+                future.whenComplete((dictionary, e) -> userCaches.asMap().remove(userId, dictionary));
+            }
+        });
+    }
+
+    private void patchSharedTemplates(Collection<String> removeIds, CachedMotion add) {
+        TemplateStore shared;
+        sharedTemplatesLock.lock();
         try {
-            userCaches.remove(userId);
-            redisUtil.delete(redisKey);
-            log.info("[MotionDetectorServiceImpl] Cleared local+Redis cache for userId={}", userId);
+            if (sharedTemplates == null) return; // 아직 로드 전이면 첫 로드 때 DB 에서 반영됨
+            shared = sharedTemplates.patch(removeIds, add);
+            sharedTemplates = shared;
+        } finally {
+            sharedTemplatesLock.unlock();
+        }
+        userCaches.asMap().replaceAll((uid, dictionary) ->
+                TemplateOwners.isOwner(uid) ? dictionary : dictionary.withShared(shared));
+    }
+
+    /**
+     * 바뀐 필드만 HDEL/HSET (해시가 없으면 아무것도 쓰지 않고, 다음 로드 때 DB 에서 생성).
+     *
+     * @return 패치 후 해시 epoch / 버전, 해시가 없거나 실패했으면 {@link MotionCacheRedisUtil.Version#MISSING}
+     */
+    private MotionCacheRedisUtil.Version patchRedisCache(String userId, Collection<String> removeIds, CachedMotion add) {
+        try {
+            byte[] value = (add == null) ? null : TemplateCodec.encode(add);
+            Map<String, byte[]> put = (value == null) ? Map.of() : Map.of(add.getRecordId(), value);
+            MotionCacheRedisUtil.Version version = motionCacheRedisUtil.patch(userId, removeIds, put, REDIS_CACHE_TIMEOUT_SECONDS);
+            log.debug("[MotionDetectorServiceImpl] Redis cache patched for userId={} (epoch {}, version {})",
+                    userId, version.epoch(), version.version());
+            return version;
         } catch (Exception e) {
-            log.warn("[MotionDetectorServiceImpl] Failed to clear cache for userId={}: {}", userId, e.getMessage());
+            // 패치 실패 시 Redis 사본을 버려 다음 로드가 DB 에서 다시 만들도록 함
+            log.warn("[MotionDetectorServiceImpl] Failed to patch Redis cache for userId={}: {}", userId, e.getMessage());
+            motionCacheRedisUtil.delete(userId);
+            return MotionCacheRedisUtil.Version.MISSING;
         }
+    }
 
-        // 2) 그리고 DB에서 강제로 다시 로드
-        forceReloadFromDb(userId);
+    /**
+     * 다른 레플리카에 캐시 변경을 알립니다. 발행 실패는 로그만 남기며, 해당 레플리카는 idle 만료/다음 로드 때 수렴합니다.
+     */
+    private void publishCacheEvent(MotionCacheEventDTO event) {
+        try {
+            motionCacheRedisUtil.publish(objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            log.warn("[MotionDetectorServiceImpl] Failed to publish cache event {} for userId={}: {}",
+                    event.getOp(), event.getUserId(), e.getMessage());
+        }
+    }
 
+    @Override
+    public void applyCacheEvent(MotionCacheEventDTO event) {
+        if (event == null || event.getOp() == null || event.getUserId() == null) return;
+        if (instanceId.equals(event.getOrigin())) return; // 이미 로컬에 반영됨
+
+        String userId = event.getUserId();
+        boolean owner = TemplateOwners.isOwner(userId);
+        switch (event.getOp()) {
+            case HIDE -> userCaches.asMap().computeIfPresent(userId,
+                    (uid, dictionary) -> dictionary.withTombstone(event.getPhrase(), event.getMotionType()));
+            case RELOAD -> {
+                userCaches.invalidate(userId);
+                if (owner) refreshSharedTemplates();
+            }
+            case PUT, REMOVE -> applyRemotePatch(event, owner);
+        }
+        log.debug("[MotionDetectorServiceImpl] Applied remote cache event {} for userId={} (epoch {}, version {}, origin {})",
+                event.getOp(), userId, event.getEpoch(), event.getVersion(), event.getOrigin());
     }
 
-    // simple matching rule: motionType contains detectionArea (case-insensitive)
-    private boolean matchesArea(String motionType, String detectionArea) {
-        if (motionType == null || detectionArea == null) return false;
-        return motionType.toLowerCase().contains(detectionArea.toLowerCase());
+    /**
+     * 원격 패치를 로컬 사전에 적용합니다. 추가된 템플릿은 Redis 해시에서 해당 필드만 읽습니다.
+     * 로컬 사본이 이벤트와 다른 해시 epoch 이거나 (해시 만료 후 재생성) 이벤트 직전 버전이 아니면 (이벤트 누락, 버전 모름)
+     * 패치하지 않고 사전을 내려 다음 매칭 때 다시 로드합니다 ({@link UserDictionary#applyPatch}).
+     */
+    private void applyRemotePatch(MotionCacheEventDTO event, boolean owner) {
+        String userId = event.getUserId();
+        List<String> recordIds = (event.getRecordIds() == null) ? List.of() : event.getRecordIds();
+        long epoch = event.getEpoch();
+        long version = event.getVersion();
+
+        CachedMotion add = null;
+        Collection<String> removeIds = List.of();
+        boolean resolved = epoch != 0 && version > 0;
+        if (resolved && event.getOp() == MotionCacheEventDTO.Op.PUT) {
+            try {
+                byte[] value = recordIds.isEmpty() ? null : motionCacheRedisUtil.get(userId, recordIds.get(0));
+                add = (value == null) ? null : TemplateCodec.decode(recordIds.get(0), value);
+            } catch (Exception e) {
+                log.warn("[MotionDetectorServiceImpl] Failed to read template {} from Redis for userId={}: {}",
+                        recordIds.get(0), userId, e.getMessage());
+            }
+            resolved = add != null;
+        } else {
+            removeIds = recordIds;
+        }
+
+        if (!resolved) {
+            // Redis 에 반영되지 않은 변경: 로컬 사본을 버림 (골든셋이면 공유 사전을 DB 에서 다시 컴파일)
+            userCaches.invalidate(userId);
+            if (owner) refreshSharedTemplates();
+            return;
+        }
+
+        CachedMotion added = add;
+        Collection<String> removed = removeIds;
+        userCaches.asMap().computeIfPresent(userId,
+                (uid, dictionary) -> dictionary.applyPatch(epoch, version, removed, added));
+        if (owner) patchSharedTemplates(removed, added);
     }
 
     private CachedMotion buildCachedMotion(RecordedMotionDocument doc) {
@@ -469,7 +782,7 @@ public class MotionDetectorServiceImpl implements IMotionDetectorService {
             }
 
             // Normalize cached hand sequence per-frame (center & scale) to improve invariance
-            List<double[]> normalized = normalizeHandSequence(seq, pointCount);
+            List<double[]> normalized = HandFeatureNormalizer.normalizeHandSequence(seq, pointCount);
             return new CachedMotion(doc.getRecordId(), doc.getPhrase(), motionType, normalized.toArray(new double[0][]));
         }
 
@@ -479,177 +792,42 @@ public class MotionDetectorServiceImpl implements IMotionDetectorService {
     /**
      * Dynamic Time Warping distance between two sequences of feature vectors.
      * Returns a normalized distance (total cost divided by path length).
+     * Delegates to the configured {@link DtwEngine} without pruning.
      */
     public double dtwDistance(List<double[]> a, double[][] b) {
-        if (a == null || a.isEmpty() || b == null || b.length == 0) return Double.POSITIVE_INFINITY;
-        int n = a.size();
-        int m = b.length;
-        double[][] dp = new double[n + 1][m + 1];
-        for (int i = 0; i <= n; i++) Arrays.fill(dp[i], Double.POSITIVE_INFINITY);
-        dp[0][0] = 0.0;
-
-        for (int i = 1; i <= n; i++) {
-            double[] ai = a.get(i - 1);
-            for (int j = 1; j <= m; j++) {
-                double[] bj = b[j - 1];
-                double cost = euclidean(ai, bj);
-                double minPrev = Math.min(dp[i - 1][j], Math.min(dp[i][j - 1], dp[i - 1][j - 1]));
-                dp[i][j] = cost + minPrev;
-            }
-        }
-
-        double totalCost = dp[n][m];
-        // simple normalization by (n+m)
-        double norm = (n + m);
-        return totalCost / Math.max(1.0, norm);
-    }
-
-    private double euclidean(double[] x, double[] y) {
-        if (x == null || y == null) return Double.POSITIVE_INFINITY;
-        int len = Math.min(x.length, y.length);
-        double sum = 0.0;
-        for (int i = 0; i < len; i++) {
-            double d = x[i] - y[i];
-            sum += d * d;
-        }
-        // account for length difference as penalty
-        if (x.length != y.length) {
-            int diff = Math.abs(x.length - y.length);
-            sum += diff; // small penalty
-        }
-        return Math.sqrt(sum);
-    }
-
-    // --- new helpers for hand normalization & alignment ---
-
-    // Normalize a cached hand sequence per-frame: center each hand block and scale to unit magnitude
-    private List<double[]> normalizeHandSequence(List<double[]> seq, int pointCount) {
-        if (seq == null) return Collections.emptyList();
-        List<double[]> out = new ArrayList<>(seq.size());
-        int dims = pointCount * 3 * 2;
-        for (double[] frame : seq) {
-            double[] f = padOrTrim(frame, dims);
-            normalizeHandFrameInplace(f, pointCount);
-            out.add(f);
-        }
-        return out;
-    }
-
-    // Align incoming live sequence frames to expected dims and normalize similarly
-    private List<double[]> alignAndNormalizeLiveHandSequence(List<double[]> live, int expectedDims) {
-        if (live == null) return Collections.emptyList();
-        // expectedDims should be divisible by 6 (pointCount*3*2)
-        int pointCount = (expectedDims / 3) / 2;
-        List<double[]> out = new ArrayList<>(live.size());
-        for (double[] raw : live) {
-            double[] f = padOrTrim(raw, expectedDims);
-            normalizeHandFrameInplace(f, pointCount);
-            out.add(f);
-        }
-        return out;
-    }
-
-    // Ensure frame is exactly 'dims' long by padding zeros or truncating
-    private double[] padOrTrim(double[] frame, int dims) {
-        if (frame == null) return new double[dims];
-        if (frame.length == dims) return Arrays.copyOf(frame, frame.length);
-        double[] out = new double[dims];
-        int copy = Math.min(dims, frame.length);
-        System.arraycopy(frame, 0, out, 0, copy);
-        if (copy < dims) Arrays.fill(out, copy, dims, 0.0);
-        return out;
-    }
-
-    // Center each hand block (right and left) and scale by RMS of non-zero coords to reduce scale variance
-    private void normalizeHandFrameInplace(double[] f, int pointCount) {
-        if (f == null) return;
-        int handBlock = pointCount * 3; // coords per hand
-        // normalize right hand block
-        normalizeHandBlock(f, 0, pointCount);
-        // normalize left hand block
-        normalizeHandBlock(f, handBlock, pointCount);
-    }
-
-    private void normalizeHandBlock(double[] f, int startIdx, int pointCount) {
-        // compute centroid of present points
-        double cx = 0, cy = 0, cz = 0; int count = 0;
-        for (int p = 0; p < pointCount; p++) {
-            int base = startIdx + p * 3;
-            if (base + 2 >= f.length) break;
-            double x = f[base], y = f[base + 1], z = f[base + 2];
-            if (!isZeroPoint(x, y, z)) {
-                cx += x; cy += y; cz += z; count++;
-            }
-        }
-        if (count == 0) return; // nothing to normalize
-        cx /= count; cy /= count; cz /= count;
-        // subtract centroid
-        double energy = 0.0;
-        for (int p = 0; p < pointCount; p++) {
-            int base = startIdx + p * 3;
-            if (base + 2 >= f.length) break;
-            double x = f[base], y = f[base + 1], z = f[base + 2];
-            if (!isZeroPoint(x, y, z)) {
-                double nx = x - cx; double ny = y - cy; double nz = z - cz;
-                f[base] = nx; f[base + 1] = ny; f[base + 2] = nz;
-                energy += nx*nx + ny*ny + nz*nz;
-            } else {
-                f[base] = 0; f[base + 1] = 0; f[base + 2] = 0;
-            }
-        }
-        double scale = Math.sqrt(energy / Math.max(1, count));
-        if (scale < 1e-6) scale = 1.0;
-        for (int p = 0; p < pointCount; p++) {
-            int base = startIdx + p * 3;
-            if (base + 2 >= f.length) break;
-            f[base] /= scale; f[base + 1] /= scale; f[base + 2] /= scale;
-        }
-    }
-
-    private boolean isZeroPoint(double x, double y, double z) {
-        return Math.abs(x) < 1e-8 && Math.abs(y) < 1e-8 && Math.abs(z) < 1e-8;
+        return dtwEngine.distance(a, b, Double.POSITIVE_INFINITY);
     }
 
-    @NoArgsConstructor
-    @Data
-    @AllArgsConstructor
-    public static class CachedMotion {
-        private String recordId;
-        private String phrase;
-        private String motionType;
-        private double[][] sequence; // precomputed per-frame feature vectors
-    }
-
-    private void forceReloadFromDb(String userId) {
-        log.info("[MotionDetectorServiceImpl] Force reloading cache from DB for userId={}...", userId);
-
-        List<RecordedMotionDocument> all = motionService.getAllRecordedMotions();
+    /**
+     * 한 사용자의 동작만 인덱스 커서로 스트리밍하면서 템플릿을 점진적으로 만듭니다.
+     * 문서 전체 목록을 메모리에 올리지 않으므로 로드 비용이 해당 사용자 데이터 크기에만 비례합니다.
+     */
+    private Map<String, CachedMotion> loadUserMotionsFromDb(String userId) {
         Map<String, CachedMotion> userCache = new HashMap<>();
-        int loadedCount = 0;
-
-        for (RecordedMotionDocument doc : all) {
-            if (!userId.equals(doc.getUserId())) continue;
+        motionService.forEachMotionForMatching(userId, doc -> {
             try {
                 CachedMotion cm = buildCachedMotion(doc);
                 if (cm != null) {
                     userCache.put(doc.getRecordId(), cm);
-                    loadedCount++;
                 }
             } catch (Exception e) {
                 log.warn("[MotionDetectorServiceImpl] Failed to cache record {}: {}", doc.getRecordId(), e.getMessage());
             }
-        }
+        });
+        return userCache;
+    }
 
-        userCaches.put(userId, userCache);
-        log.info("[MotionDetectorServiceImpl] Force cache loaded for userId={}. {} motions cached.", userId, loadedCount);
+    private UserDictionary forceReloadFromDb(String userId) {
+        log.info("[MotionDetectorServiceImpl] Force reloading cache from DB for userId={}...", userId);
 
-        try {
-            String redisKey = REDIS_CACHE_PREFIX + userId;
-            String jsonCache = objectMapper.writeValueAsString(userCache);
-            redisUtil.set(redisKey, jsonCache, REDIS_CACHE_TIMEOUT_SECONDS);
-            log.info("[MotionDetectorServiceImpl] Force cache saved to Redis for userId={}", userId);
-        } catch (Exception e) {
-            log.error("[MotionDetectorServiceImpl] Failed to save forced cache to Redis for userId={}: {}", userId, e.getMessage());
-        }
+        Map<String, CachedMotion> userCache = loadUserMotionsFromDb(userId);
+        int loadedCount = userCache.size();
+
+        TemplateStore store = TemplateStore.compile(userCache.values());
+        UserDictionary dictionary = link(userId, store);
+        log.info("[MotionDetectorServiceImpl] Force cache loaded for userId={}. {} motions cached ({} bytes).",
+                userId, loadedCount, store.memoryBytes());
+
+        return withVersion(dictionary, saveToRedis(userId, userCache));
     }
 }
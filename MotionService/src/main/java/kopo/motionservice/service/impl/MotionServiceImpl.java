@@ -15,6 +15,11 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
@@ -25,7 +30,9 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 @Slf4j
@@ -34,6 +41,10 @@ import java.util.stream.Collectors;
 public class MotionServiceImpl implements IMotionService {
 
     private final RecordedMotionRepository recordedMotionRepository;
+    private final MongoTemplate mongoTemplate;
+
+    // 매칭 캐시 로딩용 복합 인덱스 (user_id, motion_type), ensureMatchingIndex() 에서만 생성
+    private static final String USER_MOTION_TYPE_INDEX = "user_id_motion_type";
 
     @Value("${cuecodemotion.url}")
     private String cuecodeMotionBaseUrl;
@@ -43,11 +54,24 @@ public class MotionServiceImpl implements IMotionService {
     @PostConstruct
     public void init() {
         this.webClient = WebClient.builder().baseUrl(this.cuecodeMotionBaseUrl).build();
+        ensureMatchingIndex();
+    }
+
+    private void ensureMatchingIndex() {
+        try {
+            mongoTemplate.indexOps(RecordedMotionDocument.class).ensureIndex(new Index()
+                    .on("user_id", Sort.Direction.ASC)
+                    .on("motion_type", Sort.Direction.ASC)
+                    .named(USER_MOTION_TYPE_INDEX));
+            log.info("[MotionService] Ensured index {} on RECORDED_MOTIONS", USER_MOTION_TYPE_INDEX);
+        } catch (Exception e) {
+            log.warn("[MotionService] Failed to ensure index {}: {}", USER_MOTION_TYPE_INDEX, e.getMessage());
+        }
     }
 
 
     @Override
-    public void saveRecordedMotion(MotionRecordRequestDTO requestDTO) {
+    public RecordedMotionDocument saveRecordedMotion(MotionRecordRequestDTO requestDTO) {
         log.info("[MotionService] Manual Mapping - Saving recorded motion for phrase: {}", requestDTO.getPhrase());
 
         String userId = Optional.ofNullable(extractUserIdFromJwt()).orElse("user123");
@@ -85,9 +109,10 @@ public class MotionServiceImpl implements IMotionService {
                 .description(requestDTO.getDescription())
                 .build();
 
-        recordedMotionRepository.save(document);
+        RecordedMotionDocument saved = recordedMotionRepository.save(document);
 
-        log.info("[MotionService] Motion saved successfully! recordId: {} userId: {}", document.getRecordId(), document.getUserId());
+        log.info("[MotionService] Motion saved successfully! recordId: {} userId: {}", saved.getRecordId(), saved.getUserId());
+        return saved;
     }
 
     @Override
@@ -255,6 +280,33 @@ public class MotionServiceImpl implements IMotionService {
         return recordedMotionRepository.findAll();
     }
 
+    @Override
+    public int forEachMotionForMatching(String userId, Consumer<RecordedMotionDocument> consumer) {
+        Query query = (userId == null)
+                ? new Query()
+                : new Query(Criteria.where("userId").is(userId));
+        // buildCachedMotion 에 필요한 필드만 (description, created_at, eye_landmarks 제외)
+        query.fields()
+                .include("userId")
+                .include("phrase")
+                .include("motionType")
+                .include("motionData.faceBlendshapes")
+                .include("motionData.handLandmarks");
+        // 인덱스 힌트는 주지 않음: ensureMatchingIndex() 가 실패했으면 힌트가 모든 로드를 "bad hint" 로 실패시키므로
+        // user_id 조건만으로 (user_id, motion_type) 인덱스를 고르는 쿼리 플래너에 맡깁니다.
+
+        int count = 0;
+        try (Stream<RecordedMotionDocument> cursor = mongoTemplate.stream(query, RecordedMotionDocument.class)) {
+            Iterator<RecordedMotionDocument> it = cursor.iterator();
+            while (it.hasNext()) {
+                consumer.accept(it.next());
+                count++;
+            }
+        }
+        log.info("[MotionService] Streamed {} recorded motions for matching (userId={}).", count, userId);
+        return count;
+    }
+
     @Data
     public static class SentenceRequest {
         private final String user_id;
@@ -1,6 +1,11 @@
 package kopo.motionservice.service.impl;
 
 import kopo.motionservice.dto.RecordedMotionDTO;
+import kopo.motionservice.matching.TemplateOwners;
+import kopo.motionservice.matching.TemplateStore;
+import kopo.motionservice.matching.UserDictionary;
+import kopo.motionservice.repository.document.TemplateTombstoneDocument;
+import kopo.motionservice.service.IMotionDetectorService;
 import kopo.motionservice.service.IRecordedMotionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,10 +13,13 @@ import org.bson.Document;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -20,8 +28,16 @@ import java.util.stream.Collectors;
 public class RecordedMotionServiceImpl implements IRecordedMotionService {
 
     private final MongoTemplate mongoTemplate;
+    // 삭제 시 매칭 캐시(로컬 + Redis)를 recordId 단위로 패치
+    private final IMotionDetectorService motionDetectorService;
     private static final String COLLECTION_NAME = "RECORDED_MOTIONS";
 
+    // 공유 템플릿 목록 (id, phrase, motion_type, description): 공유 사전 스냅샷이 바뀔 때만 다시 조회
+    private volatile SharedListing sharedListing;
+
+    private record SharedListing(TemplateStore snapshot, List<Document> docs) {
+    }
+
     @Override
     public List<RecordedMotionDTO> getRecordedMotionsByUserId(String userId) {
         try {
@@ -46,7 +62,9 @@ public class RecordedMotionServiceImpl implements IRecordedMotionService {
                 log.debug("[RecordedMotionServiceImpl] Failed to print query/fields object: {}", ex.getMessage());
             }
 
-            List<Document> docs = mongoTemplate.find(query, Document.class, COLLECTION_NAME);
+            List<Document> docs = new java.util.ArrayList<>(mongoTemplate.find(query, Document.class, COLLECTION_NAME));
+            // 공유(골든셋) 템플릿은 복제되지 않으므로, 사용자가 덮어쓰거나 삭제하지 않은 것만 목록에 더함
+            docs.addAll(findVisibleSharedTemplates(userId, docs));
 
             log.info("[RecordedMotionServiceImpl] Retrieved {} documents for userId: {}", docs.size(), userId);
             if (!docs.isEmpty()) {
@@ -56,23 +74,12 @@ public class RecordedMotionServiceImpl implements IRecordedMotionService {
 
             // 중복 제거: phrase + motion_type 조합을 키로 사용하여 첫 번째 항목만 반환
             Map<String, RecordedMotionDTO> uniqueMotions = docs.stream()
-                    .map(d -> {
-                        // _id를 안전하게 문자열로 변환
-                        String id = null;
-                        try {
-                            id = d.getObjectId("_id").toHexString();
-                        } catch (Exception e) {
-                            Object idObj = d.get("_id");
-                            if (idObj != null) id = idObj.toString();
-                        }
-
-                        return new RecordedMotionDTO(
-                                id,
-                                d.getString("phrase"),
-                                d.getString("motion_type"),
-                                d.getString("description")
-                        );
-                    })
+                    .map(d -> new RecordedMotionDTO(
+                            idString(d),
+                            d.getString("phrase"),
+                            d.getString("motion_type"),
+                            d.getString("description")
+                    ))
                     .collect(Collectors.toMap(
                             dto -> dto.getPhrase() + "_" + dto.getMotionType(),
                             dto -> dto,
@@ -100,7 +107,7 @@ public class RecordedMotionServiceImpl implements IRecordedMotionService {
             log.info("[RecordedMotionServiceImpl] deleteRecordedMotionsByUserId called for userId: {}", userId);
             // 먼저 중복되지 않은 고유한 phrase + motion_type 조합 찾기
             Query findQuery = new Query(Criteria.where("user_id").is(userId));
-            findQuery.fields().include("phrase").include("motion_type").exclude("_id");
+            findQuery.fields().include("_id").include("phrase").include("motion_type");
 
             List<Document> docs = mongoTemplate.find(findQuery, Document.class, COLLECTION_NAME);
             log.info("[RecordedMotionServiceImpl] Found {} documents to evaluate for deletion for userId: {}", docs.size(), userId);
@@ -129,6 +136,9 @@ public class RecordedMotionServiceImpl implements IRecordedMotionService {
             }
 
             log.info("[RecordedMotionServiceImpl] Total deleted {} recorded motions for userId: {}", totalDeleted, userId);
+            if (totalDeleted > 0) {
+                motionDetectorService.removeTemplates(userId, docs.stream().map(this::idString).collect(Collectors.toList()));
+            }
             return totalDeleted > 0;
         } catch (Exception e) {
             log.error("[RecordedMotionServiceImpl] Failed to delete recorded motions for userId {}", userId, e);
@@ -156,6 +166,18 @@ public class RecordedMotionServiceImpl implements IRecordedMotionService {
 
             Query findQuery = new Query(Criteria.where("_id").is(idValue).and("user_id").is(userId));
             Document found = mongoTemplate.findOne(findQuery, Document.class, COLLECTION_NAME);
+            if (found == null && !TemplateOwners.isOwner(userId)) {
+                // 공유 템플릿 삭제는 원본을 지우지 않고 이 사용자에게만 tombstone 으로 가립니다.
+                Query sharedQuery = new Query(Criteria.where("_id").is(idValue).and("user_id").in(TemplateOwners.IDS));
+                Document shared = mongoTemplate.findOne(sharedQuery, Document.class, COLLECTION_NAME);
+                if (shared != null) {
+                    long hidden = addTemplateTombstone(userId, shared.getString("phrase"), shared.getString("motion_type"));
+                    if (hidden > 0) {
+                        motionDetectorService.hideSharedTemplate(userId, shared.getString("phrase"), shared.getString("motion_type"));
+                    }
+                    return hidden;
+                }
+            }
             if (found == null) {
                 log.info("[RecordedMotionServiceImpl] No document found for motionId: {} and userId: {}", motionId, userId);
                 return 0;
@@ -215,6 +237,14 @@ public class RecordedMotionServiceImpl implements IRecordedMotionService {
 
             log.info("[RecordedMotionServiceImpl] deleteRecordedMotionById removed {} documents for userId: {}, phrase: {}, motion_type: {}",
                     deleted, userId, phrase, motionType);
+            // 사용자 녹화가 같은 (phrase, motion_type) 의 공유 템플릿을 덮어쓰고 있었다면, 삭제 후에는 공유 템플릿이 다시 보입니다
+            // (기본값으로 되돌리기). 공유 템플릿까지 숨기려면 그 공유 템플릿을 삭제해 tombstone 을 남겨야 합니다.
+
+            if (deleted > 0) {
+                List<String> removedIds = new java.util.ArrayList<>(sidList);
+                oidList.forEach(oid -> removedIds.add(oid.toHexString()));
+                motionDetectorService.removeTemplates(userId, removedIds);
+            }
 
             return deleted;
         } catch (Exception e) {
@@ -223,6 +253,67 @@ public class RecordedMotionServiceImpl implements IRecordedMotionService {
         }
     }
 
+    /**
+     * Shared template documents (id, phrase, motion_type, description) visible to the user: not re-recorded by the
+     * user and not hidden by a tombstone.
+     */
+    private List<Document> findVisibleSharedTemplates(String userId, List<Document> ownDocs) {
+        if (TemplateOwners.isOwner(userId)) return List.of();
+
+        Set<String> hidden = new java.util.HashSet<>();
+        for (Document d : ownDocs) {
+            hidden.add(UserDictionary.key(d.getString("phrase"), d.getString("motion_type")));
+        }
+        Query tombstoneQuery = new Query(Criteria.where("user_id").is(userId));
+        for (TemplateTombstoneDocument t : mongoTemplate.find(tombstoneQuery, TemplateTombstoneDocument.class)) {
+            hidden.add(UserDictionary.key(t.getPhrase(), t.getMotionType()));
+        }
+
+        return sharedTemplateDocs().stream()
+                .filter(d -> !hidden.contains(UserDictionary.key(d.getString("phrase"), d.getString("motion_type"))))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Shared template documents for listings, queried once per shared dictionary snapshot instead of per request.
+     * The detector publishes a new snapshot whenever the golden set changes (locally or on another replica).
+     */
+    private List<Document> sharedTemplateDocs() {
+        TemplateStore snapshot = motionDetectorService.sharedTemplateSnapshot();
+        SharedListing cached = sharedListing;
+        if (cached != null && cached.snapshot() == snapshot) return cached.docs();
+
+        Query sharedQuery = new Query(Criteria.where("user_id").in(TemplateOwners.IDS));
+        sharedQuery.fields().include("_id").include("phrase").include("motion_type").include("description");
+        List<Document> docs = List.copyOf(mongoTemplate.find(sharedQuery, Document.class, COLLECTION_NAME));
+        sharedListing = new SharedListing(snapshot, docs);
+        log.info("[RecordedMotionServiceImpl] Shared template listing refreshed: {} documents", docs.size());
+        return docs;
+    }
+
+    private long addTemplateTombstone(String userId, String phrase, String motionType) {
+        if (phrase == null || motionType == null) {
+            log.warn("[RecordedMotionServiceImpl] Shared template missing phrase or motion_type; no tombstone for userId: {}", userId);
+            return 0;
+        }
+        Query q = new Query(Criteria.where("user_id").is(userId).and("phrase").is(phrase).and("motion_type").is(motionType));
+        Update u = new Update().setOnInsert("created_at", LocalDateTime.now());
+        mongoTemplate.upsert(q, u, TemplateTombstoneDocument.class);
+        log.info("[RecordedMotionServiceImpl] Shared template hidden for userId: {}, phrase: {}, motion_type: {}",
+                userId, phrase, motionType);
+        return 1;
+    }
+
+    // helper: _id 를 안전하게 문자열로 변환 (ObjectId 는 hex, 그 외는 toString)
+    private String idString(Document d) {
+        try {
+            return d.getObjectId("_id").toHexString();
+        } catch (Exception e) {
+            Object idObj = d.get("_id");
+            return (idObj == null) ? null : idObj.toString();
+        }
+    }
+
     // helper: normalize by trimming, converting to lower case, and collapsing whitespace
     private String normalizeString(String s) {
         if (s == null) return null;
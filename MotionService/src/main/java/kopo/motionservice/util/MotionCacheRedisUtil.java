@@ -0,0 +1,181 @@
+package kopo.motionservice.util;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 사용자 템플릿 캐시의 Redis 해시 표현: key = motion_tpl:&lt;userId&gt;, field = recordId, value = TemplateCodec 바이너리.
+ * {@value #EPOCH_FIELD} 필드는 해시를 통째로 새로 만들 때마다(전체 교체, TTL 만료 후 재생성) 바뀌는 생성 id 이고,
+ * {@value #VERSION_FIELD} 필드는 그 epoch 안에서 변경될 때마다 1씩 증가합니다. 해시가 만료되면 version 이 다시 1 부터
+ * 시작하므로, 버전 비교는 항상 같은 epoch 안에서만 의미가 있습니다.
+ *
+ * 전체 교체와 부분 패치는 Lua 스크립트로 원자적으로 실행되므로, 만료 직후의 패치가 일부 템플릿만 가진 해시를 만들지 않습니다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MotionCacheRedisUtil {
+
+    public static final String KEY_PREFIX = "motion_tpl:";
+    public static final String VERSION_FIELD = "__version";
+    public static final String EPOCH_FIELD = "__epoch";
+    /** Pub/sub channel for cross-replica cache events ({@link kopo.motionservice.dto.MotionCacheEventDTO}). */
+    public static final String EVENT_CHANNEL = "motion_cache_events";
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * Hash epoch (creation id, 0 = unknown / written before epochs existed) and the version within that epoch.
+     * {@code version} is -1 when the hash did not exist or the write failed.
+     */
+    public record Version(long epoch, long version) {
+        public static final Version MISSING = new Version(0L, -1L);
+
+        public boolean known() {
+            return epoch != 0 && version > 0;
+        }
+    }
+
+    /** Records of one user plus the hash epoch/version; {@code records} is empty when the key does not exist. */
+    public record Snapshot(long epoch, long version, Map<String, byte[]> records) {
+        public boolean isEmpty() {
+            return records.isEmpty();
+        }
+    }
+
+    // ARGV[1] = ttl seconds, ARGV[2] = new epoch, ARGV[3..] = field/value pairs
+    // 해시를 새로 만들므로 새 epoch 에서 version 1 부터 시작
+    private static final byte[] REPLACE_SCRIPT = bytes(
+            "redis.call('DEL', KEYS[1])\n" +
+            "redis.call('HSET', KEYS[1], '" + EPOCH_FIELD + "', ARGV[2], '" + VERSION_FIELD + "', 1)\n" +
+            "for i = 3, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "return 1");
+
+    // ARGV[1] = ttl seconds, ARGV[2] = number of fields to delete, then the delete fields, then field/value pairs
+    // returns {epoch, version}; epoch 0 for a hash written before epochs existed
+    private static final byte[] PATCH_SCRIPT = bytes(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return {0, -1} end\n" +
+            "local n = tonumber(ARGV[2])\n" +
+            "for i = 3, 2 + n do redis.call('HDEL', KEYS[1], ARGV[i]) end\n" +
+            "for i = 3 + n, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "local v = redis.call('HINCRBY', KEYS[1], '" + VERSION_FIELD + "', 1)\n" +
+            "local e = tonumber(redis.call('HGET', KEYS[1], '" + EPOCH_FIELD + "') or '0') or 0\n" +
+            "return {e, v}");
+
+    /** HGETALL of the user's template hash. */
+    public Snapshot load(String userId) {
+        byte[] key = key(userId);
+        Map<byte[], byte[]> raw = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) c -> c.hashCommands().hGetAll(key));
+        if (raw == null || raw.isEmpty()) return new Snapshot(0L, 0L, Map.of());
+
+        long epoch = 0L;
+        long version = 0L;
+        Map<String, byte[]> records = new HashMap<>(raw.size());
+        for (Map.Entry<byte[], byte[]> e : raw.entrySet()) {
+            String field = new String(e.getKey(), StandardCharsets.UTF_8);
+            if (VERSION_FIELD.equals(field)) {
+                version = Long.parseLong(new String(e.getValue(), StandardCharsets.UTF_8));
+            } else if (EPOCH_FIELD.equals(field)) {
+                epoch = Long.parseLong(new String(e.getValue(), StandardCharsets.UTF_8));
+            } else {
+                records.put(field, e.getValue());
+            }
+        }
+        return new Snapshot(epoch, version, records);
+    }
+
+    /** HGET of one record, or null when the hash or field does not exist. */
+    public byte[] get(String userId, String recordId) {
+        byte[] key = key(userId);
+        byte[] field = bytes(recordId);
+        return redisTemplate.execute((RedisCallback<byte[]>) c -> c.hashCommands().hGet(key, field));
+    }
+
+    /** Publishes a JSON cache event to every replica (including this one). */
+    public void publish(String eventJson) {
+        redisTemplate.convertAndSend(EVENT_CHANNEL, eventJson);
+    }
+
+    /**
+     * Atomically replaces all records of the user under a new epoch (version 1).
+     *
+     * @return new epoch and version
+     */
+    public Version replace(String userId, Map<String, byte[]> records, long ttlSeconds) {
+        long epoch = newEpoch();
+        List<byte[]> args = new ArrayList<>(3 + records.size() * 2);
+        args.add(key(userId));
+        args.add(bytes(Long.toString(ttlSeconds)));
+        args.add(bytes(Long.toString(epoch)));
+        records.forEach((field, value) -> {
+            args.add(bytes(field));
+            args.add(value);
+        });
+        byte[][] params = args.toArray(new byte[0][]);
+        Long version = redisTemplate.execute((RedisCallback<Long>) c ->
+                c.scriptingCommands().eval(REPLACE_SCRIPT, ReturnType.INTEGER, 1, params));
+        return (version == null) ? Version.MISSING : new Version(epoch, version);
+    }
+
+    /**
+     * Atomically deletes and sets individual records. Nothing is written when the hash does not exist
+     * (the next load rebuilds it from Mongo).
+     *
+     * @return epoch and new version, or {@link Version#MISSING} if the hash did not exist
+     */
+    public Version patch(String userId, Collection<String> removeIds, Map<String, byte[]> put, long ttlSeconds) {
+        List<byte[]> args = new ArrayList<>(3 + removeIds.size() + put.size() * 2);
+        args.add(key(userId));
+        args.add(bytes(Long.toString(ttlSeconds)));
+        args.add(bytes(Integer.toString(removeIds.size())));
+        removeIds.forEach(id -> args.add(bytes(id)));
+        put.forEach((field, value) -> {
+            args.add(bytes(field));
+            args.add(value);
+        });
+        byte[][] params = args.toArray(new byte[0][]);
+        List<Object> result = redisTemplate.execute((RedisCallback<List<Object>>) c ->
+                c.scriptingCommands().eval(PATCH_SCRIPT, ReturnType.MULTI, 1, params));
+        if (result == null || result.size() < 2) return Version.MISSING;
+        long version = toLong(result.get(1));
+        return (version < 0) ? Version.MISSING : new Version(toLong(result.get(0)), version);
+    }
+
+    public void delete(String userId) {
+        Boolean result = redisTemplate.delete(KEY_PREFIX + userId);
+        log.info("[MotionCacheRedisUtil] key 삭제 {}: {}", Boolean.TRUE.equals(result) ? "성공" : "실패(존재하지 않음)", KEY_PREFIX + userId);
+    }
+
+    // 해시 생성 id: Lua 숫자(double)로도 정확히 다뤄지도록 2^53 미만의 양수
+    private static long newEpoch() {
+        return ThreadLocalRandom.current().nextLong(1L, 1L << 53);
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Number n) return n.longValue();
+        if (value instanceof byte[] b) return Long.parseLong(new String(b, StandardCharsets.UTF_8));
+        return -1L;
+    }
+
+    private static byte[] key(String userId) {
+        return bytes(KEY_PREFIX + userId);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,60 @@
+package kopo.motionservice.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LangGraph 문장 생성용 최근 phrase ring buffer: key = phrases:&lt;userId&gt;, Redis LIST (오래된 것이 head).
+ *
+ * mediapipe-fastapi 의 load_recent_phrases 가 LPOP 으로 head 부터 소비하므로 RPUSH 로 tail 에 붙이고 마지막 max-size 개만 남깁니다.
+ * 추가/자르기/TTL 갱신은 Lua 스크립트 한 번(왕복 1회)으로 원자적으로 실행되어 여러 세션/파드가 동시에 써도 항목이 유실되지 않습니다.
+ */
+@Slf4j
+@Component
+public class RecentPhraseRedisUtil {
+
+    public static final String KEY_PREFIX = "phrases:";
+
+    // ARGV[1] = max size, ARGV[2] = ttl seconds, ARGV[3..] = phrases (oldest first)
+    // 예전 JSON 문자열 형식의 키가 남아 있으면 LIST 로 바꾸기 위해 먼저 지움
+    private static final DefaultRedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('TYPE', KEYS[1]).ok == 'string' then redis.call('DEL', KEYS[1]) end\n" +
+            "redis.call('RPUSH', KEYS[1], unpack(ARGV, 3))\n" +
+            "redis.call('LTRIM', KEYS[1], -tonumber(ARGV[1]), -1)\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+            "return redis.call('LLEN', KEYS[1])", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final int maxSize;
+    private final Duration ttl;
+
+    public RecentPhraseRedisUtil(StringRedisTemplate redisTemplate,
+                                 @Value("${motion.detection.recent-phrases.max-size:20}") int maxSize,
+                                 @Value("${motion.detection.recent-phrases.ttl:2h}") Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.maxSize = Math.max(1, maxSize);
+        this.ttl = ttl;
+    }
+
+    /**
+     * Appends phrases (oldest first) to the user's ring buffer, trims it to max-size and refreshes the TTL.
+     *
+     * @return buffer length after the append
+     */
+    public long append(String userId, List<String> phrases) {
+        if (phrases.isEmpty()) return 0L;
+        List<String> args = new ArrayList<>(phrases.size() + 2);
+        args.add(String.valueOf(maxSize));
+        args.add(String.valueOf(ttl.toSeconds()));
+        args.addAll(phrases);
+        Long size = redisTemplate.execute(APPEND_SCRIPT, List.of(KEY_PREFIX + userId), args.toArray());
+        return (size == null) ? 0L : size;
+    }
+}
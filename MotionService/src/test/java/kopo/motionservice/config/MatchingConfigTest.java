@@ -0,0 +1,65 @@
+package kopo.motionservice.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kopo.motionservice.matching.CachedMotion;
+import kopo.motionservice.matching.TemplateStore;
+import kopo.motionservice.matching.UserDictionary;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatchingConfigTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void entriesAreWeighedByTheirTemplateBytes() {
+        UserDictionary small = dictionary("u1", 2);
+        UserDictionary large = dictionary("u2", 20);
+        Cache<String, UserDictionary> cache = cache(1L << 20);
+
+        cache.put("small", small);
+        cache.put("large", large);
+        cache.cleanUp();
+
+        long weighted = cache.policy().eviction().orElseThrow().weightedSize().orElseThrow();
+        assertEquals(small.memoryBytes() + large.memoryBytes(), weighted);
+        assertEquals((double) weighted, registry.get("motion.user.dictionary.bytes").gauge().value());
+    }
+
+    @Test
+    void totalWeightStaysWithinTheByteBudget() {
+        long perUser = dictionary("u0", 10).memoryBytes();
+        Cache<String, UserDictionary> cache = cache(perUser * 3);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("user-" + i, dictionary("u" + i, 10));
+        }
+        cache.cleanUp();
+
+        assertTrue(cache.policy().eviction().orElseThrow().weightedSize().orElseThrow() <= perUser * 3);
+        assertTrue(cache.estimatedSize() <= 3);
+        assertTrue(cache.stats().evictionCount() >= 7);
+    }
+
+    private Cache<String, UserDictionary> cache(long maxBytes) {
+        MatchingConfig config = new MatchingConfig();
+        ReflectionTestUtils.setField(config, "cacheMaxBytes", maxBytes);
+        ReflectionTestUtils.setField(config, "cacheIdleTimeout", Duration.ofMinutes(30));
+        return config.userDictionaryCache(registry);
+    }
+
+    private static UserDictionary dictionary(String recordId, int frames) {
+        double[][] sequence = new double[frames][];
+        for (int f = 0; f < frames; f++) sequence[f] = new double[]{f, f + 0.5, f + 1.0};
+        TemplateStore own = TemplateStore.compile(List.of(new CachedMotion(recordId, "hello", "hands", sequence)));
+        return UserDictionary.of(own, TemplateStore.empty(), Set.of());
+    }
+}
@@ -0,0 +1,152 @@
+package kopo.motionservice.handler;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MotionFrameCodecTest {
+
+    private static final double SCALE = 1.0 / 1024;
+
+    @Test
+    void float32FramesRoundTrip() {
+        double[][] frames = {{0.25, -1.5, 3.0}, {1.0, 2.0, -0.125}};
+        ByteBuffer buf = message(MotionFrameCodec.ENCODING_FLOAT32, 2, 3, 0, 2 * 3 * Float.BYTES);
+        for (double[] f : frames) for (double v : f) buf.putFloat((float) v);
+        buf.flip();
+
+        MotionFrameCodec.Header header = MotionFrameCodec.readHeader(buf);
+        assertEquals(2, header.frameCount());
+        assertEquals(1234L, header.timestamp());
+        double[] row = new double[3];
+        for (double[] f : frames) {
+            MotionFrameCodec.readFrame(buf, header, row);
+            assertArrayEquals(f, row);
+        }
+    }
+
+    @Test
+    void q8DeltaRoundTripsAcrossMessages() {
+        int[][] q = {{100, -200, 0}, {103, -190, -5}, {90, -191, 120}, {91, -191, 119}};
+        MotionFrameCodec.DeltaDecoder decoder = new MotionFrameCodec.DeltaDecoder(MotionFrameCodec.ENCODING_Q8_DELTA, SCALE);
+        double[] row = new double[3];
+
+        // 첫 메시지: keyframe + delta 1개
+        ByteBuffer first = message(MotionFrameCodec.ENCODING_Q8_DELTA, 2, 3, MotionFrameCodec.FLAG_KEYFRAME, 3 * 2 + 3);
+        for (int v : q[0]) first.putShort((short) v);
+        putDeltas8(first, q[0], q[1]);
+        first.flip();
+        MotionFrameCodec.Header h1 = MotionFrameCodec.readHeader(first);
+        decoder.check(h1);
+        for (int i = 0; i < 2; i++) {
+            decoder.readFrame(first, h1, i, row);
+            assertArrayEquals(dequantize(q[i]), row);
+        }
+
+        // 다음 메시지: keyframe 없이 직전 메시지의 마지막 프레임에 이어짐
+        ByteBuffer second = message(MotionFrameCodec.ENCODING_Q8_DELTA, 2, 3, 0, 2 * 3);
+        putDeltas8(second, q[1], q[2]);
+        putDeltas8(second, q[2], q[3]);
+        second.flip();
+        MotionFrameCodec.Header h2 = MotionFrameCodec.readHeader(second);
+        decoder.check(h2);
+        for (int i = 0; i < 2; i++) {
+            decoder.readFrame(second, h2, i, row);
+            assertArrayEquals(dequantize(q[i + 2]), row);
+        }
+        assertEquals(0, second.remaining());
+    }
+
+    @Test
+    void q16DeltaRoundTrip() {
+        int[][] q = {{30000, -30000}, {-2000, 2000}};
+        MotionFrameCodec.DeltaDecoder decoder = new MotionFrameCodec.DeltaDecoder(MotionFrameCodec.ENCODING_Q16_DELTA, SCALE);
+        ByteBuffer buf = message(MotionFrameCodec.ENCODING_Q16_DELTA, 2, 2, MotionFrameCodec.FLAG_KEYFRAME, 2 * 2 * Short.BYTES);
+        for (int v : q[0]) buf.putShort((short) v);
+        for (int k = 0; k < 2; k++) buf.putShort((short) (q[1][k] - q[0][k]));
+        buf.flip();
+
+        MotionFrameCodec.Header header = MotionFrameCodec.readHeader(buf);
+        decoder.check(header);
+        double[] row = new double[2];
+        for (int i = 0; i < 2; i++) {
+            decoder.readFrame(buf, header, i, row);
+            assertArrayEquals(dequantize(q[i]), row);
+        }
+    }
+
+    @Test
+    void truncatedMessagesAreRejected() {
+        ByteBuffer shortHeader = ByteBuffer.allocate(MotionFrameCodec.HEADER_BYTES - 1);
+        assertThrows(IllegalArgumentException.class, () -> MotionFrameCodec.readHeader(shortHeader));
+
+        // header 는 float32 2프레임 x 3차원을 선언하지만 payload 는 한 프레임 반
+        ByteBuffer truncated = message(MotionFrameCodec.ENCODING_FLOAT32, 2, 3, 0, 4 * Float.BYTES);
+        for (int i = 0; i < 4; i++) truncated.putFloat(i);
+        truncated.flip();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> MotionFrameCodec.readHeader(truncated));
+        assertTrue(e.getMessage().contains("header expects 24"), e.getMessage());
+
+        ByteBuffer truncatedKeyframe = message(MotionFrameCodec.ENCODING_Q8_DELTA, 2, 3, MotionFrameCodec.FLAG_KEYFRAME, 3 * 2 + 2);
+        truncatedKeyframe.position(truncatedKeyframe.limit()).flip();
+        assertThrows(IllegalArgumentException.class, () -> MotionFrameCodec.readHeader(truncatedKeyframe));
+    }
+
+    @Test
+    void deltasBeforeAKeyframeOrWithOtherDimsAreRejected() {
+        MotionFrameCodec.DeltaDecoder decoder = new MotionFrameCodec.DeltaDecoder(MotionFrameCodec.ENCODING_Q8_DELTA, SCALE);
+        MotionFrameCodec.Header delta = new MotionFrameCodec.Header(MotionFrameCodec.TYPE_FRAMES,
+                MotionFrameCodec.ENCODING_Q8_DELTA, 1, 3, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> decoder.check(delta));
+
+        ByteBuffer key = message(MotionFrameCodec.ENCODING_Q8_DELTA, 1, 2, MotionFrameCodec.FLAG_KEYFRAME, 2 * 2);
+        key.putShort((short) 1).putShort((short) 2).flip();
+        MotionFrameCodec.Header header = MotionFrameCodec.readHeader(key);
+        decoder.check(header);
+        decoder.readFrame(key, header, 0, new double[2]);
+
+        assertThrows(IllegalArgumentException.class, () -> decoder.check(delta));
+        MotionFrameCodec.Header q16 = new MotionFrameCodec.Header(MotionFrameCodec.TYPE_FRAMES,
+                MotionFrameCodec.ENCODING_Q16_DELTA, 1, 2, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> decoder.check(q16));
+    }
+
+    @Test
+    void unknownTypeAndEncodingAreRejected() {
+        ByteBuffer badType = message(MotionFrameCodec.ENCODING_FLOAT32, 0, 1, 0, 0);
+        badType.put(0, (byte) 9).flip();
+        assertThrows(IllegalArgumentException.class, () -> MotionFrameCodec.readHeader(badType));
+
+        ByteBuffer badEncoding = message(7, 0, 1, 0, 0);
+        badEncoding.flip();
+        assertThrows(IllegalArgumentException.class, () -> MotionFrameCodec.readHeader(badEncoding));
+
+        assertEquals(MotionFrameCodec.ENCODING_Q8_DELTA, MotionFrameCodec.encodingOf("Q8_DELTA"));
+        assertEquals(-1, MotionFrameCodec.encodingOf("q4"));
+    }
+
+    private static ByteBuffer message(int encoding, int frameCount, int dims, int flags, int payloadBytes) {
+        ByteBuffer buf = ByteBuffer.allocate(MotionFrameCodec.HEADER_BYTES + payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) MotionFrameCodec.TYPE_FRAMES).put((byte) encoding)
+                .putShort((short) frameCount).putShort((short) dims).putShort((short) flags)
+                .putLong(1234L);
+        return buf;
+    }
+
+    private static void putDeltas8(ByteBuffer buf, int[] from, int[] to) {
+        for (int k = 0; k < from.length; k++) buf.put((byte) (to[k] - from[k]));
+    }
+
+    private static double[] dequantize(int[] q) {
+        double[] out = new double[q.length];
+        for (int k = 0; k < q.length; k++) out[k] = q[k] * SCALE;
+        return out;
+    }
+}
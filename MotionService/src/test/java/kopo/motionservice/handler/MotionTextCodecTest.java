@@ -0,0 +1,93 @@
+package kopo.motionservice.handler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 토큰 루프 디코더는 기존 트리 파싱 경로와 같은 결과를 내고, 다르게 처리될 수 있는 메시지는 OTHER 로 넘겨야 합니다.
+ */
+class MotionTextCodecTest {
+
+    private final MotionTextCodec codec = new MotionTextCodec();
+
+    @Test
+    void decodesFrameFeaturesAndDetectionArea() throws Exception {
+        assertEquals(MotionTextCodec.Kind.FRAME,
+                codec.decode("{\"type\":\"frame\",\"detectionArea\":\"hand\",\"features\":[0.5,-1,2.25e1]}"));
+        assertEquals(3, codec.featureCount());
+        assertArrayEquals(new double[]{0.5, -1, 22.5}, codec.frame());
+        assertEquals("hand", codec.detectionArea());
+    }
+
+    @Test
+    void missingTypeIsAFrameAndTypeIsCaseInsensitive() throws Exception {
+        assertEquals(MotionTextCodec.Kind.FRAME, codec.decode("{\"features\":[1]}"));
+        assertEquals(MotionTextCodec.Kind.END, codec.decode("{\"type\":\"END\",\"detectionArea\":\"face\"}"));
+        assertEquals(-1, codec.featureCount());
+        assertEquals("face", codec.detectionArea());
+    }
+
+    @Test
+    void stateIsResetBetweenMessages() throws Exception {
+        codec.decode("{\"type\":\"frame\",\"detectionArea\":\"hand\",\"features\":[1,2]}");
+        codec.decode("{\"type\":\"frame\",\"features\":\"oops\"}");
+        assertEquals(-1, codec.featureCount());
+        assertNull(codec.detectionArea());
+    }
+
+    @Test
+    void featuresGrowBeyondTheInitialCapacity() throws Exception {
+        StringBuilder json = new StringBuilder("{\"features\":[");
+        for (int i = 0; i < 200; i++) json.append(i == 0 ? "" : ",").append(i);
+        codec.decode(json.append("]}").toString());
+
+        assertEquals(200, codec.featureCount());
+        assertEquals(199.0, codec.frame()[199]);
+    }
+
+    @Test
+    void frameRowIsReusedWhileDimsStayTheSame() throws Exception {
+        codec.decode("{\"features\":[1,2,3]}");
+        double[] first = codec.frame();
+        codec.decode("{\"features\":[4,5,6]}");
+        double[] second = codec.frame();
+
+        assertSame(first, second);
+        assertArrayEquals(new double[]{4, 5, 6}, second);
+    }
+
+    @Test
+    void unhandledMessagesFallBackToTheTreePath() throws Exception {
+        String[] others = {
+                "{\"type\":\"stream_start\",\"detectionArea\":\"hand\"}",
+                "{\"type\":\"frame\",\"features\":[1,\"2\"]}",
+                "{\"type\":\"frame\",\"features\":[1,null]}",
+                "{\"type\":1}",
+                "{\"detectionArea\":5}",
+                "[1,2,3]",
+                "{\"features\":[1,2",
+                "not json"
+        };
+        for (String payload : others) {
+            assertEquals(MotionTextCodec.Kind.OTHER, codec.decode(payload), payload);
+        }
+    }
+
+    @Test
+    void unknownFieldsAreSkipped() throws Exception {
+        assertEquals(MotionTextCodec.Kind.FRAME,
+                codec.decode("{\"meta\":{\"a\":[1,{\"b\":2}]},\"features\":[7],\"seq\":3}"));
+        assertArrayEquals(new double[]{7}, codec.frame());
+    }
+
+    @Test
+    void responsesMatchTheTreeEncodedJson() {
+        assertEquals("{\"type\":\"ack\",\"buffered\":12,\"received\":340}", codec.ack(12, 340));
+        assertEquals("{\"type\":\"window\",\"credit\":8}", codec.window(8));
+        assertEquals("{\"type\":\"flow\",\"state\":\"pause\",\"buffered\":90}", codec.flow("pause", 90));
+    }
+}
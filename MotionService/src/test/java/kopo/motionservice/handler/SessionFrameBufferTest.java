@@ -0,0 +1,191 @@
+package kopo.motionservice.handler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionFrameBufferTest {
+
+    private static final int DIMS = 4;
+    private static final long ROW = SessionFrameBuffer.rowBytes(DIMS);
+
+    private static FrameBufferPool pool(long budgetBytes, int maxFrames, Duration maxAge) {
+        return new FrameBufferPool(new SimpleMeterRegistry(), budgetBytes, maxFrames, maxAge);
+    }
+
+    @Test
+    void viewIsChronologicalAfterTheRingWraps() {
+        SessionFrameBuffer buffer = pool(1 << 20, 3, Duration.ofMinutes(1)).open();
+        for (int i = 1; i <= 5; i++) buffer.append(frame(i), i);
+
+        List<double[]> view = buffer.view();
+        assertEquals(3, view.size());
+        assertEquals(3.0, view.get(0)[0]);
+        assertEquals(4.0, view.get(1)[0]);
+        assertEquals(5.0, view.get(2)[0]);
+        assertEquals(2, buffer.dropped());
+    }
+
+    @Test
+    void rowsAreReusedAfterClear() {
+        SessionFrameBuffer buffer = pool(1 << 20, 10, Duration.ofMinutes(1)).open();
+        double[] first = buffer.append(frame(1), 1);
+        buffer.clear();
+
+        assertSame(first, buffer.append(frame(2), 2));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    void expiredFramesAreDroppedOnClaim() {
+        SessionFrameBuffer buffer = pool(1 << 20, 10, Duration.ofNanos(100)).open();
+        buffer.append(frame(1), 0);
+        buffer.append(frame(2), 50);
+        buffer.append(frame(3), 160); // frame 1 (age 160) expired, frame 2 (age 110) too
+
+        assertEquals(1, buffer.size());
+        assertEquals(3.0, buffer.view().get(0)[0]);
+    }
+
+    @Test
+    void keepNewestAndDropNewestTrimTheEnds() {
+        SessionFrameBuffer buffer = pool(1 << 20, 10, Duration.ofMinutes(1)).open();
+        for (int i = 1; i <= 6; i++) buffer.append(frame(i), i);
+
+        buffer.keepNewest(4);  // 3..6
+        buffer.dropNewest(1);  // 3..5
+
+        List<double[]> view = buffer.view();
+        assertEquals(3, view.size());
+        assertEquals(3.0, view.get(0)[0]);
+        assertEquals(5.0, view.get(2)[0]);
+    }
+
+    @Test
+    void budgetTrimsTheOldestFramesOfTheLeastRecentlyActiveSessionFirst() {
+        FrameBufferPool pool = pool(8 * ROW, 10, Duration.ofMinutes(1));
+        SessionFrameBuffer older = pool.open();
+        SessionFrameBuffer newer = pool.open();
+        for (int i = 1; i <= 4; i++) older.append(frame(i), 10 + i);
+        for (int i = 5; i <= 8; i++) newer.append(frame(i), 20 + i);
+
+        SessionFrameBuffer requester = pool.open();
+        requester.append(frame(9), 30);
+
+        // down to the low watermark (7/8): the older session gives up its two oldest frames, nothing is evicted
+        assertEquals(2, older.size());
+        assertEquals(3.0, older.view().get(0)[0]);
+        assertEquals(4, newer.size());
+        assertEquals(1, requester.size());
+
+        // the headroom left by the low watermark absorbs the next row without reclaiming again
+        requester.append(frame(10), 31);
+        assertEquals(2, older.size());
+        assertEquals(4, newer.size());
+        assertEquals(2, requester.size());
+    }
+
+    @Test
+    void idleRowsAreReclaimedBeforeFrames() {
+        FrameBufferPool pool = pool(4 * ROW, 10, Duration.ofMinutes(1));
+        SessionFrameBuffer idle = pool.open();
+        SessionFrameBuffer active = pool.open();
+        idle.append(frame(1), 10);
+        idle.append(frame(2), 11);
+        idle.clear();
+        active.append(frame(3), 20);
+        active.append(frame(4), 21);
+
+        SessionFrameBuffer requester = pool.open();
+        requester.append(frame(5), 30);
+
+        assertEquals(2, active.size());
+        assertEquals(1, requester.size());
+    }
+
+    @Test
+    void wholeBufferIsEvictedOnlyWhenTrimmingIsNotEnough() {
+        FrameBufferPool pool = pool(3 * ROW, 10, Duration.ofMinutes(1));
+        SessionFrameBuffer older = pool.open();
+        SessionFrameBuffer newer = pool.open();
+        older.append(frame(1), 10);
+        newer.append(frame(2), 20);
+        newer.append(frame(3), 21);
+
+        SessionFrameBuffer requester = pool.open();
+        requester.append(frame(4), 30);
+
+        // the single-frame session cannot be trimmed; the newer one keeps its newest half, then the older one goes
+        assertEquals(0, older.size());
+        assertEquals(1, newer.size());
+        assertEquals(3.0, newer.view().get(0)[0]);
+        assertEquals(1, requester.size());
+    }
+
+    @Test
+    void pinnedBufferIsNotEvicted() {
+        FrameBufferPool pool = pool(2 * ROW, 10, Duration.ofMinutes(1));
+        SessionFrameBuffer pinned = pool.open();
+        pinned.append(frame(1), 1);
+        pinned.append(frame(2), 2);
+        pinned.pin();
+
+        SessionFrameBuffer requester = pool.open();
+        requester.append(frame(3), 3); // no budget and nothing evictable: the frame is dropped
+
+        assertEquals(2, pinned.size());
+        assertEquals(0, requester.size());
+        assertEquals(1, requester.dropped());
+    }
+
+    @Test
+    void evictionDuringAClaimDropsThatFrame() {
+        SessionFrameBuffer buffer = pool(1 << 20, 10, Duration.ofMinutes(1)).open();
+        buffer.append(frame(1), 1);
+        double[] row = buffer.claim(DIMS, 2);
+        row[0] = 2;
+        assertTrue(buffer.evict() > 0);
+        buffer.commit();
+
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void concurrentReclaimWhileSessionsWriteDoesNotFail() throws InterruptedException {
+        FrameBufferPool pool = pool(64 * ROW, 8, Duration.ofMinutes(1));
+        Thread[] writers = new Thread[8];
+        Throwable[] failure = new Throwable[1];
+        for (int w = 0; w < writers.length; w++) {
+            writers[w] = new Thread(() -> {
+                SessionFrameBuffer buffer = pool.open();
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        buffer.append(frame(i), System.nanoTime());
+                        if (i % 7 == 0) buffer.clear();
+                    }
+                } catch (Throwable t) {
+                    synchronized (failure) {
+                        failure[0] = t;
+                    }
+                } finally {
+                    pool.close(buffer);
+                }
+            });
+            writers[w].start();
+        }
+        for (Thread t : writers) t.join();
+        assertEquals(null, failure[0]);
+    }
+
+    private static double[] frame(double value) {
+        double[] f = new double[DIMS];
+        f[0] = value;
+        return f;
+    }
+}
@@ -0,0 +1,100 @@
+package kopo.motionservice.matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * GC 부담 비교: 기존 full-matrix dtwDistance (매 호출 (n+1) x (m+1) 행렬 할당) 와 DtwEngine 의 호출당 힙 할당량.
+ * 스레드별 할당 바이트(com.sun.management.ThreadMXBean)를 충분히 예열한 뒤 평균으로 측정합니다.
+ * JIT / TLAB 상태에 따라 호출당 수십 바이트는 흔들릴 수 있으므로, 절대값이 아니라 legacy 대비 비율과 넉넉한 상한으로 확인합니다.
+ */
+class DtwEngineAllocationTest {
+
+    private static final int WARMUP = 5_000;
+    private static final int CALLS = 5_000;
+
+    // 행렬 할당이 없으면 호출당 할당은 (측정 잡음을 포함해도) 이 상한보다 훨씬 작음
+    private static final long MAX_BYTES_PER_MATCH = 1_024;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void engineAllocatesNothingPerMatchUnlikeTheLegacyMatrix() {
+        List<double[]> live = sequence(60, 52);
+        double[][] template = sequence(45, 52).toArray(new double[0][]);
+        TemplateStore store = TemplateStore.compile(List.of(new CachedMotion("r1", "p", "face", template)));
+        DtwEngine engine = DtwEngine.exact();
+
+        long legacy = bytesPerCall(() -> legacyDtwDistance(live, template));
+        long storeEntry = bytesPerCall(() -> engine.distance(live, store, 0, Double.POSITIVE_INFINITY));
+        long arrayEntry = bytesPerCall(() -> engine.distance(live, template, Double.POSITIVE_INFINITY));
+
+        // legacy 는 최소 (n+1) x (m+1) double 을 매번 할당
+        assertTrue(legacy >= 61L * 46 * Double.BYTES, "legacy allocation " + legacy);
+        assertTrue(storeEntry <= MAX_BYTES_PER_MATCH && storeEntry * 16 < legacy,
+                "store entry point allocates " + storeEntry + " bytes per match (legacy " + legacy + ")");
+        assertTrue(arrayEntry <= MAX_BYTES_PER_MATCH && arrayEntry * 16 < legacy,
+                "double[][] entry point allocates " + arrayEntry + " bytes per match (legacy " + legacy + ")");
+    }
+
+    @Test
+    void arrayEntryPointMatchesTheCompiledStore() {
+        List<double[]> live = sequence(30, 12);
+        double[][] template = sequence(25, 12).toArray(new double[0][]);
+        TemplateStore store = TemplateStore.compile(List.of(new CachedMotion("r1", "p", "face", template)));
+        DtwEngine engine = DtwEngine.exact();
+
+        assertEquals(engine.distance(live, store, 0, Double.POSITIVE_INFINITY),
+                engine.distance(live, template, Double.POSITIVE_INFINITY), 0.0);
+    }
+
+    private static long bytesPerCall(DoubleSupplier call) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double sink = 0;
+        for (int i = 0; i < WARMUP; i++) sink += call.getAsDouble();
+        long before = mx.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < CALLS; i++) sink += call.getAsDouble();
+        long after = mx.getThreadAllocatedBytes(thread);
+        assertTrue(!Double.isNaN(sink));
+        return (after - before) / CALLS;
+    }
+
+    private List<double[]> sequence(int frames, int dims) {
+        List<double[]> seq = new ArrayList<>(frames);
+        for (int i = 0; i < frames; i++) {
+            double[] f = new double[dims];
+            for (int k = 0; k < dims; k++) f[k] = (float) random.nextDouble();
+            seq.add(f);
+        }
+        return seq;
+    }
+
+    // 기존 MotionDetectorServiceImpl.dtwDistance (user-001 이전 구현)
+    static double legacyDtwDistance(List<double[]> a, double[][] b) {
+        if (a == null || a.isEmpty() || b == null || b.length == 0) return Double.POSITIVE_INFINITY;
+        int n = a.size();
+        int m = b.length;
+        double[][] dp = new double[n + 1][m + 1];
+        for (int i = 0; i <= n; i++) Arrays.fill(dp[i], Double.POSITIVE_INFINITY);
+        dp[0][0] = 0.0;
+        for (int i = 1; i <= n; i++) {
+            double[] ai = a.get(i - 1);
+            for (int j = 1; j <= m; j++) {
+                double cost = DtwEngine.euclidean(ai, b[j - 1]);
+                double minPrev = Math.min(dp[i - 1][j], Math.min(dp[i][j - 1], dp[i - 1][j - 1]));
+                dp[i][j] = cost + minPrev;
+            }
+        }
+        return dp[n][m] / Math.max(1.0, n + m);
+    }
+}
@@ -0,0 +1,106 @@
+package kopo.motionservice.matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DtwEngineTest {
+
+    private static final double EPS = 1e-9;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void fullBandMatchesLegacyFullMatrixDtw() {
+        DtwEngine engine = DtwEngine.exact();
+        for (int round = 0; round < 20; round++) {
+            List<double[]> live = sequence(10 + random.nextInt(40), 6);
+            double[][] template = sequence(10 + random.nextInt(40), 6).toArray(new double[0][]);
+            TemplateStore store = TemplateStore.compile(List.of(new CachedMotion("r", "p", "face", template)));
+
+            double expected = DtwEngineAllocationTest.legacyDtwDistance(live, template);
+            assertEquals(expected, engine.distance(live, store, 0, Double.POSITIVE_INFINITY), EPS * expected);
+            assertEquals(expected, engine.distance(live, template, Double.POSITIVE_INFINITY), EPS * expected);
+        }
+    }
+
+    @Test
+    void lowerBoundsAndEarlyAbandoningDoNotChangeTheBestMatch() {
+        DtwEngine pruned = new DtwEngine(DtwEngine.Band.NONE, 1.0, 2.0, true);
+        DtwEngine plain = new DtwEngine(DtwEngine.Band.NONE, 1.0, 2.0, false);
+        List<double[]> live = sequence(30, 4);
+        List<CachedMotion> motions = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            motions.add(new CachedMotion("r" + i, "p" + i, "face", sequence(15 + i, 4).toArray(new double[0][])));
+        }
+        TemplateStore store = TemplateStore.compile(motions);
+
+        double bestPlain = Double.POSITIVE_INFINITY;
+        double bestPruned = Double.POSITIVE_INFINITY;
+        for (int t = 0; t < store.size(); t++) {
+            double exact = plain.distance(live, store, t, Double.POSITIVE_INFINITY);
+            assertEquals(exact, pruned.distance(live, store, t, Double.POSITIVE_INFINITY), EPS * exact);
+
+            double score = pruned.distance(live, store, t, bestPruned);
+            // 현재 최고 점수를 이길 수 있는 템플릿은 정확한 점수, 아니면 +Infinity (건너뜀)
+            if (exact < bestPruned) assertEquals(exact, score, EPS * exact);
+            else assertTrue(score >= bestPruned);
+            bestPruned = Math.min(bestPruned, score);
+            bestPlain = Math.min(bestPlain, exact);
+        }
+        assertEquals(bestPlain, bestPruned, 0.0);
+    }
+
+    @Test
+    void fullWidthBandEqualsUnconstrainedDtw() {
+        DtwEngine full = DtwEngine.exact();
+        DtwEngine sakoe = new DtwEngine(DtwEngine.Band.SAKOE_CHIBA, 1.0, 2.0, true);
+        DtwEngine narrow = new DtwEngine(DtwEngine.Band.SAKOE_CHIBA, 0.1, 2.0, true);
+        List<double[]> live = sequence(40, 5);
+        double[][] template = sequence(32, 5).toArray(new double[0][]);
+
+        double exact = full.distance(live, template, Double.POSITIVE_INFINITY);
+        assertEquals(exact, sakoe.distance(live, template, Double.POSITIVE_INFINITY), EPS * exact);
+        // 좁은 band 는 경로를 제한하므로 비용이 같거나 더 큼
+        assertTrue(narrow.distance(live, template, Double.POSITIVE_INFINITY) >= exact - EPS);
+    }
+
+    @Test
+    void identicalSequencesHaveZeroDistance() {
+        List<double[]> live = sequence(12, 3);
+        double[][] template = live.toArray(new double[0][]);
+        assertEquals(0.0, DtwEngine.exact().distance(live, template, Double.POSITIVE_INFINITY), 0.0);
+    }
+
+    @Test
+    void emptyInputsNeverMatch() {
+        DtwEngine engine = DtwEngine.exact();
+        assertEquals(Double.POSITIVE_INFINITY, engine.distance(List.of(), new double[][]{{1.0}}, Double.POSITIVE_INFINITY));
+        assertEquals(Double.POSITIVE_INFINITY, engine.distance(sequence(3, 1), new double[0][], Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void bandNamesAreParsedLeniently() {
+        assertEquals(DtwEngine.Band.NONE, DtwEngine.Band.from(null));
+        assertEquals(DtwEngine.Band.NONE, DtwEngine.Band.from("none"));
+        assertEquals(DtwEngine.Band.SAKOE_CHIBA, DtwEngine.Band.from("Sakoe_Chiba"));
+        assertEquals(DtwEngine.Band.ITAKURA, DtwEngine.Band.from(" itakura "));
+        assertEquals(DtwEngine.Band.NONE, DtwEngine.Band.from("unknown"));
+    }
+
+    // float 로 정확히 표현되는 값만 사용 (TemplateStore 는 float32 로 저장)
+    private List<double[]> sequence(int frames, int dims) {
+        List<double[]> seq = new ArrayList<>(frames);
+        for (int i = 0; i < frames; i++) {
+            double[] f = new double[dims];
+            for (int k = 0; k < dims; k++) f[k] = (float) random.nextDouble();
+            seq.add(f);
+        }
+        return seq;
+    }
+}
@@ -0,0 +1,47 @@
+package kopo.motionservice.matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DtwScratchTest {
+
+    @Test
+    void shortLivedThreadsBorrowPooledScratch() throws InterruptedException {
+        DtwScratch.Pool pool = new DtwScratch.Pool(2);
+        DtwScratch warmed = pool.acquire();
+        warmed.ensureRows(64);
+        warmed.ensureColumns(64);
+        pool.release(warmed);
+
+        // 새 스레드(virtual thread 요청 처리와 같은 상황)도 이미 키운 버퍼를 받아야 함
+        AtomicReference<DtwScratch> seen = new AtomicReference<>();
+        Thread t = new Thread(() -> {
+            DtwScratch s = pool.acquire();
+            seen.set(s);
+            pool.release(s);
+        });
+        t.start();
+        t.join();
+
+        assertSame(warmed, seen.get());
+        assertEquals(64, seen.get().lo.length);
+    }
+
+    @Test
+    void scratchBeyondCapacityIsDropped() {
+        DtwScratch.Pool pool = new DtwScratch.Pool(1);
+        DtwScratch first = pool.acquire();
+        DtwScratch second = pool.acquire();
+        assertNotSame(first, second);
+        pool.release(first);
+        pool.release(second); // pool full
+
+        assertSame(first, pool.acquire());
+        assertNotSame(second, pool.acquire());
+    }
+}
@@ -0,0 +1,101 @@
+package kopo.motionservice.matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * 세션 프레임 버퍼처럼 held / trailing 지시를 따르는 버퍼로, 매칭에 들어가는 구간이 움직인 프레임 + pre-roll 만인지 확인합니다.
+ */
+class GestureSegmenterTest {
+
+    // start 0.5, stop 0.1, EMA 없음, debounce 1, idle 3, pre-roll 2, 최소 3 / 최대 20 프레임
+    private static final GestureSegmenter.Settings SETTINGS =
+            new GestureSegmenter.Settings(0.5, 0.1, 0.5, 0.1, 1.0, 1, 3, 2, 3, 20);
+
+    private final GestureSegmenter segmenter = new GestureSegmenter(SETTINGS, "face");
+    private final Deque<double[]> buffer = new ArrayDeque<>();
+
+    @Test
+    void cutDropsTheTrailingIdleFrames() {
+        for (int i = 0; i < 5; i++) assertEquals(GestureSegmenter.Decision.IDLE, push(-1, 0));
+        assertEquals(2, buffer.size()); // pre-roll 만 남음
+
+        for (int i = 0; i < 5; i++) assertEquals(GestureSegmenter.Decision.ACTIVE, push(i, (i + 1) % 2));
+        // 마지막 움직임(값 1)에서 멈춤
+        assertEquals(GestureSegmenter.Decision.ACTIVE, push(-2, 1));
+        assertEquals(GestureSegmenter.Decision.ACTIVE, push(-2, 1));
+        assertEquals(GestureSegmenter.Decision.CUT, push(-2, 1));
+
+        assertEquals(3, segmenter.trailing());
+        assertEquals(7, segmenter.segmentLength());
+        assertEquals(7, buffer.size());
+        // 마지막으로 남은 프레임은 마지막으로 움직인 프레임
+        assertEquals(4.0, buffer.peekLast()[0]);
+        assertEquals(-1.0, buffer.peekFirst()[0]);
+        assertFalse(segmenter.isActive());
+        assertEquals(0, segmenter.held());
+    }
+
+    @Test
+    void shortGestureIsDiscarded() {
+        push(-1, 0);
+        assertEquals(GestureSegmenter.Decision.ACTIVE, push(0, 1));
+        push(-2, 1);
+        push(-2, 1);
+        assertEquals(GestureSegmenter.Decision.DISCARD, push(-2, 1));
+
+        assertEquals(0, buffer.size());
+        assertEquals(2, segmenter.segmentLength());
+    }
+
+    @Test
+    void longGestureIsCutAtTheMaximumLength() {
+        GestureSegmenter.Decision last = null;
+        int frames = 0;
+        while (last != GestureSegmenter.Decision.CUT && frames < 100) {
+            last = push(frames, (frames + 1) % 2);
+            frames++;
+        }
+        assertEquals(GestureSegmenter.Decision.CUT, last);
+        assertEquals(20, segmenter.segmentLength());
+        assertEquals(0, segmenter.trailing());
+    }
+
+    @Test
+    void debounceKeepsTheFramesThatStartedTheGesture() {
+        GestureSegmenter debounced = new GestureSegmenter(
+                new GestureSegmenter.Settings(0.5, 0.1, 0.5, 0.1, 1.0, 3, 3, 0, 1, 20), "face");
+        debounced.push(new double[]{0});
+        assertEquals(GestureSegmenter.Decision.IDLE, debounced.push(new double[]{1}));
+        assertEquals(GestureSegmenter.Decision.IDLE, debounced.push(new double[]{0}));
+        assertEquals(2, debounced.held());
+        assertEquals(GestureSegmenter.Decision.ACTIVE, debounced.push(new double[]{1}));
+        assertEquals(3, debounced.held());
+    }
+
+    // 버퍼에는 식별용 태그만 담고, 세그멘터에는 태그를 1e-3 로 줄여 넣어 energy 가 value 변화로만 정해지게 함
+    private GestureSegmenter.Decision push(double tag, double value) {
+        double[] frame = {tag * 1e-3, value};
+        buffer.addLast(new double[]{tag});
+        GestureSegmenter.Decision d = segmenter.push(frame);
+        switch (d) {
+            case IDLE -> trimTo(segmenter.held());
+            case CUT -> {
+                for (int i = 0; i < segmenter.trailing(); i++) buffer.removeLast();
+            }
+            case DISCARD -> buffer.clear();
+            default -> {
+            }
+        }
+        return d;
+    }
+
+    private void trimTo(int keep) {
+        while (buffer.size() > keep) buffer.removeFirst();
+    }
+}
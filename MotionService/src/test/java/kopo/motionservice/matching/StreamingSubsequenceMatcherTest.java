@@ -0,0 +1,75 @@
+package kopo.motionservice.matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingSubsequenceMatcherTest {
+
+    private static final double[] IDLE = {5.0, 5.0, 5.0};
+
+    private final double[][] wave = wave(12);
+    private final TemplateStore store = TemplateStore.compile(List.of(new CachedMotion("r1", "wave", "face", wave)));
+
+    @Test
+    void reportsTheEmbeddedGestureOnceItsPathEnds() {
+        StreamingSubsequenceMatcher matcher = new StreamingSubsequenceMatcher(new TemplateStore[]{store}, new int[]{0}, 0.35, 0.5);
+        List<double[]> stream = new ArrayList<>();
+        for (int i = 0; i < 8; i++) stream.add(IDLE);
+        for (double[] f : wave) stream.add(f);
+        for (int i = 0; i < 8; i++) stream.add(IDLE);
+
+        List<StreamingSubsequenceMatcher.Match> matches = new ArrayList<>();
+        for (double[] f : stream) {
+            StreamingSubsequenceMatcher.Match m = matcher.push(f);
+            if (m != null) matches.add(m);
+        }
+
+        assertEquals(1, matches.size());
+        StreamingSubsequenceMatcher.Match match = matches.get(0);
+        assertEquals("wave", match.phrase());
+        assertEquals("r1", match.recordId());
+        assertEquals(9, match.startFrame());
+        assertEquals(20, match.endFrame());
+        assertTrue(match.score() < 1e-6, "score " + match.score());
+    }
+
+    @Test
+    void unrelatedMotionIsNotReported() {
+        StreamingSubsequenceMatcher matcher = new StreamingSubsequenceMatcher(new TemplateStore[]{store}, new int[]{0}, 0.35, 0.5);
+        for (int i = 0; i < 50; i++) assertNull(matcher.push(IDLE));
+    }
+
+    @Test
+    void openedOnADictionaryUsesOwnAndVisibleSharedTemplatesOfTheArea() {
+        TemplateStore shared = TemplateStore.compile(List.of(
+                new CachedMotion("s1", "wave", "face", wave),
+                new CachedMotion("s2", "other", "hands", wave)));
+        UserDictionary dictionary = UserDictionary.of(store, shared, java.util.Set.of());
+
+        StreamingSubsequenceMatcher matcher = StreamingSubsequenceMatcher.of(dictionary, "face", 0.35, 0.5);
+        // own "wave|face" overrides shared s1, s2 is a different area
+        assertEquals(1, matcher.templateCount());
+
+        StreamingSubsequenceMatcher.Match match = null;
+        for (double[] f : wave) match = (match != null) ? match : matcher.push(f);
+        for (int i = 0; i < 4 && match == null; i++) match = matcher.push(IDLE);
+        assertNotNull(match);
+        assertEquals("r1", match.recordId());
+    }
+
+    private static double[][] wave(int frames) {
+        double[][] out = new double[frames][];
+        for (int i = 0; i < frames; i++) {
+            double x = i / (double) frames;
+            out[i] = new double[]{(float) Math.sin(2 * Math.PI * x), (float) Math.cos(2 * Math.PI * x), (float) x};
+        }
+        return out;
+    }
+}
@@ -0,0 +1,101 @@
+package kopo.motionservice.matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TemplateCodecTest {
+
+    @Test
+    void roundTripKeepsMetadataAndFloat32Frames() {
+        double[][] seq = {{0.25, -1.5, 3.0}, {0.1, 0.2, 0.3}};
+        byte[] encoded = TemplateCodec.encode(new CachedMotion("r1", "안녕하세요", "hands", seq));
+
+        CachedMotion decoded = TemplateCodec.decode("r1", encoded);
+
+        assertEquals("r1", decoded.getRecordId());
+        assertEquals("안녕하세요", decoded.getPhrase());
+        assertEquals("hands", decoded.getMotionType());
+        assertEquals(2, decoded.getSequence().length);
+        assertArrayEquals(new double[]{0.25, -1.5, 3.0}, decoded.getSequence()[0], 0.0);
+        // float32 정밀도로 저장
+        assertArrayEquals(new double[]{(float) 0.1, (float) 0.2, (float) 0.3}, decoded.getSequence()[1], 0.0);
+    }
+
+    @Test
+    void framesArePaddedOrTrimmedToTheFirstFrame() {
+        double[][] seq = {{1, 2, 3}, {4}, {5, 6, 7, 8}, null};
+        CachedMotion decoded = TemplateCodec.decode("r", TemplateCodec.encode(new CachedMotion("r", "p", "face", seq)));
+
+        assertArrayEquals(new double[]{4, 0, 0}, decoded.getSequence()[1], 0.0);
+        assertArrayEquals(new double[]{5, 6, 7}, decoded.getSequence()[2], 0.0);
+        assertArrayEquals(new double[]{0, 0, 0}, decoded.getSequence()[3], 0.0);
+    }
+
+    @Test
+    void nullAndEmptyStringsStayDistinct() {
+        CachedMotion nulls = TemplateCodec.decode("r",
+                TemplateCodec.encode(new CachedMotion("r", null, null, new double[][]{{1.0}})));
+        assertNull(nulls.getPhrase());
+        assertNull(nulls.getMotionType());
+
+        CachedMotion empty = TemplateCodec.decode("r",
+                TemplateCodec.encode(new CachedMotion("r", "", "", new double[][]{{1.0}})));
+        assertEquals("", empty.getPhrase());
+        assertEquals("", empty.getMotionType());
+    }
+
+    @Test
+    void formatOneValuesAreStillReadable() {
+        byte[] encoded = TemplateCodec.encode(new CachedMotion("r", "p", "face", new double[][]{{1.0}}));
+        encoded[2] = 1;
+        CachedMotion decoded = TemplateCodec.decode("r", encoded);
+        assertEquals("p", decoded.getPhrase());
+        assertEquals("face", decoded.getMotionType());
+    }
+
+    @Test
+    void truncatedStringFieldIsRejectedAsAFormatError() {
+        byte[] encoded = TemplateCodec.encode(new CachedMotion("r", "phrase", "face", new double[][]{{1.0}}));
+        // header (12) + phrase 길이 (2) + phrase 일부만
+        assertThrows(IllegalArgumentException.class, () -> TemplateCodec.decode("r", Arrays.copyOf(encoded, 15)));
+        assertThrows(IllegalArgumentException.class, () -> TemplateCodec.decode("r", Arrays.copyOf(encoded, 13)));
+    }
+
+    @Test
+    void oversizedHeaderDoesNotOverflowTheSizeCheck() {
+        byte[] encoded = TemplateCodec.encode(new CachedMotion("r", "p", "face", new double[][]{{1.0}}));
+        ByteBuffer buf = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+        // 65536 x 16384 x 4 = 2^32 -> int 곱셈이면 0 이 되어 빈 payload 와 일치해 버림
+        buf.putInt(4, 65_536).putInt(8, 16_384);
+        byte[] header = Arrays.copyOf(encoded, encoded.length - Float.BYTES);
+        assertThrows(IllegalArgumentException.class, () -> TemplateCodec.decode("r", header));
+    }
+
+    @Test
+    void motionsWithoutFramesAreNotEncoded() {
+        assertNull(TemplateCodec.encode(null));
+        assertNull(TemplateCodec.encode(new CachedMotion("r", "p", "face", new double[0][])));
+        assertNull(TemplateCodec.encode(new CachedMotion("r", "p", "face", null)));
+    }
+
+    @Test
+    void truncatedOrForeignValuesAreRejected() {
+        byte[] encoded = TemplateCodec.encode(new CachedMotion("r", "p", "face", new double[][]{{1, 2}, {3, 4}}));
+
+        assertThrows(IllegalArgumentException.class, () -> TemplateCodec.decode("r", Arrays.copyOf(encoded, encoded.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> TemplateCodec.decode("r", new byte[4]));
+        assertThrows(IllegalArgumentException.class, () -> TemplateCodec.decode("r", null));
+
+        byte[] foreign = encoded.clone();
+        foreign[0] = '{';
+        assertThrows(IllegalArgumentException.class, () -> TemplateCodec.decode("r", foreign));
+    }
+}
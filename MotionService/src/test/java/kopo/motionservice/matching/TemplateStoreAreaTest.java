@@ -0,0 +1,73 @@
+package kopo.motionservice.matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 영역 선택은 기존 matchesArea 규칙(motionType.toLowerCase().contains(detectionArea.toLowerCase()))과 같아야 합니다.
+ */
+class TemplateStoreAreaTest {
+
+    private static final String[] TYPES = {"face", "Hands", "sign_hand", "SignLang", "eyes", "gesture", null};
+
+    private final TemplateStore store = TemplateStore.compile(motions(TYPES));
+
+    @Test
+    void bucketsFollowTheLegacySubstringRule() {
+        for (String area : new String[]{"face", "hand", "hands", "HAND", "sign", "eye", "eyes", "gest", "", "unknown"}) {
+            assertArrayEquals(legacy(area), store.bucket(area), "area=" + area);
+        }
+    }
+
+    @Test
+    void templateMentioningSeveralAreasMatchesEachOfThem() {
+        // "sign_hand" (index 2) 는 sign 과 hand 양쪽에서 매칭
+        assertArrayEquals(new int[]{1, 2}, store.bucket("hand"));
+        assertArrayEquals(new int[]{2, 3}, store.bucket("sign"));
+    }
+
+    @Test
+    void unclassifiedTypesStillMatchTheirOwnSubstring() {
+        assertArrayEquals(new int[]{5}, store.bucket("gesture"));
+        assertArrayEquals(new int[0], store.bucket(null));
+    }
+
+    @Test
+    void bucketsAreMemoizedPerArea() {
+        assertSame(store.bucket("hands"), store.bucket("HANDS"));
+        assertSame(store.bucket("gesture"), store.bucket("gesture"));
+    }
+
+    @Test
+    void sharedBucketHonoursSubstringRuleAndOverrides() {
+        TemplateStore own = TemplateStore.compile(motions(new String[]{"sign_hand"}));
+        UserDictionary dictionary = UserDictionary.of(own, store, Set.of(UserDictionary.key("p1", "Hands")));
+
+        assertArrayEquals(new int[]{0}, dictionary.ownBucket("hand"));
+        // index 1 is tombstoned, index 2 ("p2", "sign_hand") is not overridden because the phrase differs
+        assertArrayEquals(new int[]{2}, dictionary.sharedBucket("hand"));
+        assertArrayEquals(new int[]{2, 3}, dictionary.sharedBucket("sign"));
+    }
+
+    private int[] legacy(String area) {
+        List<Integer> out = new ArrayList<>();
+        for (int t = 0; t < TYPES.length; t++) {
+            if (TYPES[t] != null && area != null && TYPES[t].toLowerCase().contains(area.toLowerCase())) out.add(t);
+        }
+        return out.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static List<CachedMotion> motions(String[] types) {
+        List<CachedMotion> out = new ArrayList<>();
+        for (int i = 0; i < types.length; i++) {
+            out.add(new CachedMotion("r" + i, "p" + i, types[i], new double[][]{{i, 0.5}, {i, 1.0}}));
+        }
+        return out;
+    }
+}
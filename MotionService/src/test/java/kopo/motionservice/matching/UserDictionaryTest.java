@@ -0,0 +1,157 @@
+package kopo.motionservice.matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserDictionaryTest {
+
+    private final TemplateStore shared = TemplateStore.compile(List.of(
+            motion("s1", "hello", "hands"),
+            motion("s2", "thanks", "hands")));
+
+    @Test
+    void ownRecordingOverridesSharedTemplate() {
+        UserDictionary dictionary = UserDictionary.of(
+                TemplateStore.compile(List.of(motion("u1", "Hello ", "HANDS"))), shared, Set.of());
+
+        assertArrayEquals(new int[]{1}, dictionary.sharedBucket("hands"));
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    void deletingTheOverrideShowsTheSharedTemplateAgain() {
+        UserDictionary dictionary = UserDictionary.of(
+                TemplateStore.compile(List.of(motion("u1", "hello", "hands"))), shared, Set.of());
+
+        UserDictionary afterDelete = dictionary.withOwn(dictionary.own().patch(List.of("u1"), null));
+
+        assertArrayEquals(new int[]{0, 1}, afterDelete.sharedBucket("hands"));
+    }
+
+    @Test
+    void tombstoneHidesSharedTemplateWithoutOverride() {
+        UserDictionary dictionary = UserDictionary.of(TemplateStore.empty(), shared, Set.of())
+                .withTombstone("thanks", "hands");
+
+        assertArrayEquals(new int[]{0}, dictionary.sharedBucket("hands"));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    void putReplacesTheTemplateWithTheSameRecordId() {
+        TemplateStore own = TemplateStore.compile(List.of(motion("u1", "hello", "hands"), motion("u2", "bye", "hands")));
+
+        TemplateStore patched = own.patch(null, motion("u1", "hello again", "hands"));
+
+        assertEquals(2, patched.size());
+        assertEquals("u2", patched.recordId(0));
+        assertEquals("u1", patched.recordId(1));
+        assertEquals("hello again", patched.phrase(1));
+        assertEquals(2, own.size()); // copy-on-write: the published store is unchanged
+        assertEquals("hello", own.phrase(0));
+    }
+
+    @Test
+    void removeDropsOnlyTheGivenRecordIds() {
+        TemplateStore own = TemplateStore.compile(List.of(
+                motion("u1", "hello", "hands"), motion("u2", "bye", "hands"), motion("u3", "yes", "face")));
+
+        TemplateStore patched = own.patch(List.of("u1", "u3", "missing"), null);
+
+        assertEquals(1, patched.size());
+        assertEquals("u2", patched.recordId(0));
+        assertArrayEquals(new int[]{0}, patched.bucket("hands"));
+    }
+
+    @Test
+    void ownRecordingAddedByPatchOverridesTheSharedTemplate() {
+        UserDictionary dictionary = UserDictionary.of(TemplateStore.empty(), shared, Set.of());
+
+        UserDictionary afterPut = dictionary.withOwn(dictionary.own().patch(null, motion("u1", "thanks", "hands")));
+
+        assertArrayEquals(new int[]{0}, afterPut.sharedBucket("hands"));
+        assertEquals(2, afterPut.size());
+    }
+
+    @Test
+    void tombstonesSurviveOwnPatches() {
+        UserDictionary dictionary = UserDictionary.of(
+                TemplateStore.compile(List.of(motion("u1", "thanks", "hands"))), shared, Set.of())
+                .withTombstone("thanks", "hands");
+
+        // 덮어쓰던 녹화를 지워도 tombstone 이 있으면 공유 템플릿은 계속 가려짐
+        UserDictionary afterDelete = dictionary.withOwn(dictionary.own().patch(List.of("u1"), null));
+        UserDictionary afterPut = afterDelete.withOwn(afterDelete.own().patch(null, motion("u2", "other", "hands")));
+
+        assertArrayEquals(new int[]{0}, afterDelete.sharedBucket("hands"));
+        assertArrayEquals(new int[]{0}, afterPut.sharedBucket("hands"));
+        assertEquals(Set.of(UserDictionary.key("thanks", "hands")), afterPut.tombstones());
+    }
+
+    @Test
+    void remotePatchDirectlyAfterTheLocalVersionIsApplied() {
+        UserDictionary dictionary = versioned(7L, 3L);
+
+        UserDictionary patched = dictionary.applyPatch(7L, 4L, List.of(), motion("u2", "bye", "hands"));
+
+        assertEquals(4L, patched.version());
+        assertEquals(7L, patched.epoch());
+        assertEquals(2, patched.own().size());
+    }
+
+    @Test
+    void remotePatchAlreadyContainedIsIgnored() {
+        UserDictionary dictionary = versioned(7L, 3L);
+
+        assertSame(dictionary, dictionary.applyPatch(7L, 3L, List.of("u1"), null));
+        assertSame(dictionary, dictionary.applyPatch(7L, 2L, List.of("u1"), null));
+    }
+
+    @Test
+    void missedRemotePatchDropsTheLocalCopy() {
+        assertNull(versioned(7L, 3L).applyPatch(7L, 5L, List.of(), motion("u2", "bye", "hands")));
+    }
+
+    @Test
+    void remotePatchFromAnotherEpochDropsTheLocalCopy() {
+        // 해시가 만료 후 다시 만들어지면 version 이 1 부터 다시 시작: 낮은 version 이라도 이미 반영된 것으로 보면 안 됨
+        assertNull(versioned(7L, 3L).applyPatch(8L, 1L, List.of("u1"), null));
+        assertNull(versioned(7L, 3L).applyPatch(8L, 4L, List.of("u1"), null));
+    }
+
+    @Test
+    void remotePatchOnAnUnversionedSnapshotDropsTheLocalCopy() {
+        UserDictionary unversioned = UserDictionary.of(
+                TemplateStore.compile(List.of(motion("u1", "hello", "hands"))), shared, Set.of());
+
+        assertNull(unversioned.applyPatch(7L, 1L, List.of("u1"), null));
+    }
+
+    @Test
+    void snapshotsAreOrderedOnlyWithinOneHashEpoch() {
+        assertTrue(versioned(7L, 4L).isNewerThan(versioned(7L, 3L)));
+        assertFalse(versioned(7L, 3L).isNewerThan(versioned(7L, 3L)));
+        assertFalse(versioned(7L, 3L).isNewerThan(versioned(7L, 4L)));
+        // 다른 epoch 이면 version 이 높아도 순서를 알 수 없음
+        assertFalse(versioned(7L, 9L).isNewerThan(versioned(8L, 1L)));
+        assertFalse(versioned(0L, 9L).isNewerThan(versioned(0L, 1L)));
+    }
+
+    private UserDictionary versioned(long epoch, long version) {
+        return UserDictionary.of(TemplateStore.compile(List.of(motion("u1", "hello", "hands"))), shared, Set.of())
+                .withVersion(epoch, version);
+    }
+
+    private static CachedMotion motion(String id, String phrase, String type) {
+        return new CachedMotion(id, phrase, type, new double[][]{{0.1, 0.2}, {0.3, 0.4}});
+    }
+}
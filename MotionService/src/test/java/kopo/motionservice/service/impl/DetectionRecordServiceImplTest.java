@@ -0,0 +1,102 @@
+package kopo.motionservice.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kopo.motionservice.handler.AlertWebSocketHandler;
+import kopo.motionservice.repository.document.PhraseHistoryDocument;
+import kopo.motionservice.util.RecentPhraseRedisUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DetectionRecordServiceImplTest {
+
+    private static final String SPILL_FILE = "phrase-history.spill.jsonl";
+
+    @TempDir
+    Path spillDir;
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final RecentPhraseRedisUtil recentPhrases = mock(RecentPhraseRedisUtil.class);
+    private DetectionRecordServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        // batch-size 보다 적게 기록하므로 자동 flush 는 일어나지 않고, flush / replay 는 테스트가 직접 호출
+        service = new DetectionRecordServiceImpl(mongoTemplate, mock(AlertWebSocketHandler.class), recentPhrases,
+                new SimpleMeterRegistry(), 100, 50, Duration.ofHours(1), spillDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        service.stop();
+    }
+
+    @Test
+    void flushGroupsRecentPhrasesPerUserInDetectionOrder() {
+        service.record("u1", "hello");
+        service.record("u2", "hi");
+        service.record("u1", "bye");
+
+        ReflectionTestUtils.invokeMethod(service, "flushHistory");
+
+        verify(recentPhrases).append("u1", List.of("hello", "bye"));
+        verify(recentPhrases).append("u2", List.of("hi"));
+    }
+
+    @Test
+    void historyThatCannotBeSavedIsSpilledAndReplayedIntoMongo() throws Exception {
+        when(mongoTemplate.insert(anyCollection(), eq(PhraseHistoryDocument.class)))
+                .thenThrow(new IllegalStateException("mongo down"));
+        service.record("u1", "hello");
+        service.record("u1", "bye");
+
+        ReflectionTestUtils.invokeMethod(service, "flushHistory");
+
+        Path spill = spillDir.resolve(SPILL_FILE);
+        assertEquals(2, Files.readAllLines(spill, StandardCharsets.UTF_8).size());
+        verify(recentPhrases, never()).append(anyString(), anyList());
+
+        // Mongo 회복 후 replay: 같은 이벤트가 순서대로 저장되고 spill 파일은 정리됨
+        reset(mongoTemplate);
+        ReflectionTestUtils.invokeMethod(service, "replaySpill");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PhraseHistoryDocument>> saved = ArgumentCaptor.forClass(Collection.class);
+        verify(mongoTemplate).insert(saved.capture(), eq(PhraseHistoryDocument.class));
+        List<PhraseHistoryDocument> docs = new ArrayList<>(saved.getValue());
+        assertEquals(2, docs.size());
+        assertEquals("u1", docs.get(0).getUserId());
+        assertEquals("hello", docs.get(0).getPhrase());
+        assertEquals("bye", docs.get(1).getPhrase());
+        assertNotNull(docs.get(0).getDetectedTime());
+        assertFalse(Files.exists(spill));
+        assertFalse(Files.exists(spillDir.resolve(SPILL_FILE + ".replay")));
+        // spill 된 이벤트는 이미 오래된 것이므로 최근 phrase 목록에는 다시 넣지 않음
+        verify(recentPhrases, never()).append(anyString(), anyList());
+    }
+}
@@ -0,0 +1,135 @@
+package kopo.motionservice.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import kopo.motionservice.matching.CachedMotion;
+import kopo.motionservice.matching.DtwEngine;
+import kopo.motionservice.matching.TemplateCodec;
+import kopo.motionservice.matching.TemplateScanner;
+import kopo.motionservice.matching.TemplateStore;
+import kopo.motionservice.matching.UserDictionary;
+import kopo.motionservice.repository.TemplateTombstoneRepository;
+import kopo.motionservice.service.IDetectionRecordService;
+import kopo.motionservice.service.IMotionService;
+import kopo.motionservice.util.MotionCacheRedisUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MotionDetectorServiceImplTest {
+
+    private static final String USER = "patient-1";
+
+    private final MotionCacheRedisUtil redis = mock(MotionCacheRedisUtil.class);
+    private final Cache<String, UserDictionary> cache = Caffeine.newBuilder().build();
+    private MotionDetectorServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        DtwEngine engine = DtwEngine.exact();
+        service = new MotionDetectorServiceImpl(mock(IMotionService.class), mock(IDetectionRecordService.class),
+                engine, new TemplateScanner(engine, null, 64, 16), mock(TemplateTombstoneRepository.class), cache);
+        ReflectionTestUtils.setField(service, "motionCacheRedisUtil", redis);
+        // 공유(골든셋) 사전은 비워 둠: 테스트는 사용자 고유 템플릿만 로드
+        ReflectionTestUtils.setField(service, "sharedTemplates", TemplateStore.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void concurrentColdLoadsForOneUserRunASingleLoad() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        when(redis.load(USER)).thenAnswer(inv -> {
+            loads.incrementAndGet();
+            entered.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return snapshot(7L, 1L);
+        });
+
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> calls = new ArrayList<>();
+            calls.add(callers.submit(() -> service.reloadCache(USER)));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) calls.add(callers.submit(() -> service.reloadCache(USER)));
+
+            // 나머지 세 호출이 진행 중인 로드를 기다리기 시작한 뒤에 로드를 끝냄
+            CompletableFuture<?> inFlight = inFlightLoad();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (inFlight.getNumberOfDependents() < 3 && System.nanoTime() < deadline) Thread.sleep(1);
+            assertEquals(3, inFlight.getNumberOfDependents());
+            release.countDown();
+            for (Future<?> call : calls) call.get(5, TimeUnit.SECONDS);
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        UserDictionary loaded = cache.getIfPresent(USER);
+        assertEquals(1, loaded.own().size());
+        assertNull(inFlightLoad(), "in-flight entry is removed after the load");
+    }
+
+    @Test
+    void reloadPublishesANewHashEpochOverAStaleSnapshotWithAHigherVersion() {
+        // 해시가 만료 후 다시 만들어지면 version 이 1 부터 다시 시작
+        UserDictionary stale = UserDictionary.of(TemplateStore.empty(), TemplateStore.empty(), Set.of()).withVersion(7L, 5L);
+        cache.put(USER, stale);
+        when(redis.load(USER)).thenReturn(snapshot(8L, 1L));
+
+        service.reloadCache(USER);
+
+        UserDictionary published = cache.getIfPresent(USER);
+        assertEquals(8L, published.epoch());
+        assertEquals(1L, published.version());
+        assertEquals(1, published.own().size());
+    }
+
+    @Test
+    void reloadKeepsANewerVersionOfTheSameEpochPublishedDuringTheLoad() {
+        UserDictionary patched = UserDictionary.of(TemplateStore.empty(), TemplateStore.empty(), Set.of()).withVersion(7L, 6L);
+        when(redis.load(USER)).thenAnswer(inv -> {
+            cache.put(USER, patched); // 로드 중에 적용된 로컬/원격 패치
+            return snapshot(7L, 5L);
+        });
+
+        service.reloadCache(USER);
+
+        assertSame(patched, cache.getIfPresent(USER));
+    }
+
+    private CompletableFuture<?> inFlightLoad() {
+        Map<?, ?> inFlight = (Map<?, ?>) ReflectionTestUtils.getField(service, "inFlightLoads");
+        return inFlight.isEmpty() ? null : (CompletableFuture<?>) inFlight.values().iterator().next();
+    }
+
+    private static MotionCacheRedisUtil.Snapshot snapshot(long epoch, long version) {
+        CachedMotion motion = new CachedMotion("r1", "hello", "hands", new double[][]{{0.1, 0.2}, {0.3, 0.4}});
+        return new MotionCacheRedisUtil.Snapshot(epoch, version, Map.of("r1", TemplateCodec.encode(motion)));
+    }
+}
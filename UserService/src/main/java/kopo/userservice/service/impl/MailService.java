@@ -1,5 +1,7 @@
 package kopo.userservice.service.impl;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.mail.internet.MimeMessage;
 import kopo.userservice.dto.MailDTO;
 import kopo.userservice.service.IMailService;
@@ -11,6 +13,11 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Slf4j
 @RequiredArgsConstructor
 @Service
@@ -20,6 +27,29 @@ public class MailService implements IMailService {
     @Value("${spring.mail.username}")
     private String fromMail;
 
+    // SMTP 전송 전용 platform 스레드 수
+    @Value("${mail.sender.threads:4}")
+    private int senderThreads;
+
+    // Jakarta Mail 의 SMTP 전송은 synchronized 안에서 소켓 I/O 를 하므로 virtual thread 에서 직접 보내면 carrier 스레드가 고정됨.
+    // 전송은 소수의 platform 스레드에서 하고, 요청 스레드(virtual thread)는 결과만 기다림
+    private ExecutorService smtpExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        smtpExecutor = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "smtp-sender-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        smtpExecutor.shutdown();
+    }
+
     @Override
     public int doSendMail(MailDTO pDTO) {
         log.info(this.getClass().getName() + ".doSendMail start!");
@@ -47,7 +77,7 @@ public class MailService implements IMailService {
             messageHelper.setSubject(title);
             messageHelper.setText(contents, true);
 
-            mailSender.send(message);
+            send(message);
 
         } catch (Exception e) {
             // 실제 실패 원인 메시지를 포함하여 로그 및 예외 생성
@@ -59,4 +89,15 @@ public class MailService implements IMailService {
         log.info(this.getClass().getName() + ".doSendMail end!");
         return res;
     }
+
+    private void send(MimeMessage message) throws Exception {
+        try {
+            smtpExecutor.submit(() -> mailSender.send(message)).get();
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof Exception cause) ? cause : e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
 }